@@ -0,0 +1,44 @@
+/****************************************************************************
+ * Copyright 2022 Teaglu, LLC                                               *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *   http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ ****************************************************************************/
+
+package com.teaglu.configure.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * BenchmarkMain
+ * 
+ * Entry point for the benchmark jar.  Takes the normal JMH command line, but always adds the
+ * GC profiler so every run reports allocation rate alongside throughput - most regressions in
+ * these paths show up as extra allocation before they show up as time.
+ *
+ */
+public class BenchmarkMain {
+	private BenchmarkMain() {}
+	
+	public static void main(String[] args) throws Exception {
+		Options options= new OptionsBuilder()
+				.parent(new CommandLineOptions(args))
+				.addProfiler(GCProfiler.class)
+				.build();
+		
+		new Runner(options).run();
+	}
+}
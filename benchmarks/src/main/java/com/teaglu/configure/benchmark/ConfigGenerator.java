@@ -0,0 +1,169 @@
+/****************************************************************************
+ * Copyright 2022 Teaglu, LLC                                               *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *   http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ ****************************************************************************/
+
+package com.teaglu.configure.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+/**
+ * ConfigGenerator
+ * 
+ * Builds synthetic configurations of a given size.  The shape is meant to look like a real
+ * service configuration - a list of mostly similar entries with nested options, repeated key
+ * names, numbers, flags, and the occasional secret reference - rather than one huge string.
+ * 
+ * Output is deterministic for a given size, so runs can be compared with each other.
+ *
+ */
+public class ConfigGenerator {
+	private ConfigGenerator() {}
+	
+	/**
+	 * Tree
+	 * 
+	 * Build a configuration tree whose JSON form is at least the given size
+	 * 
+	 * @param targetBytes				Approximate size in bytes
+	 * 
+	 * @return							Tree
+	 */
+	public static JsonObject Tree(int targetBytes) {
+		JsonObject root= new JsonObject();
+		root.addProperty("version", 1);
+		root.addProperty("environment", "benchmark");
+		
+		JsonArray services= new JsonArray();
+		root.add("services", services);
+		
+		// Entries are all roughly the same size, so measure one and work out how many fit
+		JsonObject sample= Service(0);
+		int entryBytes= sample.toString().length() + 1;
+		int count= Math.max(1, targetBytes / entryBytes);
+		
+		for (int i= 0; i < count; i++) {
+			services.add(Service(i));
+		}
+		
+		return root;
+	}
+	
+	private static JsonObject Service(int index) {
+		JsonObject service= new JsonObject();
+		service.addProperty("name", "service-" + index);
+		service.addProperty("host", "host-" + (index % 97) + ".internal.example.com");
+		service.addProperty("port", 8000 + (index % 1000));
+		service.addProperty("enabled", (index % 7) != 0);
+		service.addProperty("weight", (index % 10) / 4.0);
+		service.addProperty("password", "@service-" + (index % 50) + "-password");
+		service.addProperty("url",
+				"jdbc:postgresql://db-" + (index % 13) + "/app?password=${secret:db-password}");
+		
+		JsonArray tags= new JsonArray();
+		tags.add("tier-" + (index % 3));
+		tags.add("zone-" + (index % 5));
+		service.add("tags", tags);
+		
+		JsonObject options= new JsonObject();
+		options.addProperty("timeoutMillis", 1000 + (index % 30) * 100);
+		options.addProperty("retries", index % 4);
+		options.addProperty("description", "Synthetic service entry number " + index);
+		service.add("options", options);
+		
+		return service;
+	}
+	
+	/**
+	 * Json
+	 * 
+	 * Build a configuration of the given size as JSON
+	 * 
+	 * @param targetBytes				Approximate size in bytes
+	 * 
+	 * @return							UTF-8 JSON
+	 */
+	public static byte[] Json(int targetBytes) {
+		return Tree(targetBytes).toString().getBytes(StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * Yaml
+	 * 
+	 * Build a configuration of the given size as block-style YAML, which is how YAML
+	 * configurations are normally written and is slower to parse than JSON-style flow YAML.
+	 * 
+	 * @param targetBytes				Approximate size in bytes
+	 * 
+	 * @return							UTF-8 YAML
+	 */
+	public static byte[] Yaml(int targetBytes) {
+		StringBuilder builder= new StringBuilder(targetBytes + targetBytes / 2);
+		writeYaml(builder, Tree(targetBytes), 0);
+		
+		return builder.toString().getBytes(StandardCharsets.UTF_8);
+	}
+	
+	private static void indent(StringBuilder builder, int depth) {
+		for (int i= 0; i < depth; i++) {
+			builder.append("  ");
+		}
+	}
+	
+	private static void writeYaml(StringBuilder builder, JsonElement element, int depth) {
+		if (element.isJsonObject()) {
+			for (Map.Entry<String, JsonElement> entry : element.getAsJsonObject().entrySet()) {
+				indent(builder, depth);
+				builder.append(entry.getKey()).append(':');
+				
+				JsonElement value= entry.getValue();
+				if (value.isJsonPrimitive()) {
+					builder.append(' ');
+					writeScalar(builder, value.getAsJsonPrimitive());
+					builder.append('\n');
+				} else {
+					builder.append('\n');
+					writeYaml(builder, value, depth + 1);
+				}
+			}
+		} else if (element.isJsonArray()) {
+			for (JsonElement value : element.getAsJsonArray()) {
+				indent(builder, depth);
+				if (value.isJsonPrimitive()) {
+					builder.append("- ");
+					writeScalar(builder, value.getAsJsonPrimitive());
+					builder.append('\n');
+				} else {
+					builder.append("-\n");
+					writeYaml(builder, value, depth + 1);
+				}
+			}
+		}
+	}
+	
+	private static void writeScalar(StringBuilder builder, JsonPrimitive primitive) {
+		if (primitive.isString()) {
+			// JSON string quoting is valid YAML double-quoted style
+			builder.append(primitive.toString());
+		} else {
+			builder.append(primitive.getAsString());
+		}
+	}
+}
@@ -0,0 +1,86 @@
+/****************************************************************************
+ * Copyright 2022 Teaglu, LLC                                               *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *   http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ ****************************************************************************/
+
+package com.teaglu.configure.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.teaglu.composite.Composite;
+import com.teaglu.configure.config.ConfigHasher;
+import com.teaglu.configure.config.hasher.Fnv64ConfigHasher;
+import com.teaglu.configure.config.hasher.Sha256ConfigHasher;
+import com.teaglu.configure.config.parser.JsonConfigParser;
+
+/**
+ * DigestBenchmark
+ * 
+ * The digest PollingConfigManager computes on every reload to decide whether a configuration
+ * changed, with each of the available hashers
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations= 3, time= 2)
+@Measurement(iterations= 5, time= 2)
+@Fork(value= 1, jvmArgsAppend= { "-Xms2g", "-Xmx2g" })
+public class DigestBenchmark {
+	@Param({ "1024", "65536", "1048576", "52428800" })
+	public int size;
+	
+	@Param({ "sha256", "fnv64" })
+	public String digest;
+	
+	private ConfigHasher hasher;
+	private Composite config;
+	
+	@Setup
+	public void setup() throws Exception {
+		switch (digest) {
+		case "sha256":
+			hasher= Sha256ConfigHasher.Create();
+			break;
+			
+		case "fnv64":
+			hasher= Fnv64ConfigHasher.Create();
+			break;
+			
+		default:
+			throw new IllegalArgumentException("Unknown digest " + digest);
+		}
+		
+		config= JsonConfigParser.Create().parse(
+				new ByteArrayInputStream(ConfigGenerator.Json(size)));
+	}
+	
+	@Benchmark
+	public String hash() {
+		return hasher.hash(config);
+	}
+}
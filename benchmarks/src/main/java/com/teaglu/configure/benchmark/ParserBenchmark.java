@@ -0,0 +1,83 @@
+/****************************************************************************
+ * Copyright 2022 Teaglu, LLC                                               *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *   http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ ****************************************************************************/
+
+package com.teaglu.configure.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.teaglu.composite.Composite;
+import com.teaglu.configure.config.ConfigParser;
+import com.teaglu.configure.config.parser.JsonConfigParser;
+import com.teaglu.configure.config.parser.YamlConfigParser;
+
+/**
+ * ParserBenchmark
+ * 
+ * Parsing configurations from 1KB up to 50MB, in JSON and YAML
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations= 3, time= 2)
+@Measurement(iterations= 5, time= 2)
+@Fork(value= 1, jvmArgsAppend= { "-Xms2g", "-Xmx2g" })
+public class ParserBenchmark {
+	@Param({ "1024", "65536", "1048576", "52428800" })
+	public int size;
+	
+	@Param({ "json", "yaml" })
+	public String format;
+	
+	private ConfigParser parser;
+	private byte[] data;
+	
+	@Setup
+	public void setup() {
+		switch (format) {
+		case "json":
+			parser= JsonConfigParser.Create();
+			data= ConfigGenerator.Json(size);
+			break;
+			
+		case "yaml":
+			parser= YamlConfigParser.Create();
+			data= ConfigGenerator.Yaml(size);
+			break;
+			
+		default:
+			throw new IllegalArgumentException("Unknown format " + format);
+		}
+	}
+	
+	@Benchmark
+	public Composite parse() throws Exception {
+		return parser.parse(new ByteArrayInputStream(data));
+	}
+}
@@ -0,0 +1,99 @@
+/****************************************************************************
+ * Copyright 2022 Teaglu, LLC                                               *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *   http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ ****************************************************************************/
+
+package com.teaglu.configure.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.teaglu.configure.exception.ConfigException;
+import com.teaglu.configure.secret.SecretProvider;
+import com.teaglu.configure.secret.SecretReplacer;
+import com.teaglu.configure.secret.replacer.AtIdSecretReplacer;
+import com.teaglu.configure.secret.replacer.InterpolatingSecretReplacer;
+
+/**
+ * SecretReplacerBenchmark
+ * 
+ * Replacing values that a target reads, both references and the far more common plain values
+ * that should pass through untouched
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations= 3, time= 1)
+@Measurement(iterations= 5, time= 1)
+@Fork(1)
+public class SecretReplacerBenchmark {
+	private SecretReplacer atId;
+	private SecretReplacer interpolating;
+	
+	@Setup
+	public void setup() {
+		Map<String, String> secrets= new HashMap<>();
+		secrets.put("db-password", "correct-horse-battery-staple");
+		
+		// Map-backed, so the numbers are the replacer and not a provider's storage
+		SecretProvider provider= new SecretProvider() {
+			@Override
+			public String getSecret(String name) throws ConfigException {
+				String value= secrets.get(name);
+				if (value == null) {
+					throw new ConfigException("Secret " + name + " is not defined");
+				}
+				
+				return value;
+			}
+		};
+		
+		atId= AtIdSecretReplacer.Create(provider);
+		interpolating= InterpolatingSecretReplacer.Create(provider);
+	}
+	
+	@Benchmark
+	public String atIdReference() throws ConfigException {
+		return atId.replace("@db-password");
+	}
+	
+	@Benchmark
+	public String atIdPlain() throws ConfigException {
+		return atId.replace("db-primary.internal.example.com");
+	}
+	
+	@Benchmark
+	public String interpolatingReference() throws ConfigException {
+		return interpolating.replace(
+				"jdbc:postgresql://db/app?user=app&password=${secret:db-password}");
+	}
+	
+	@Benchmark
+	public String interpolatingPlain() throws ConfigException {
+		return interpolating.replace("jdbc:postgresql://db/app?user=app&ssl=true");
+	}
+}
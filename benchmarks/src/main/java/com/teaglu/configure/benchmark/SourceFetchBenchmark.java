@@ -0,0 +1,155 @@
+/****************************************************************************
+ * Copyright 2022 Teaglu, LLC                                               *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *   http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ ****************************************************************************/
+
+package com.teaglu.configure.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.teaglu.configure.config.ConfigHasher;
+import com.teaglu.configure.config.ConfigSource;
+import com.teaglu.configure.config.hasher.Sha256ConfigHasher;
+import com.teaglu.configure.config.source.HttpSourceOptions;
+import com.teaglu.configure.config.source.SmbtrackConfigSource;
+import com.teaglu.configure.config.source.UrlConfigSource;
+
+/**
+ * SourceFetchBenchmark
+ * 
+ * One poll of a remote source against an in-process HTTP server - fetch, parse if changed,
+ * and digest - which is what PollingConfigManager does each cycle.  With change off the
+ * server always returns the same body, which is the common case of a poll that finds
+ * nothing new.  With change on every response is different, so every poll parses.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations= 3, time= 2)
+@Measurement(iterations= 5, time= 2)
+@Fork(1)
+public class SourceFetchBenchmark {
+	private static final String TOKEN= "benchmark";
+	
+	@Param({ "url", "smbtrack" })
+	public String source;
+	
+	@Param({ "1024", "1048576" })
+	public int size;
+	
+	@Param({ "false", "true" })
+	public boolean change;
+	
+	private HttpServer server;
+	private ExecutorService serverExecutor;
+	
+	private byte[][] bodies;
+	private final AtomicLong requestCount= new AtomicLong();
+	
+	private ConfigSource configSource;
+	private ConfigHasher hasher;
+	
+	@Setup
+	public void setup() throws Exception {
+		JsonObject first= ConfigGenerator.Tree(size);
+		JsonObject second= first.deepCopy();
+		second.addProperty("version", 2);
+		
+		bodies= new byte[][] {
+			first.toString().getBytes("UTF-8"),
+			second.toString().getBytes("UTF-8")
+		};
+		
+		serverExecutor= Executors.newFixedThreadPool(4);
+		
+		server= HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.createContext("/config", this::serve);
+		server.createContext("/api/v1/cfg/direct/" + TOKEN, this::serve);
+		server.setExecutor(serverExecutor);
+		server.start();
+		
+		String baseUrl= "http://" + server.getAddress().getHostString() + ":" +
+				server.getAddress().getPort();
+		
+		switch (source) {
+		case "url":
+			configSource= UrlConfigSource.Create(baseUrl + "/config");
+			break;
+			
+		case "smbtrack":
+			configSource= SmbtrackConfigSource.CreateWithBaseUrl(
+					baseUrl, TOKEN, HttpSourceOptions.Default());
+			break;
+			
+		default:
+			throw new IllegalArgumentException("Unknown source " + source);
+		}
+		
+		hasher= Sha256ConfigHasher.Create();
+		
+		// Get the initial load out of the way, so every measured poll is a steady-state poll
+		configSource.needsReload();
+		hasher.hash(configSource.reload());
+	}
+	
+	private void serve(HttpExchange exchange) throws IOException {
+		long count= requestCount.getAndIncrement();
+		byte[] body= change ? bodies[(int)(count & 1)] : bodies[0];
+		
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(200, body.length);
+		try (OutputStream output= exchange.getResponseBody()) {
+			output.write(body);
+		}
+	}
+	
+	@TearDown
+	public void tearDown() {
+		server.stop(0);
+		serverExecutor.shutdownNow();
+	}
+	
+	@Benchmark
+	public String poll() throws Exception {
+		if (configSource.needsReload()) {
+			return hasher.hash(configSource.reload());
+		}
+		
+		return null;
+	}
+}
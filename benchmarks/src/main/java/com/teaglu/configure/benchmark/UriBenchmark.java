@@ -0,0 +1,61 @@
+/****************************************************************************
+ * Copyright 2022 Teaglu, LLC                                               *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *   http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ ****************************************************************************/
+
+package com.teaglu.configure.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.teaglu.configure.exception.UriParseException;
+import com.teaglu.configure.uri.Uri;
+import com.teaglu.configure.uri.UriImpl;
+
+/**
+ * UriBenchmark
+ * 
+ * Parsing the configuration and secret URI strings, from a bare path to one with query and
+ * local arguments
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations= 3, time= 1)
+@Measurement(iterations= 5, time= 1)
+@Fork(1)
+public class UriBenchmark {
+	@Param({
+		"file:///etc/myapp/config.json",
+		"aws://appconfig/helloworld/config/prod#pollTime=60&alarm=prodfail",
+		"https://config.example.com/api/config?app=myapp&env=prod#pollTime=30&warmStart=true"
+	})
+	public String uri;
+	
+	@Benchmark
+	public Uri parse() throws UriParseException {
+		return UriImpl.CreateFromString(uri);
+	}
+}
@@ -0,0 +1,269 @@
+/****************************************************************************
+ * Copyright 2022 Teaglu, LLC                                               *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *   http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ ****************************************************************************/
+
+package com.teaglu.configure.bootstrap;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.teaglu.configure.config.ConfigManager;
+import com.teaglu.configure.config.ConfigManagerFactory;
+import com.teaglu.configure.config.ConfigTarget;
+import com.teaglu.configure.exception.ConfigException;
+import com.teaglu.configure.secret.SecretProvider;
+import com.teaglu.configure.secret.SecretProviderFactory;
+import com.teaglu.configure.secret.SecretReplacer;
+import com.teaglu.configure.secret.replacer.AtIdSecretReplacer;
+
+/**
+ * Bootstrap
+ * 
+ * Starts the secret provider and the configuration manager at the same time instead of one
+ * after the other.  Creating a secret provider can mean building an SDK client and making a
+ * round trip to a secrets service, and fetching the first configuration is another round trip
+ * - done in sequence, startup pays for both.
+ * 
+ * The target is built right away with a stand-in secret provider, and the manager is started
+ * so the first configuration is fetched while the real provider is still being created.  The
+ * stand-in waits for the real provider the first time the target actually asks for a secret.
+ * Everything has to be ready within a single startup deadline.
+ *
+ */
+public class Bootstrap {
+	private static final Logger log= LoggerFactory.getLogger(Bootstrap.class);
+	
+	private final @NonNull SecretProvider secretProvider;
+	private final @NonNull ConfigManager configManager;
+	
+	private Bootstrap(
+			@NonNull SecretProvider secretProvider,
+			@NonNull ConfigManager configManager)
+	{
+		this.secretProvider= secretProvider;
+		this.configManager= configManager;
+	}
+	
+	/**
+	 * getSecretProvider
+	 * 
+	 * @return							The secret provider that was created
+	 */
+	public @NonNull SecretProvider getSecretProvider() {
+		return secretProvider;
+	}
+	
+	/**
+	 * getConfigManager
+	 * 
+	 * @return							The running configuration manager, which should be
+	 * 									stopped on shutdown as usual
+	 */
+	public @NonNull ConfigManager getConfigManager() {
+		return configManager;
+	}
+	
+	// Package level so tests can supply their own
+	interface ProviderCreator {
+		@NonNull SecretProvider create() throws ConfigException;
+	}
+	
+	interface ManagerCreator {
+		@NonNull ConfigManager create(
+				@NonNull ConfigTarget target,
+				@NonNull SecretReplacer replacer) throws ConfigException;
+	}
+	
+	/**
+	 * StartFromEnvironment
+	 * 
+	 * Bootstrap using the SECRETS and CONFIGURATION environment variables, the same way as
+	 * the two factories do.
+	 * 
+	 * @param targetFactory				Builds the configuration target
+	 * @param timeoutMillis				Startup deadline in milliseconds
+	 * 
+	 * @return							Bootstrap with a running manager that has applied the
+	 * 									first configuration
+	 * 
+	 * @throws ConfigException			Something failed, or the deadline passed
+	 */
+	public static @NonNull Bootstrap StartFromEnvironment(
+			@NonNull BootstrapTargetFactory targetFactory,
+			long timeoutMillis) throws ConfigException
+	{
+		return Start(
+				() -> SecretProviderFactory.getInstance().createFromEnvironment(),
+				(target, replacer) -> ConfigManagerFactory.getInstance()
+						.createFromEnvironment(target, replacer),
+				targetFactory,
+				timeoutMillis);
+	}
+	
+	/**
+	 * StartFromStrings
+	 * 
+	 * Bootstrap from explicit secret and configuration URIs
+	 * 
+	 * @param secretUri					Secret provider URI, or null for no secrets
+	 * @param configUri					Configuration URI
+	 * @param targetFactory				Builds the configuration target
+	 * @param timeoutMillis				Startup deadline in milliseconds
+	 * 
+	 * @return							Bootstrap with a running manager that has applied the
+	 * 									first configuration
+	 * 
+	 * @throws ConfigException			Something failed, or the deadline passed
+	 */
+	public static @NonNull Bootstrap StartFromStrings(
+			@Nullable String secretUri,
+			@NonNull String configUri,
+			@NonNull BootstrapTargetFactory targetFactory,
+			long timeoutMillis) throws ConfigException
+	{
+		return Start(
+				() -> SecretProviderFactory.getInstance().createFromString(secretUri),
+				(target, replacer) -> ConfigManagerFactory.getInstance()
+						.createFromString(configUri, target, replacer),
+				targetFactory,
+				timeoutMillis);
+	}
+	
+	// Secret providers do blocking network calls, so they get their own thread instead of
+	// tying up the common pool.
+	private static final Executor BOOTSTRAP_EXECUTOR= runnable -> {
+		Thread thread= new Thread(runnable, "configuration-bootstrap");
+		thread.setDaemon(true);
+		thread.start();
+	};
+	
+	static @NonNull Bootstrap Start(
+			@NonNull ProviderCreator providerCreator,
+			@NonNull ManagerCreator managerCreator,
+			@NonNull BootstrapTargetFactory targetFactory,
+			long timeoutMillis) throws ConfigException
+	{
+		long deadlineMillis= System.currentTimeMillis() + timeoutMillis;
+		
+		CompletableFuture<@NonNull SecretProvider> providerFuture=
+				CompletableFuture.supplyAsync(() -> {
+					try {
+						return providerCreator.create();
+					} catch (ConfigException e) {
+						throw new CompletionException(e);
+					}
+				}, BOOTSTRAP_EXECUTOR);
+		
+		@SuppressWarnings("null")
+		@NonNull CompletableFuture<@NonNull SecretProvider> nonNullProviderFuture= providerFuture;
+		
+		ReadyConfigTarget target= null;
+		ConfigManager configManager= null;
+		
+		try {
+			SecretProvider deferredProvider=
+					DeferredSecretProvider.Create(nonNullProviderFuture, deadlineMillis);
+			
+			ReadyConfigTarget readyTarget= ReadyConfigTarget.Create(
+					targetFactory.create(deferredProvider));
+			target= readyTarget;
+			
+			// Don't wait out the deadline on a configuration that can never be applied
+			providerFuture.whenComplete((provider, e) -> {
+				if (e != null) {
+					readyTarget.fail(e);
+				}
+			});
+			
+			configManager= managerCreator.create(
+					readyTarget, AtIdSecretReplacer.Create(deferredProvider));
+			
+			configManager.start();
+			
+			long remaining= Math.max(1, deadlineMillis - System.currentTimeMillis());
+			
+			CompletableFuture.allOf(providerFuture, readyTarget.getReady())
+					.get(remaining, TimeUnit.MILLISECONDS);
+			
+			@SuppressWarnings("null")
+			@NonNull SecretProvider secretProvider= providerFuture.getNow(null);
+			
+			return new Bootstrap(secretProvider, configManager);
+		} catch (ExecutionException e) {
+			abandon(providerFuture, target, configManager);
+			throw unwrap(e.getCause());
+		} catch (TimeoutException e) {
+			log.error("Startup did not complete within " + timeoutMillis + "ms");
+			abandon(providerFuture, target, configManager);
+			
+			// If the target kept rejecting the configuration, that's the more useful cause
+			throw new ConfigException(
+					"Startup did not complete within " + timeoutMillis + "ms",
+					(target != null) ? target.getLastFailure() : null);
+		} catch (InterruptedException e) {
+			abandon(providerFuture, target, configManager);
+			Thread.currentThread().interrupt();
+			
+			throw new ConfigException("Interrupted during startup");
+		} catch (ConfigException|RuntimeException e) {
+			abandon(providerFuture, target, configManager);
+			throw e;
+		}
+	}
+	
+	/**
+	 * abandon
+	 * 
+	 * Clean up after startup failed.  Nothing here waits - the caller has a deadline, and a
+	 * fetch that's hung is exactly what may have caused the failure.  The manager's poll is
+	 * interrupted, anything it still delivers is dropped, and the provider is closed whenever
+	 * it finishes being created, since nobody else will ever get hold of it.
+	 */
+	private static void abandon(
+			@NonNull CompletableFuture<@NonNull SecretProvider> providerFuture,
+			@Nullable ReadyConfigTarget target,
+			@Nullable ConfigManager configManager)
+	{
+		if (target != null) {
+			target.abandon();
+		}
+		if (configManager != null) {
+			configManager.abort();
+		}
+		
+		providerFuture.thenAccept(SecretProvider::close);
+	}
+	
+	static @NonNull ConfigException unwrap(@Nullable Throwable cause) {
+		while ((cause instanceof CompletionException) && (cause.getCause() != null)) {
+			cause= cause.getCause();
+		}
+		
+		if (cause instanceof ConfigException) {
+			return (ConfigException)cause;
+		}
+		
+		return new ConfigException("Startup failed", cause);
+	}
+}
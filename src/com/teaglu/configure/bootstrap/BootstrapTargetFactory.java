@@ -0,0 +1,43 @@
+/****************************************************************************
+ * Copyright 2022 Teaglu, LLC                                               *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *   http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ ****************************************************************************/
+
+package com.teaglu.configure.bootstrap;
+
+import org.eclipse.jdt.annotation.NonNull;
+
+import com.teaglu.configure.config.ConfigTarget;
+import com.teaglu.configure.secret.SecretProvider;
+
+/**
+ * BootstrapTargetFactory
+ * 
+ * Builds the configuration target during bootstrap.  This is called before the secret
+ * provider is ready - the provider passed in blocks on first use until the real one has been
+ * created, so the target can hold on to it but shouldn't use it until apply() is called.
+ *
+ */
+public interface BootstrapTargetFactory {
+	/**
+	 * create
+	 * 
+	 * Create the configuration target
+	 * 
+	 * @param secretProvider			Secret provider to resolve secrets in configurations
+	 * 
+	 * @return							Target
+	 */
+	public @NonNull ConfigTarget create(@NonNull SecretProvider secretProvider);
+}
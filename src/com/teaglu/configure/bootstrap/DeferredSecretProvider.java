@@ -0,0 +1,109 @@
+/****************************************************************************
+ * Copyright 2022 Teaglu, LLC                                               *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *   http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ ****************************************************************************/
+
+package com.teaglu.configure.bootstrap;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.eclipse.jdt.annotation.NonNull;
+
+import com.teaglu.configure.exception.ConfigException;
+import com.teaglu.configure.secret.SecretProvider;
+
+/**
+ * DeferredSecretProvider
+ * 
+ * A secret provider that stands in for one still being created.  Lookups wait for the real
+ * provider, but never past the bootstrap deadline.  Once the real provider exists this is
+ * just a pass-through.
+ *
+ */
+class DeferredSecretProvider implements SecretProvider {
+	private final @NonNull CompletableFuture<@NonNull SecretProvider> providerFuture;
+	private final long deadlineMillis;
+	
+	private DeferredSecretProvider(
+			@NonNull CompletableFuture<@NonNull SecretProvider> providerFuture,
+			long deadlineMillis)
+	{
+		this.providerFuture= providerFuture;
+		this.deadlineMillis= deadlineMillis;
+	}
+	
+	static @NonNull DeferredSecretProvider Create(
+			@NonNull CompletableFuture<@NonNull SecretProvider> providerFuture,
+			long deadlineMillis)
+	{
+		return new DeferredSecretProvider(providerFuture, deadlineMillis);
+	}
+	
+	private @NonNull SecretProvider getProvider() throws ConfigException {
+		SecretProvider provider= providerFuture.getNow(null);
+		if (provider != null) {
+			return provider;
+		}
+		
+		try {
+			long remaining= Math.max(1, deadlineMillis - System.currentTimeMillis());
+			
+			@SuppressWarnings("null")
+			@NonNull SecretProvider rval= providerFuture.get(remaining, TimeUnit.MILLISECONDS);
+			
+			return rval;
+		} catch (ExecutionException e) {
+			throw Bootstrap.unwrap(e.getCause());
+		} catch (TimeoutException | CancellationException e) {
+			throw new ConfigException("Secret provider was not ready before the startup deadline");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ConfigException("Interrupted waiting for secret provider");
+		}
+	}
+	
+	@Override
+	public @NonNull String getSecret(@NonNull String name) throws ConfigException {
+		return getProvider().getSecret(name);
+	}
+	
+	@Override
+	public long getGeneration() {
+		// Don't wait here - until the provider exists there is nothing to be stale against
+		if (!providerFuture.isDone() || providerFuture.isCompletedExceptionally()) {
+			return 0;
+		}
+		
+		return providerFuture.join().getGeneration();
+	}
+	
+	@Override
+	public void close() {
+		// Closes the real provider now if it exists, otherwise as soon as it does
+		providerFuture.thenAccept(SecretProvider::close);
+	}
+	
+	@Override
+	public @NonNull Map<@NonNull String, @NonNull String> getSecrets(
+			@NonNull Set<@NonNull String> names) throws ConfigException
+	{
+		return getProvider().getSecrets(names);
+	}
+}
@@ -0,0 +1,113 @@
+/****************************************************************************
+ * Copyright 2022 Teaglu, LLC                                               *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *   http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ ****************************************************************************/
+
+package com.teaglu.configure.bootstrap;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.teaglu.composite.Composite;
+import com.teaglu.configure.config.ConfigTarget;
+import com.teaglu.configure.config.DeltaConfigTarget;
+
+/**
+ * ReadyConfigTarget
+ * 
+ * Wraps the application's target so bootstrap can tell when the first configuration has been
+ * applied.  After that it just passes calls through.
+ * 
+ * A failed apply doesn't end startup - the manager tries again, and a later apply can still
+ * succeed before the deadline.  Only something that can't recover, like the secret provider
+ * failing or a shutdown, fails it straight away.  Once bootstrap gives up, anything the
+ * manager still sends is dropped rather than reaching the application.
+ *
+ */
+class ReadyConfigTarget implements ConfigTarget {
+	protected final @NonNull ConfigTarget target;
+	private final @NonNull CompletableFuture<Void> ready= new CompletableFuture<>();
+	
+	// Most recent apply failure, reported if startup runs out of time
+	private volatile Exception lastFailure;
+	
+	// Set when bootstrap has given up
+	private volatile boolean abandoned;
+	
+	protected ReadyConfigTarget(@NonNull ConfigTarget target) {
+		this.target= target;
+	}
+	
+	/**
+	 * Create
+	 * 
+	 * Wrap a target.  Targets that take deltas get a wrapper that does too, otherwise the
+	 * manager would stop sending them.
+	 * 
+	 * @param target					Application target
+	 * 
+	 * @return							Wrapper
+	 */
+	static @NonNull ReadyConfigTarget Create(@NonNull ConfigTarget target) {
+		if (target instanceof DeltaConfigTarget) {
+			return new ReadyDeltaConfigTarget((DeltaConfigTarget)target);
+		} else {
+			return new ReadyConfigTarget(target);
+		}
+	}
+	
+	@NonNull CompletableFuture<Void> getReady() {
+		return ready;
+	}
+	
+	void fail(@NonNull Throwable cause) {
+		ready.completeExceptionally(cause);
+	}
+	
+	@Nullable Exception getLastFailure() {
+		return lastFailure;
+	}
+	
+	void abandon() {
+		abandoned= true;
+	}
+	
+	boolean isAbandoned() {
+		return abandoned;
+	}
+	
+	@Override
+	public void apply(@NonNull Composite config) throws Exception {
+		if (abandoned) {
+			return;
+		}
+		
+		try {
+			target.apply(config);
+			ready.complete(null);
+		} catch (Exception e) {
+			// The manager will try again, so leave it to the deadline to give up
+			lastFailure= e;
+			throw e;
+		}
+	}
+	
+	@Override
+	public void shutdown() {
+		ready.completeExceptionally(new IllegalStateException("Shutdown requested"));
+		target.shutdown();
+	}
+}
@@ -0,0 +1,46 @@
+/****************************************************************************
+ * Copyright 2022 Teaglu, LLC                                               *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *   http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ ****************************************************************************/
+
+package com.teaglu.configure.bootstrap;
+
+import org.eclipse.jdt.annotation.NonNull;
+
+import com.teaglu.composite.Composite;
+import com.teaglu.configure.config.ConfigDelta;
+import com.teaglu.configure.config.DeltaConfigTarget;
+
+/**
+ * ReadyDeltaConfigTarget
+ * 
+ * ReadyConfigTarget for targets that take deltas.  Deltas only come after the first apply,
+ * so there's nothing to track here beyond dropping them once bootstrap has given up.
+ *
+ */
+class ReadyDeltaConfigTarget extends ReadyConfigTarget implements DeltaConfigTarget {
+	ReadyDeltaConfigTarget(@NonNull DeltaConfigTarget target) {
+		super(target);
+	}
+	
+	@Override
+	public void applyDelta(
+			@NonNull Composite config,
+			@NonNull ConfigDelta delta) throws Exception
+	{
+		if (!isAbandoned()) {
+			((DeltaConfigTarget)target).applyDelta(config, delta);
+		}
+	}
+}
@@ -0,0 +1,41 @@
+/****************************************************************************
+ * Copyright 2022 Teaglu, LLC                                               *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *   http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ ****************************************************************************/
+
+package com.teaglu.configure.config;
+
+/**
+ * CircuitState
+ * 
+ * Circuit breaker state of a configuration manager with respect to its source.
+ *
+ */
+public enum CircuitState {
+	/**
+	 * The source is reachable and is being polled at the normal rate
+	 */
+	CLOSED,
+	
+	/**
+	 * Several fetches in a row have failed, and the manager is backing off.  The application
+	 * keeps running on the last configuration it received.
+	 */
+	OPEN,
+	
+	/**
+	 * A trial fetch is in progress after a period of backing off
+	 */
+	HALF_OPEN
+}
@@ -0,0 +1,58 @@
+/****************************************************************************
+ * Copyright 2022 Teaglu, LLC                                               *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *   http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ ****************************************************************************/
+
+package com.teaglu.configure.config;
+
+import java.util.List;
+
+import org.eclipse.jdt.annotation.NonNull;
+
+/**
+ * ConfigChange
+ * 
+ * A single added, removed, or changed subtree in a configuration delta.
+ *
+ */
+public interface ConfigChange {
+	/**
+	 * getType
+	 * 
+	 * Return what kind of change this is
+	 * 
+	 * @return							Change type
+	 */
+	public @NonNull ConfigChangeType getType();
+	
+	/**
+	 * getPath
+	 * 
+	 * Return the path to the changed subtree as a list of object keys from the root.  Arrays
+	 * are treated as values, so a path never points inside an array.  An empty path means
+	 * the root itself was replaced.
+	 * 
+	 * @return							Path sections
+	 */
+	public @NonNull List<@NonNull String> getPath();
+	
+	/**
+	 * getPathString
+	 * 
+	 * Return the path joined with periods, mostly for logging.
+	 * 
+	 * @return							Path string
+	 */
+	public @NonNull String getPathString();
+}
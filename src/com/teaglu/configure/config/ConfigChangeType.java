@@ -0,0 +1,41 @@
+/****************************************************************************
+ * Copyright 2022 Teaglu, LLC                                               *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *   http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ ****************************************************************************/
+
+package com.teaglu.configure.config;
+
+/**
+ * ConfigChangeType
+ * 
+ * The kind of change made to a subtree between two versions of a configuration.
+ *
+ */
+public enum ConfigChangeType {
+	/**
+	 * The path did not exist in the previous configuration
+	 */
+	ADDED,
+	
+	/**
+	 * The path existed in the previous configuration but not in the new one
+	 */
+	REMOVED,
+	
+	/**
+	 * The path exists in both but the value differs.  For objects this is only reported
+	 * when one side isn't an object - otherwise the change is reported on the children.
+	 */
+	CHANGED
+}
@@ -0,0 +1,58 @@
+/****************************************************************************
+ * Copyright 2022 Teaglu, LLC                                               *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *   http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ ****************************************************************************/
+
+package com.teaglu.configure.config;
+
+import java.util.List;
+
+import org.eclipse.jdt.annotation.NonNull;
+
+/**
+ * ConfigDelta
+ * 
+ * The structural difference between the previously applied configuration and a new one.
+ *
+ */
+public interface ConfigDelta {
+	/**
+	 * isEmpty
+	 * 
+	 * Returns true if nothing changed
+	 * 
+	 * @return							If there are no changes
+	 */
+	public boolean isEmpty();
+	
+	/**
+	 * getChanges
+	 * 
+	 * Return all changes in document order
+	 * 
+	 * @return							List of changes
+	 */
+	public @NonNull List<@NonNull ConfigChange> getChanges();
+	
+	/**
+	 * getChanges
+	 * 
+	 * Return only the changes of a certain type
+	 * 
+	 * @param type						Type of change
+	 * 
+	 * @return							List of changes
+	 */
+	public @NonNull List<@NonNull ConfigChange> getChanges(@NonNull ConfigChangeType type);
+}
@@ -0,0 +1,45 @@
+/****************************************************************************
+ * Copyright 2022 Teaglu, LLC                                               *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *   http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ ****************************************************************************/
+
+package com.teaglu.configure.config;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.teaglu.composite.Composite;
+
+/**
+ * ConfigHasher
+ * 
+ * A config hasher produces a digest of a configuration so managers can tell whether a newly
+ * loaded configuration is actually different from the one already applied.  The digest only
+ * depends on content, not on key order or formatting.
+ * 
+ * Implementations are not expected to be thread-safe.
+ *
+ */
+public interface ConfigHasher {
+	/**
+	 * hash
+	 * 
+	 * Compute the digest of a configuration
+	 * 
+	 * @param config					Configuration
+	 * 
+	 * @return							Digest, or null if this configuration can't be hashed
+	 */
+	public @Nullable String hash(@NonNull Composite config);
+}
@@ -41,4 +41,28 @@ public interface ConfigManager {
 	 * to targets will be made after this returns.
 	 */
 	public void stop();
+	
+	/**
+	 * abort
+	 * 
+	 * Stop like stop(), but without waiting out a fetch in progress - it's interrupted
+	 * instead, and only given a moment to respond.  This is meant for giving up during
+	 * startup, when the caller has its own deadline to keep.  Unlike stop(), a fetch that
+	 * ignores the interrupt may still reach the target after this returns.
+	 */
+	public default void abort() {
+		stop();
+	}
+	
+	/**
+	 * getCircuitState
+	 * 
+	 * Returns whether the manager is currently able to reach its source.  This is meant for
+	 * health checks and metrics - the manager handles retries on its own.
+	 * 
+	 * @return							Current state
+	 */
+	public default CircuitState getCircuitState() {
+		return CircuitState.CLOSED;
+	}
 }
@@ -16,18 +16,24 @@
 
 package com.teaglu.configure.config;
 
+import java.time.Duration;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.jdt.annotation.Nullable;
 
+import com.teaglu.configure.config.hasher.Fnv64ConfigHasher;
+import com.teaglu.configure.config.hasher.Sha256ConfigHasher;
 import com.teaglu.configure.config.manager.ImmuntableConfigManager;
 import com.teaglu.configure.config.manager.PollingConfigManager;
+import com.teaglu.configure.config.manager.SnapshotHistory;
 import com.teaglu.configure.config.parser.JsonConfigParser;
 import com.teaglu.configure.config.parser.YamlConfigParser;
 import com.teaglu.configure.config.source.AwsAppConfigSource;
+import com.teaglu.configure.config.source.FetchTimeouts;
 import com.teaglu.configure.config.source.FileConfigSource;
+import com.teaglu.configure.config.source.HttpSourceOptions;
 import com.teaglu.configure.config.source.SmbtrackConfigSource;
 import com.teaglu.configure.config.source.UrlConfigSource;
 import com.teaglu.configure.exception.ConfigException;
@@ -91,7 +97,7 @@ public class ConfigManagerFactory {
 		case "https":
 			// URL takes the whole string not the argument, since we're matching known
 			// URL prefixes.
-			return createUrlConfigManager(configUri, configTarget);
+			return createUrlConfigManager(configUri, uri, configTarget);
 		
 		case "docker":
 			return createDockerConfigManager(uri, configTarget);
@@ -138,16 +144,208 @@ public class ConfigManagerFactory {
 		return format;
 	}
 	
+	/**
+	 * createHasher
+	 * 
+	 * Create the hasher used to detect configuration changes, based on the digest local
+	 * argument.  SHA-256 is the default, and fnv64 is a much cheaper non-cryptographic hash.
+	 * 
+	 * @param uri						Parsed URI
+	 * 
+	 * @return							Hasher
+	 * 
+	 * @throws ConfigException			Unknown digest type
+	 */
+	private @NonNull ConfigHasher createHasher(
+			@NonNull Uri uri) throws ConfigException
+	{
+		String digest= uri.getLocalArgument("digest", "sha256");
+		switch (digest) {
+		case "sha256":
+			return Sha256ConfigHasher.Create();
+			
+		case "fnv64":
+			return Fnv64ConfigHasher.Create();
+			
+		default:
+			throw new ConfigException("Unknown digest type " + digest);
+		}
+	}
+	
+	/**
+	 * parsePollTime
+	 * 
+	 * Read the pollTime local argument, which every polled schema accepts
+	 * 
+	 * @param uri						Parsed URI
+	 * @param defaultSeconds			Poll time if the argument isn't given
+	 * 
+	 * @return							Poll time in seconds
+	 * 
+	 * @throws ConfigException			Argument is not a positive number
+	 */
+	private int parsePollTime(
+			@NonNull Uri uri,
+			int defaultSeconds) throws ConfigException
+	{
+		String pollTimeString= uri.getLocalArgument("pollTime");
+		int pollTime= defaultSeconds;
+		if (pollTimeString != null) {
+			try {
+				pollTime= Integer.parseInt(pollTimeString);
+			} catch (NumberFormatException e) {
+				throw new ConfigException(
+						"Polling frequency is not a number", e);
+			}
+			
+			if (pollTime < 1) {
+				throw new ConfigException(
+						"Polling frequency must be at least one second");
+			}
+		}
+		
+		return pollTime;
+	}
+	
+	/**
+	 * parseSeconds
+	 * 
+	 * Read a local argument giving a whole number of seconds
+	 * 
+	 * @param uri						Parsed URI
+	 * @param name						Argument name
+	 * @param defaultSeconds			Value if the argument isn't given
+	 * @param minimumSeconds			Smallest value allowed
+	 * 
+	 * @return							Value in seconds
+	 * 
+	 * @throws ConfigException			Argument is not a number or is too small
+	 */
+	private int parseSeconds(
+			@NonNull Uri uri,
+			@NonNull String name,
+			int defaultSeconds,
+			int minimumSeconds) throws ConfigException
+	{
+		String valueString= uri.getLocalArgument(name);
+		int value= defaultSeconds;
+		if (valueString != null) {
+			try {
+				value= Integer.parseInt(valueString);
+			} catch (NumberFormatException e) {
+				throw new ConfigException(
+						"Value for " + name + " is not a number", e);
+			}
+			
+			if (value < minimumSeconds) {
+				throw new ConfigException(
+						"Value for " + name + " must be at least " + minimumSeconds);
+			}
+		}
+		
+		return value;
+	}
+	
+	/**
+	 * createTimeouts
+	 * 
+	 * Build network timeouts from the connectTimeout and readTimeout local arguments
+	 * 
+	 * @param uri						Parsed URI
+	 * 
+	 * @return							Timeouts
+	 * 
+	 * @throws ConfigException			Invalid argument
+	 */
+	private @NonNull FetchTimeouts createTimeouts(
+			@NonNull Uri uri) throws ConfigException
+	{
+		FetchTimeouts defaults= FetchTimeouts.Default();
+		
+		int connectSeconds= parseSeconds(uri, "connectTimeout",
+				(int)defaults.getConnectTimeout().getSeconds(), 1);
+		int readSeconds= parseSeconds(uri, "readTimeout",
+				(int)defaults.getReadTimeout().getSeconds(), 1);
+		
+		@SuppressWarnings("null")
+		@NonNull Duration connectTimeout= Duration.ofSeconds(connectSeconds);
+		@SuppressWarnings("null")
+		@NonNull Duration readTimeout= Duration.ofSeconds(readSeconds);
+		
+		return FetchTimeouts.Create(connectTimeout, readTimeout);
+	}
+	
+	// Default time a poll may spend in the source before it's interrupted
+	private static final int DEFAULT_DEADLINE_SECONDS= 120;
+	
+	// Default number of good configurations kept for rollback
+	private static final int DEFAULT_HISTORY_SIZE= 3;
+	
+	/**
+	 * createPollingManager
+	 * 
+	 * Create a polling manager with the hasher, deadline, and rollback history given by the
+	 * local arguments
+	 * 
+	 * @param uri						Parsed URI
+	 * @param source					Source
+	 * @param configTarget				Target
+	 * @param pollSeconds				Poll time in seconds
+	 * 
+	 * @return							New manager
+	 * 
+	 * @throws ConfigException			Invalid argument
+	 */
+	private @NonNull ConfigManager createPollingManager(
+			@NonNull Uri uri,
+			@NonNull ConfigSource source,
+			@NonNull ConfigTarget configTarget,
+			int pollSeconds) throws ConfigException
+	{
+		int deadlineSeconds= parseSeconds(uri, "deadline", DEFAULT_DEADLINE_SECONDS, 0);
+		
+		boolean rollback= Boolean.parseBoolean(uri.getLocalArgument("rollback", "false"));
+		if (!rollback) {
+			return PollingConfigManager.Create(
+					source, configTarget, pollSeconds, createHasher(uri), deadlineSeconds);
+		}
+		
+		String historyString= uri.getLocalArgument("history");
+		int historySize= DEFAULT_HISTORY_SIZE;
+		if (historyString != null) {
+			try {
+				historySize= Integer.parseInt(historyString);
+			} catch (NumberFormatException e) {
+				throw new ConfigException(
+						"History size is not a number", e);
+			}
+			
+			if (historySize < 1) {
+				throw new ConfigException(
+						"History size must be at least one");
+			}
+		}
+		
+		// Keyed without the local part, so changing local options keeps the history
+		SnapshotHistory history= SnapshotHistory.Create(uri.getNonLocalPart(), historySize);
+		
+		return PollingConfigManager.Create(
+				source, configTarget, pollSeconds, createHasher(uri), deadlineSeconds, history);
+	}
+	
 	private @NonNull ConfigManager createUrlConfigManager(
 			@NonNull String configString,
+			@NonNull Uri uri,
 			@NonNull ConfigTarget configTarget) throws ConfigException
 	{
+		boolean warmStart= Boolean.parseBoolean(uri.getLocalArgument("warmStart", "false"));
+		
 		// Use the entire configuration string as the URL
-		ConfigSource source= UrlConfigSource.Create(configString);
+		ConfigSource source= UrlConfigSource.Create(configString, HttpSourceOptions.Default()
+				.withWarmStart(warmStart)
+				.withTimeouts(createTimeouts(uri)));
 		
-		// There should probably be a method of declaring how often to poll - maybe
-		// using a query parameter or something
-		return PollingConfigManager.Create(source, configTarget, 300);
+		return createPollingManager(uri, source, configTarget, parsePollTime(uri, 300));
 	}
 	
 	/**
@@ -218,7 +416,7 @@ public class ConfigManagerFactory {
 	 * 
 	 * @param path						Path to file
 	 * @param configTarget				Target to build for
-	 * @param pollSeconds				How often to poll
+	 * @param pollSeconds				How often to poll unless pollTime is given
 	 * 
 	 * @return							New manager
 	 * 
@@ -253,9 +451,38 @@ public class ConfigManagerFactory {
 			throw new ConfigException("File format " + format + " is not implemented.");
 		}
 		
-		ConfigSource source= FileConfigSource.Create(path, parser);
+		// Kubernetes projected volumes are detected by their ..data link unless told otherwise
+		String kubernetesString= uri.getLocalArgument("kubernetes", "auto");
+		boolean kubernetes= kubernetesString.equals("auto")
+				? FileConfigSource.IsKubernetesProjected(path)
+				: Boolean.parseBoolean(kubernetesString);
+		
+		// With watch=true the file system tells us about changes, and polling is a backstop.
+		// A projected volume is watched for the ..data swap unless that's turned off.
+		boolean watch= Boolean.parseBoolean(
+				uri.getLocalArgument("watch", Boolean.toString(kubernetes)));
+		
+		long debounce= 0;
+		if (watch) {
+			String debounceString= uri.getLocalArgument("debounce", "250");
+			try {
+				debounce= Long.parseLong(debounceString);
+			} catch (NumberFormatException e) {
+				throw new ConfigException(
+						"Watch debounce time is not a number", e);
+			}
+		}
+		
+		ConfigSource source= null;
+		if (kubernetes) {
+			source= FileConfigSource.CreateKubernetes(path, parser, debounce);
+		} else if (watch) {
+			source= FileConfigSource.CreateWatching(path, parser, debounce);
+		} else {
+			source= FileConfigSource.Create(path, parser);
+		}
 		
-		return PollingConfigManager.Create(source, configTarget, pollSeconds);
+		return createPollingManager(uri, source, configTarget, parsePollTime(uri, pollSeconds));
 	}
 	
 	/**
@@ -283,19 +510,27 @@ public class ConfigManagerFactory {
 		String host= uri.getPathSection(0);
 		String token= uri.getPathSection(1);
 		
-		String pollTimeString= uri.getLocalArgument("pollTime");
-		int pollTime= 300;
-		if (pollTimeString != null) {
+		int pollTime= parsePollTime(uri, 300);
+		
+		String longPollString= uri.getLocalArgument("longPoll");
+		int longPoll= 0;
+		if (longPollString != null) {
 			try {
-				pollTime= Integer.parseInt(pollTimeString);
+				longPoll= Integer.parseInt(longPollString);
 			} catch (NumberFormatException e) {
 				throw new ConfigException(
-						"Polling frequency is not a number", e);
+						"Long-poll timeout is not a number", e);
 			}
 		}
 		
-		ConfigSource source= SmbtrackConfigSource.Create(host, token);				
-		return PollingConfigManager.Create(source, configTarget, pollTime);
+		boolean warmStart= Boolean.parseBoolean(uri.getLocalArgument("warmStart", "false"));
+		
+		ConfigSource source= SmbtrackConfigSource.Create(host, token, HttpSourceOptions.Default()
+				.withLongPollSeconds(longPoll)
+				.withWarmStart(warmStart)
+				.withTimeouts(createTimeouts(uri)));
+		
+		return createPollingManager(uri, source, configTarget, pollTime);
 	}
 	
 	/**
@@ -334,16 +569,7 @@ public class ConfigManagerFactory {
 		
 		String alarmName= uri.getLocalArgument("alarm");
 
-		String pollTimeString= uri.getLocalArgument("pollTime");
-		int pollTime= 300;
-		if (pollTimeString != null) {
-			try {
-				pollTime= Integer.parseInt(pollTimeString);
-			} catch (NumberFormatException e) {
-				throw new ConfigException(
-						"Polling frequency is not a number", e);
-			}
-		}
+		int pollTime= parsePollTime(uri, 300);
 
 		// The AppConfig session stuff requires you (for some reason) to pass in the minimum
 		// required polling time, and it has a minimum of 15.  We're giving 15 seconds of slack
@@ -353,8 +579,9 @@ public class ConfigManagerFactory {
 		}
 		
 		ConfigSource source= AwsAppConfigSource.Create(
-				applicationId, configurationId, environmentId, pollTime - 15, alarmName);
+				applicationId, configurationId, environmentId, pollTime - 15, alarmName,
+				createTimeouts(uri));
 		
-		return PollingConfigManager.Create(source, configTarget, pollTime);
+		return createPollingManager(uri, source, configTarget, pollTime);
 	}
 }
@@ -77,4 +77,43 @@ public interface ConfigSource {
 			@NonNull String code,
 			@NonNull String message,
 			@Nullable Throwable cause);
+	
+	/**
+	 * getPollHintSeconds
+	 * 
+	 * Returns the minimum time the source wants the manager to wait before polling again,
+	 * for sources where the server says how often it wants to be asked.  The manager will
+	 * wait at least this long even if its own poll time is shorter.
+	 * 
+	 * @return							Seconds until the next poll, or zero for no preference
+	 */
+	public default int getPollHintSeconds() {
+		return 0;
+	}
+	
+	/**
+	 * isFetchFailing
+	 * 
+	 * Returns whether the last attempt to reach the upstream source failed.  Sources swallow
+	 * transient errors in needsReload(), so this is how the manager finds out it should back
+	 * off instead of retrying at the normal rate.
+	 * 
+	 * @return							If the last fetch failed
+	 */
+	public default boolean isFetchFailing() {
+		return false;
+	}
+	
+	/**
+	 * needsRevalidation
+	 * 
+	 * Returns whether the configuration last handed out came from a local cache without
+	 * upstream being asked.  The manager polls again right away when this is true, so the
+	 * application can start on the cached copy while the current one is fetched.
+	 * 
+	 * @return							If the manager should poll again immediately
+	 */
+	public default boolean needsRevalidation() {
+		return false;
+	}
 }
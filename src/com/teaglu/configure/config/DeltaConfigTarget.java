@@ -0,0 +1,56 @@
+/****************************************************************************
+ * Copyright 2022 Teaglu, LLC                                               *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *   http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ ****************************************************************************/
+
+package com.teaglu.configure.config;
+
+import org.eclipse.jdt.annotation.NonNull;
+
+import com.teaglu.composite.Composite;
+
+/**
+ * DeltaConfigTarget
+ * 
+ * An optional extension of ConfigTarget for targets that can update themselves in place.  The
+ * first configuration is always sent through apply().  After that, a manager that supports
+ * deltas calls applyDelta() with a list of the subtrees that were added, removed, or changed
+ * relative to the last configuration that was applied successfully, so the target only has to
+ * touch what actually changed.
+ * 
+ * Deltas are computed on the tree CompositeTree keeps for each configuration, which covers
+ * JSON and YAML configurations loaded by any of the sources in this library.  A configuration
+ * built some other way that can't serialize itself to JSON is always sent through apply().
+ * 
+ */
+public interface DeltaConfigTarget extends ConfigTarget {
+	/**
+	 * applyDelta
+	 * 
+	 * Apply a changed configuration.  The full new configuration is passed along with the
+	 * delta, so the target can read the new values for the changed paths.  This is never
+	 * called with an empty delta.
+	 * 
+	 * As with apply(), throwing an exception is considered a rejection of the configuration.
+	 * A rejected configuration is not used as the base for the next delta.
+	 * 
+	 * @param config					The new configuration
+	 * @param delta						What changed since the last applied configuration
+	 * 
+	 * @throws Exception				Anything that goes wrong
+	 */
+	public void applyDelta(
+			@NonNull Composite config,
+			@NonNull ConfigDelta delta) throws Exception;
+}
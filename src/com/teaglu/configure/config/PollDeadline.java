@@ -0,0 +1,94 @@
+/****************************************************************************
+ * Copyright 2022 Teaglu, LLC                                               *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *   http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ ****************************************************************************/
+
+package com.teaglu.configure.config;
+
+import java.time.Duration;
+
+import org.eclipse.jdt.annotation.NonNull;
+
+/**
+ * PollDeadline
+ * 
+ * The time budget for the poll running on the current thread.  The polling manager sets this
+ * around its calls into the source, and sources use it to cut their own network timeouts
+ * short so that all the steps of one poll together can't run past the deadline.
+ *
+ */
+public final class PollDeadline {
+	private PollDeadline() {}
+	
+	private static final ThreadLocal<Long> deadline= new ThreadLocal<>();
+	
+	/**
+	 * set
+	 * 
+	 * Set the deadline for the current thread
+	 * 
+	 * @param deadlineMillis			Deadline as a System.currentTimeMillis() value
+	 */
+	public static void set(long deadlineMillis) {
+		deadline.set(deadlineMillis);
+	}
+	
+	/**
+	 * clear
+	 * 
+	 * Remove any deadline from the current thread
+	 */
+	public static void clear() {
+		deadline.remove();
+	}
+	
+	/**
+	 * getRemainingMillis
+	 * 
+	 * @return							Milliseconds left, zero if the deadline has passed, or
+	 * 									Long.MAX_VALUE if there is no deadline
+	 */
+	public static long getRemainingMillis() {
+		Long deadlineMillis= deadline.get();
+		if (deadlineMillis == null) {
+			return Long.MAX_VALUE;
+		}
+		
+		return Math.max(0, deadlineMillis - System.currentTimeMillis());
+	}
+	
+	/**
+	 * bound
+	 * 
+	 * Shorten a timeout so it ends no later than the deadline
+	 * 
+	 * @param timeout					Timeout the caller would normally use
+	 * 
+	 * @return							The smaller of the timeout and the time remaining
+	 */
+	public static @NonNull Duration bound(@NonNull Duration timeout) {
+		long remaining= getRemainingMillis();
+		if (remaining == Long.MAX_VALUE) {
+			return timeout;
+		}
+		
+		// Zero and negative durations aren't allowed as timeouts
+		long boundMillis= Math.max(1, Math.min(remaining, timeout.toMillis()));
+		
+		@SuppressWarnings("null")
+		@NonNull Duration rval= Duration.ofMillis(boundMillis);
+		
+		return rval;
+	}
+}
@@ -0,0 +1,35 @@
+/****************************************************************************
+ * Copyright 2022 Teaglu, LLC                                               *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *   http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ ****************************************************************************/
+
+package com.teaglu.configure.config;
+
+/**
+ * SourceChangeListener
+ * 
+ * Callback used by a WatchableConfigSource to tell its manager that the configuration has
+ * probably changed.
+ *
+ */
+public interface SourceChangeListener {
+	/**
+	 * sourceChanged
+	 * 
+	 * Called when the source has reason to believe a new configuration is available.  This
+	 * may be called from any thread, should return quickly, and may be called spuriously -
+	 * the manager still goes through needsReload() before reloading.
+	 */
+	public void sourceChanged();
+}
@@ -0,0 +1,46 @@
+/****************************************************************************
+ * Copyright 2022 Teaglu, LLC                                               *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *   http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ ****************************************************************************/
+
+package com.teaglu.configure.config;
+
+import org.eclipse.jdt.annotation.NonNull;
+
+/**
+ * WatchableConfigSource
+ * 
+ * An optional extension of ConfigSource for sources that can find out about changes on their
+ * own, without waiting to be polled.  A manager that supports this registers a listener on
+ * start, and polls immediately whenever the listener is called.  Regular polling continues
+ * as a fallback, so a source that can't watch for some reason doesn't have to do anything.
+ *
+ */
+public interface WatchableConfigSource extends ConfigSource {
+	/**
+	 * startWatching
+	 * 
+	 * Start watching for changes.
+	 * 
+	 * @param listener					Listener to call when a change is detected
+	 */
+	public void startWatching(@NonNull SourceChangeListener listener);
+	
+	/**
+	 * stopWatching
+	 * 
+	 * Stop watching for changes.  The listener will not be called after this returns.
+	 */
+	public void stopWatching();
+}
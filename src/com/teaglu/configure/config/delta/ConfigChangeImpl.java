@@ -0,0 +1,76 @@
+/****************************************************************************
+ * Copyright 2022 Teaglu, LLC                                               *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *   http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ ****************************************************************************/
+
+package com.teaglu.configure.config.delta;
+
+import java.util.List;
+
+import org.eclipse.jdt.annotation.NonNull;
+
+import com.teaglu.configure.config.ConfigChange;
+import com.teaglu.configure.config.ConfigChangeType;
+
+/**
+ * ConfigChangeImpl
+ * 
+ * Standard implementation of ConfigChange
+ *
+ */
+public class ConfigChangeImpl implements ConfigChange {
+	private final @NonNull ConfigChangeType type;
+	private final @NonNull List<@NonNull String> path;
+	
+	private ConfigChangeImpl(
+			@NonNull ConfigChangeType type,
+			@NonNull List<@NonNull String> path)
+	{
+		this.type= type;
+		this.path= path;
+	}
+	
+	public static @NonNull ConfigChange Create(
+			@NonNull ConfigChangeType type,
+			@NonNull List<@NonNull String> path)
+	{
+		@SuppressWarnings("null")
+		@NonNull List<@NonNull String> pathCopy= List.copyOf(path);
+		
+		return new ConfigChangeImpl(type, pathCopy);
+	}
+	
+	@Override
+	public @NonNull ConfigChangeType getType() {
+		return type;
+	}
+	
+	@Override
+	public @NonNull List<@NonNull String> getPath() {
+		return path;
+	}
+	
+	@Override
+	public @NonNull String getPathString() {
+		@SuppressWarnings("null")
+		@NonNull String rval= String.join(".", path);
+		
+		return rval;
+	}
+	
+	@Override
+	public String toString() {
+		return type.name() + " " + getPathString();
+	}
+}
@@ -0,0 +1,74 @@
+/****************************************************************************
+ * Copyright 2022 Teaglu, LLC                                               *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *   http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ ****************************************************************************/
+
+package com.teaglu.configure.config.delta;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jdt.annotation.NonNull;
+
+import com.teaglu.configure.config.ConfigChange;
+import com.teaglu.configure.config.ConfigChangeType;
+import com.teaglu.configure.config.ConfigDelta;
+
+/**
+ * ConfigDeltaImpl
+ * 
+ * Standard implementation of ConfigDelta
+ *
+ */
+public class ConfigDeltaImpl implements ConfigDelta {
+	private final @NonNull List<@NonNull ConfigChange> changes;
+	
+	private ConfigDeltaImpl(@NonNull List<@NonNull ConfigChange> changes) {
+		this.changes= changes;
+	}
+	
+	public static @NonNull ConfigDelta Create(@NonNull List<@NonNull ConfigChange> changes) {
+		@SuppressWarnings("null")
+		@NonNull List<@NonNull ConfigChange> changesCopy= List.copyOf(changes);
+		
+		return new ConfigDeltaImpl(changesCopy);
+	}
+	
+	@Override
+	public boolean isEmpty() {
+		return changes.isEmpty();
+	}
+	
+	@Override
+	public @NonNull List<@NonNull ConfigChange> getChanges() {
+		return changes;
+	}
+	
+	@Override
+	public @NonNull List<@NonNull ConfigChange> getChanges(@NonNull ConfigChangeType type) {
+		List<@NonNull ConfigChange> rval= new ArrayList<>();
+		for (ConfigChange change : changes) {
+			if (change.getType() == type) {
+				rval.add(change);
+			}
+		}
+		
+		return rval;
+	}
+	
+	@Override
+	public String toString() {
+		return changes.toString();
+	}
+}
@@ -0,0 +1,107 @@
+/****************************************************************************
+ * Copyright 2022 Teaglu, LLC                                               *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *   http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ ****************************************************************************/
+
+package com.teaglu.configure.config.delta;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jdt.annotation.NonNull;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.teaglu.configure.config.ConfigChange;
+import com.teaglu.configure.config.ConfigChangeType;
+import com.teaglu.configure.config.ConfigDelta;
+
+/**
+ * ConfigDiffer
+ * 
+ * Computes a path-level delta between two configuration trees.  Objects are compared key by
+ * key and recursed into; anything else (including arrays) is compared as a whole value and
+ * reported as a single change at its path.
+ *
+ */
+public class ConfigDiffer {
+	private ConfigDiffer() {}
+	
+	/**
+	 * Compute
+	 * 
+	 * Compute the delta between two trees
+	 * 
+	 * @param previous					Previously applied tree
+	 * @param current					New tree
+	 * 
+	 * @return							Delta
+	 */
+	public static @NonNull ConfigDelta Compute(
+			@NonNull JsonElement previous,
+			@NonNull JsonElement current)
+	{
+		List<@NonNull ConfigChange> changes= new ArrayList<>();
+		List<@NonNull String> path= new ArrayList<>();
+		
+		compare(path, previous, current, changes);
+		
+		return ConfigDeltaImpl.Create(changes);
+	}
+	
+	private static void compare(
+			@NonNull List<@NonNull String> path,
+			@NonNull JsonElement previous,
+			@NonNull JsonElement current,
+			@NonNull List<@NonNull ConfigChange> changes)
+	{
+		if (previous.isJsonObject() && current.isJsonObject()) {
+			JsonObject previousObject= previous.getAsJsonObject();
+			JsonObject currentObject= current.getAsJsonObject();
+			
+			for (Map.Entry<String, JsonElement> entry : previousObject.entrySet()) {
+				@SuppressWarnings("null")
+				@NonNull String key= entry.getKey();
+				
+				path.add(key);
+				
+				JsonElement currentChild= currentObject.get(key);
+				if (currentChild == null) {
+					changes.add(ConfigChangeImpl.Create(ConfigChangeType.REMOVED, path));
+				} else {
+					@SuppressWarnings("null")
+					@NonNull JsonElement previousChild= entry.getValue();
+					
+					compare(path, previousChild, currentChild, changes);
+				}
+				
+				path.remove(path.size() - 1);
+			}
+			
+			for (Map.Entry<String, JsonElement> entry : currentObject.entrySet()) {
+				@SuppressWarnings("null")
+				@NonNull String key= entry.getKey();
+				
+				if (!previousObject.has(key)) {
+					path.add(key);
+					changes.add(ConfigChangeImpl.Create(ConfigChangeType.ADDED, path));
+					path.remove(path.size() - 1);
+				}
+			}
+		} else if (!previous.equals(current)) {
+			changes.add(ConfigChangeImpl.Create(ConfigChangeType.CHANGED, path));
+		}
+	}
+}
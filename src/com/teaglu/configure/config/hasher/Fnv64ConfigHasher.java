@@ -0,0 +1,74 @@
+/****************************************************************************
+ * Copyright 2022 Teaglu, LLC                                               *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *   http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ ****************************************************************************/
+
+package com.teaglu.configure.config.hasher;
+
+import org.eclipse.jdt.annotation.NonNull;
+
+import com.teaglu.configure.config.ConfigHasher;
+
+/**
+ * Fnv64ConfigHasher
+ * 
+ * A cheap 64-bit non-cryptographic config hasher, using FNV-1a with a final avalanche step.
+ * This is plenty to detect accidental changes between polls, but shouldn't be used where
+ * someone could deliberately craft a collision.
+ *
+ */
+public class Fnv64ConfigHasher extends TreeConfigHasher {
+	private static final long FNV_OFFSET_BASIS= 0xcbf29ce484222325L;
+	private static final long FNV_PRIME= 0x100000001b3L;
+	
+	private long hash;
+	
+	private Fnv64ConfigHasher() {}
+	
+	public static @NonNull ConfigHasher Create() {
+		return new Fnv64ConfigHasher();
+	}
+	
+	@Override
+	protected void reset() {
+		hash= FNV_OFFSET_BASIS;
+	}
+	
+	@Override
+	protected void consume(byte[] data, int length) {
+		long h= hash;
+		for (int pos= 0; pos < length; pos++) {
+			h^= (data[pos] & 0xff);
+			h*= FNV_PRIME;
+		}
+		hash= h;
+	}
+	
+	@Override
+	protected @NonNull String finish() {
+		// FNV mixes the low bits poorly on short inputs, so finish with the murmur3 fmix64
+		// step to spread everything out.
+		long h= hash;
+		h^= (h >>> 33);
+		h*= 0xff51afd7ed558ccdL;
+		h^= (h >>> 33);
+		h*= 0xc4ceb9fe1a85ec53L;
+		h^= (h >>> 33);
+		
+		@SuppressWarnings("null")
+		@NonNull String rval= Long.toHexString(h);
+		
+		return rval;
+	}
+}
@@ -0,0 +1,70 @@
+/****************************************************************************
+ * Copyright 2022 Teaglu, LLC                                               *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *   http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ ****************************************************************************/
+
+package com.teaglu.configure.config.hasher;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+import org.eclipse.jdt.annotation.NonNull;
+
+import com.teaglu.configure.config.ConfigHasher;
+
+/**
+ * Sha256ConfigHasher
+ * 
+ * A config hasher using SHA-256.  This is the default, and is safe to use when the digest
+ * might be compared against something an outside party could influence.
+ *
+ */
+public class Sha256ConfigHasher extends TreeConfigHasher {
+	private final @NonNull MessageDigest digest;
+	private final Base64.Encoder encoder= Base64.getEncoder();
+	
+	private Sha256ConfigHasher() {
+		try {
+			@SuppressWarnings("null")
+			@NonNull MessageDigest tmpDigest= MessageDigest.getInstance("SHA-256");
+			
+			digest= tmpDigest;
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException("SHA not available");
+		}
+	}
+	
+	public static @NonNull ConfigHasher Create() {
+		return new Sha256ConfigHasher();
+	}
+	
+	@Override
+	protected void reset() {
+		digest.reset();
+	}
+	
+	@Override
+	protected void consume(byte[] data, int length) {
+		digest.update(data, 0, length);
+	}
+	
+	@Override
+	protected @NonNull String finish() {
+		@SuppressWarnings("null")
+		@NonNull String rval= encoder.encodeToString(digest.digest());
+		
+		return rval;
+	}
+}
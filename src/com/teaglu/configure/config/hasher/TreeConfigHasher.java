@@ -0,0 +1,188 @@
+/****************************************************************************
+ * Copyright 2022 Teaglu, LLC                                               *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *   http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ ****************************************************************************/
+
+package com.teaglu.configure.config.hasher;
+
+import java.util.Arrays;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.teaglu.composite.Composite;
+import com.teaglu.configure.config.ConfigHasher;
+import com.teaglu.configure.config.tree.CompositeTree;
+
+/**
+ * TreeConfigHasher
+ * 
+ * Base class for hashers that walk the configuration tree once and feed a canonical binary
+ * encoding straight into the hash function through a small reusable buffer.  Object keys are
+ * visited in sorted order so key order doesn't matter, and every value is tagged with its type
+ * and length so different trees can't produce the same byte sequence.  The tree is the one
+ * CompositeTree kept when the configuration was parsed, so no serialized copy of the
+ * configuration is built on each poll, and JSON and YAML are digested the same way.
+ *
+ */
+public abstract class TreeConfigHasher implements ConfigHasher {
+	private static final Logger log= LoggerFactory.getLogger(TreeConfigHasher.class);
+	
+	private static final int BUFFER_SIZE= 4096;
+	
+	private static final byte TAG_OBJECT= 'o';
+	private static final byte TAG_ARRAY= 'a';
+	private static final byte TAG_STRING= 's';
+	private static final byte TAG_NUMBER= 'n';
+	private static final byte TAG_BOOLEAN= 'b';
+	private static final byte TAG_NULL= 'z';
+	
+	private final byte[] buffer= new byte[BUFFER_SIZE];
+	private int bufferCnt= 0;
+	
+	// Only complain once about a configuration we can't walk, not on every poll
+	private boolean warnedOpaque;
+	
+	/**
+	 * reset
+	 * 
+	 * Start a new digest
+	 */
+	protected abstract void reset();
+	
+	/**
+	 * consume
+	 * 
+	 * Feed a chunk of the canonical encoding into the hash function
+	 * 
+	 * @param data						Data buffer
+	 * @param length					Number of valid bytes in the buffer
+	 */
+	protected abstract void consume(byte[] data, int length);
+	
+	/**
+	 * finish
+	 * 
+	 * Complete the digest and return it in printable form
+	 * 
+	 * @return							Digest
+	 */
+	protected abstract @NonNull String finish();
+	
+	@Override
+	public @Nullable String hash(@NonNull Composite config) {
+		JsonElement tree= CompositeTree.Convert(config);
+		if (tree == null) {
+			if (!warnedOpaque) {
+				warnedOpaque= true;
+				log.warn("Configuration implementation " + config.getClass().getName() +
+						" doesn't expose a tree, so it can't be digested");
+			}
+			return null;
+		}
+		
+		reset();
+		bufferCnt= 0;
+		
+		walk(tree);
+		flush();
+		
+		return finish();
+	}
+	
+	private void walk(@NonNull JsonElement element) {
+		if (element.isJsonObject()) {
+			JsonObject object= element.getAsJsonObject();
+			
+			String[] keys= object.keySet().toArray(new String[object.size()]);
+			Arrays.sort(keys);
+			
+			writeByte(TAG_OBJECT);
+			writeInt(keys.length);
+			for (String key : keys) {
+				writeString(key);
+				
+				@SuppressWarnings("null")
+				@NonNull JsonElement value= object.get(key);
+				walk(value);
+			}
+		} else if (element.isJsonArray()) {
+			JsonArray array= element.getAsJsonArray();
+			
+			writeByte(TAG_ARRAY);
+			writeInt(array.size());
+			for (JsonElement value : array) {
+				@SuppressWarnings("null")
+				@NonNull JsonElement nonNullValue= value;
+				walk(nonNullValue);
+			}
+		} else if (element.isJsonPrimitive()) {
+			JsonPrimitive primitive= element.getAsJsonPrimitive();
+			
+			if (primitive.isBoolean()) {
+				writeByte(TAG_BOOLEAN);
+				writeByte(primitive.getAsBoolean() ? (byte)1 : (byte)0);
+			} else if (primitive.isNumber()) {
+				// Parsed numbers keep their original text, so this doesn't format anything
+				writeByte(TAG_NUMBER);
+				writeString(primitive.getAsNumber().toString());
+			} else {
+				writeByte(TAG_STRING);
+				writeString(primitive.getAsString());
+			}
+		} else {
+			writeByte(TAG_NULL);
+		}
+	}
+	
+	private void writeByte(byte value) {
+		if (bufferCnt == BUFFER_SIZE) {
+			flush();
+		}
+		buffer[bufferCnt++]= value;
+	}
+	
+	private void writeInt(int value) {
+		writeByte((byte)(value >>> 24));
+		writeByte((byte)(value >>> 16));
+		writeByte((byte)(value >>> 8));
+		writeByte((byte)value);
+	}
+	
+	// Characters are fed as raw UTF-16 code units, which avoids an encoding step and is
+	// just as canonical as UTF-8 for comparison purposes.
+	private void writeString(@NonNull String value) {
+		int length= value.length();
+		writeInt(length);
+		
+		for (int pos= 0; pos < length; pos++) {
+			char c= value.charAt(pos);
+			writeByte((byte)(c >>> 8));
+			writeByte((byte)c);
+		}
+	}
+	
+	private void flush() {
+		if (bufferCnt > 0) {
+			consume(buffer, bufferCnt);
+			bufferCnt= 0;
+		}
+	}
+}
@@ -0,0 +1,110 @@
+/****************************************************************************
+ * Copyright 2022 Teaglu, LLC                                               *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *   http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ ****************************************************************************/
+
+package com.teaglu.configure.config.manager;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.eclipse.jdt.annotation.NonNull;
+
+/**
+ * PollJitter
+ * 
+ * Spreads the polling phase of each node across the poll period.  After a fleet restart every
+ * node starts at nearly the same moment, and with a fixed period they would all keep hitting
+ * the configuration server in the same second forever.
+ * 
+ * The offset is derived from the host name, so a given node always lands on the same phase -
+ * this keeps server load predictable and makes the behavior reproducible while debugging.
+ *
+ */
+class PollJitter {
+	private final long seed;
+	
+	private PollJitter(long seed) {
+		this.seed= seed;
+	}
+	
+	private static PollJitter instance;
+	
+	static synchronized @NonNull PollJitter getInstance() {
+		if (instance == null) {
+			instance= new PollJitter(computeSeed(getNodeName()));
+		}
+		
+		@SuppressWarnings("null")
+		@NonNull PollJitter rval= instance;
+		
+		return rval;
+	}
+	
+	private static @NonNull String getNodeName() {
+		// In a container HOSTNAME is the pod or container name, which is what we want
+		String name= System.getenv("HOSTNAME");
+		if ((name == null) || name.isBlank()) {
+			try {
+				name= InetAddress.getLocalHost().getHostName();
+			} catch (UnknownHostException e) {
+			}
+		}
+		if ((name == null) || name.isBlank()) {
+			name= "localhost";
+		}
+		
+		return name;
+	}
+	
+	private static long computeSeed(@NonNull String name) {
+		// Host names in a fleet tend to differ by a few characters, so use a real digest to
+		// get an even spread instead of String.hashCode().
+		try {
+			MessageDigest digest= MessageDigest.getInstance("SHA-256");
+			byte[] hash= digest.digest(name.getBytes(StandardCharsets.UTF_8));
+			
+			long seed= 0;
+			for (int i= 0; i < 8; i++) {
+				seed= (seed << 8) | (hash[i] & 0xFF);
+			}
+			
+			return seed;
+		} catch (NoSuchAlgorithmException e) {
+			// Every JVM is required to have SHA-256
+			return name.hashCode();
+		}
+	}
+	
+	/**
+	 * shift
+	 * 
+	 * Return the delay that moves a poll running every period onto this node's phase.  The
+	 * result is between half a period and one and a half periods.
+	 * 
+	 * @param periodMillis				Normal poll period
+	 * 
+	 * @return							Delay to use once in place of the period
+	 */
+	long shift(long periodMillis) {
+		if (periodMillis <= 1) {
+			return periodMillis;
+		}
+		
+		return (periodMillis / 2) + Long.remainderUnsigned(seed, periodMillis);
+	}
+}
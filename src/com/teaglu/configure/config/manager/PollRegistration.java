@@ -0,0 +1,228 @@
+/****************************************************************************
+ * Copyright 2022 Teaglu, LLC                                               *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *   http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ ****************************************************************************/
+
+package com.teaglu.configure.config.manager;
+
+import java.util.concurrent.ScheduledFuture;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * PollRegistration
+ * 
+ * A handle for a task registered with the PollScheduler.  The registration keeps track of
+ * whether the task is waiting on the timer or running on a worker, so that cancel() can
+ * guarantee the task is not running and will not run again once it returns.  When waiting
+ * isn't acceptable, abort() interrupts the task instead and only waits a bounded time.
+ *
+ */
+public class PollRegistration {
+	private static final Logger log= LoggerFactory.getLogger(PollRegistration.class);
+	
+	private final @NonNull PollScheduler scheduler;
+	private final @NonNull PollTask task;
+	
+	private ScheduledFuture<?> pending;
+	private Thread runningThread;
+	private boolean running= false;
+	private boolean wakeRequested= false;
+	private boolean cancelled= false;
+	private boolean aborted= false;
+	
+	PollRegistration(
+			@NonNull PollScheduler scheduler,
+			@NonNull PollTask task)
+	{
+		this.scheduler= scheduler;
+		this.task= task;
+	}
+	
+	/**
+	 * schedule
+	 * 
+	 * Replace any pending timer with a new one firing after the given delay.
+	 * 
+	 * @param delayMillis				Milliseconds until the task should run
+	 */
+	synchronized void schedule(long delayMillis) {
+		if (!cancelled) {
+			if (pending != null) {
+				pending.cancel(false);
+			}
+			
+			pending= scheduler.scheduleTimer(this::fire, Math.max(0, delayMillis));
+		}
+	}
+	
+	// Called on the timer thread - never do any real work here, just hand it off.
+	private void fire() {
+		synchronized (this) {
+			pending= null;
+			if (cancelled || running) {
+				return;
+			}
+			running= true;
+		}
+		
+		scheduler.execute(this::runTask);
+	}
+	
+	private void runTask() {
+		synchronized (this) {
+			if (cancelled) {
+				running= false;
+				notifyAll();
+				return;
+			}
+			runningThread= Thread.currentThread();
+		}
+		
+		long nextDelay= 0;
+		try {
+			nextDelay= task.poll();
+		} catch (RuntimeException e) {
+			// Same idea as the catch-all in the managers - never let a wild exception stop
+			// the task from being rescheduled.
+			log.error("Unexpected unchecked exception in poll task", e);
+		} finally {
+			synchronized (this) {
+				running= false;
+				runningThread= null;
+				notifyAll();
+				
+				// The interrupt was ours, so don't let it leak into the next task on this worker
+				if (aborted) {
+					Thread.interrupted();
+				}
+				
+				if (wakeRequested) {
+					wakeRequested= false;
+					nextDelay= 0;
+				}
+				schedule(nextDelay);
+			}
+		}
+	}
+	
+	/**
+	 * wake
+	 * 
+	 * Run the task as soon as possible instead of waiting for the timer.  If the task is
+	 * currently running it will be run again immediately after it finishes.
+	 */
+	public synchronized void wake() {
+		if (!cancelled) {
+			if (running) {
+				wakeRequested= true;
+			} else {
+				schedule(0);
+			}
+		}
+	}
+	
+	/**
+	 * cancel
+	 * 
+	 * Remove the task from the scheduler.  If the task is currently running this waits for it
+	 * to finish, unless it's called from inside the task itself.  After this returns the task
+	 * will not be called again.
+	 */
+	public void cancel() {
+		boolean interrupted= false;
+		
+		synchronized (this) {
+			cancelled= true;
+			
+			if (pending != null) {
+				pending.cancel(false);
+				pending= null;
+			}
+			
+			if (runningThread != Thread.currentThread()) {
+				while (running) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						interrupted= true;
+					}
+				}
+			}
+		}
+		
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	/**
+	 * abort
+	 * 
+	 * Remove the task from the scheduler like cancel(), but interrupt the task if it's running
+	 * instead of waiting for it to finish on its own, and only wait a limited time for it to
+	 * respond.  If this returns false the task is still running, and may still finish what it
+	 * was doing, but it will not be called again.
+	 * 
+	 * @param waitMillis				Longest time to wait for a running task
+	 * 
+	 * @return							Whether the task is known to have stopped
+	 */
+	public boolean abort(long waitMillis) {
+		boolean interrupted= false;
+		boolean stopped;
+		
+		synchronized (this) {
+			cancelled= true;
+			aborted= true;
+			
+			if (pending != null) {
+				pending.cancel(false);
+				pending= null;
+			}
+			
+			if (runningThread == Thread.currentThread()) {
+				return false;
+			}
+			
+			if (runningThread != null) {
+				runningThread.interrupt();
+			}
+			
+			long deadlineMillis= System.currentTimeMillis() + waitMillis;
+			while (running) {
+				long remaining= deadlineMillis - System.currentTimeMillis();
+				if (remaining <= 0) {
+					break;
+				}
+				
+				try {
+					wait(remaining);
+				} catch (InterruptedException e) {
+					interrupted= true;
+				}
+			}
+			
+			stopped= !running;
+		}
+		
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		
+		return stopped;
+	}
+}
@@ -0,0 +1,140 @@
+/****************************************************************************
+ * Copyright 2022 Teaglu, LLC                                               *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *   http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ ****************************************************************************/
+
+package com.teaglu.configure.config.manager;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jdt.annotation.NonNull;
+
+/**
+ * PollScheduler
+ * 
+ * A process-wide scheduler shared by every polling configuration manager.  A single timer
+ * thread keeps track of when each registration is due, and hands the actual work to a small
+ * bounded pool of worker threads.  This keeps the thread count flat no matter how many
+ * configurations are being monitored - most of them are idle nearly all of the time.
+ * 
+ * The worker count defaults to the number of processors (between 2 and 8) and can be
+ * overridden with the com.teaglu.configure.pollThreads system property.
+ *
+ */
+public class PollScheduler {
+	private static final String THREADS_PROPERTY= "com.teaglu.configure.pollThreads";
+	
+	private final @NonNull ScheduledThreadPoolExecutor timer;
+	private final @NonNull ExecutorService workers;
+	
+	private PollScheduler(int workerCount) {
+		timer= new ScheduledThreadPoolExecutor(1, new NamedThreadFactory("configuration-scheduler"));
+		
+		// Without this cancelled timers sit in the queue until they would have fired, which
+		// with long poll times and frequent wakes adds up.
+		timer.setRemoveOnCancelPolicy(true);
+		
+		workers= new ThreadPoolExecutor(
+				workerCount, workerCount,
+				60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<>(),
+				new NamedThreadFactory("configuration-poll"));
+	}
+	
+	private static PollScheduler instance;
+	
+	public static synchronized @NonNull PollScheduler getInstance() {
+		if (instance == null) {
+			int workerCount= Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors()));
+			
+			String threadsString= System.getProperty(THREADS_PROPERTY);
+			if (threadsString != null) {
+				try {
+					workerCount= Math.max(1, Integer.parseInt(threadsString));
+				} catch (NumberFormatException e) {
+				}
+			}
+			
+			instance= new PollScheduler(workerCount);
+		}
+		
+		@SuppressWarnings("null")
+		@NonNull PollScheduler rval= instance;
+		
+		return rval;
+	}
+	
+	/**
+	 * register
+	 * 
+	 * Register a task to be run periodically.  The task is first run after the initial delay,
+	 * and afterwards after whatever delay the task returns.
+	 * 
+	 * @param task						Task to run
+	 * @param initialDelayMillis		Milliseconds until the first run
+	 * 
+	 * @return							Registration handle used to wake or cancel the task
+	 */
+	public @NonNull PollRegistration register(
+			@NonNull PollTask task,
+			long initialDelayMillis)
+	{
+		PollRegistration registration= new PollRegistration(this, task);
+		registration.schedule(initialDelayMillis);
+		
+		return registration;
+	}
+	
+	@NonNull ScheduledFuture<?> scheduleTimer(
+			@NonNull Runnable runnable,
+			long delayMillis)
+	{
+		@SuppressWarnings("null")
+		@NonNull ScheduledFuture<?> rval= timer.schedule(
+				runnable, delayMillis, TimeUnit.MILLISECONDS);
+		
+		return rval;
+	}
+	
+	void execute(@NonNull Runnable runnable) {
+		workers.execute(runnable);
+	}
+	
+	private static class NamedThreadFactory implements ThreadFactory {
+		private final @NonNull String prefix;
+		private final AtomicInteger count= new AtomicInteger();
+		
+		private NamedThreadFactory(@NonNull String prefix) {
+			this.prefix= prefix;
+		}
+		
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread= new Thread(runnable, prefix + "-" + count.incrementAndGet());
+			
+			// The scheduler lives for the life of the process and is shared, so it shouldn't
+			// be what keeps the JVM from exiting.
+			thread.setDaemon(true);
+			
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,35 @@
+/****************************************************************************
+ * Copyright 2022 Teaglu, LLC                                               *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *   http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ ****************************************************************************/
+
+package com.teaglu.configure.config.manager;
+
+/**
+ * PollTask
+ * 
+ * A unit of periodic work registered with the shared PollScheduler.
+ *
+ */
+public interface PollTask {
+	/**
+	 * poll
+	 * 
+	 * Perform one round of work.  This is called from one of the scheduler's worker threads,
+	 * and is never called concurrently for the same registration.
+	 * 
+	 * @return							Milliseconds until the task should run again
+	 */
+	public long poll();
+}
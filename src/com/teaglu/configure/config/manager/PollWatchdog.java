@@ -0,0 +1,104 @@
+/****************************************************************************
+ * Copyright 2022 Teaglu, LLC                                               *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *   http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ ****************************************************************************/
+
+package com.teaglu.configure.config.manager;
+
+import java.util.concurrent.ScheduledFuture;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.teaglu.configure.config.PollDeadline;
+
+/**
+ * PollWatchdog
+ * 
+ * Enforces the poll deadline on the current thread.  The deadline is published through
+ * PollDeadline so sources can shorten their own timeouts, and if the thread is still inside
+ * the source when the deadline passes it is interrupted.  That covers the cases timeouts
+ * don't - most importantly a response body that stops arriving part way through.
+ * 
+ * The watchdog must be closed on the thread that started it.
+ *
+ */
+class PollWatchdog implements AutoCloseable {
+	private static final Logger log= LoggerFactory.getLogger(PollWatchdog.class);
+	
+	private final @NonNull Thread thread;
+	private ScheduledFuture<?> timer;
+	
+	private boolean closed= false;
+	private boolean fired= false;
+	
+	private PollWatchdog() {
+		@SuppressWarnings("null")
+		@NonNull Thread currentThread= Thread.currentThread();
+		
+		this.thread= currentThread;
+	}
+	
+	/**
+	 * Start
+	 * 
+	 * Start watching the current thread
+	 * 
+	 * @param deadlineMillis			Deadline as a System.currentTimeMillis() value, or zero
+	 * 									for no deadline
+	 * 
+	 * @return							Watchdog to close when the thread leaves the source
+	 */
+	static @NonNull PollWatchdog Start(long deadlineMillis) {
+		PollWatchdog watchdog= new PollWatchdog();
+		
+		if (deadlineMillis > 0) {
+			PollDeadline.set(deadlineMillis);
+			
+			watchdog.timer= PollScheduler.getInstance().scheduleTimer(
+					watchdog::expire, deadlineMillis - System.currentTimeMillis());
+		}
+		
+		return watchdog;
+	}
+	
+	private synchronized void expire() {
+		if (!closed) {
+			fired= true;
+			
+			log.warn("Configuration poll passed its deadline, interrupting " + thread.getName());
+			thread.interrupt();
+		}
+	}
+	
+	@Override
+	public void close() {
+		boolean wasFired;
+		synchronized (this) {
+			closed= true;
+			wasFired= fired;
+		}
+		
+		if (timer != null) {
+			timer.cancel(false);
+			PollDeadline.clear();
+		}
+		
+		// The interrupt was ours, so don't let it leak into whatever the thread does next
+		if (wasFired) {
+			Thread.interrupted();
+		}
+	}
+}
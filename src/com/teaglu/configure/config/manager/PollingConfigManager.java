@@ -17,22 +17,25 @@
 package com.teaglu.configure.config.manager;
 
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.util.Base64;
-import java.util.concurrent.Semaphore;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadLocalRandom;
 
 import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.gson.JsonObject;
+import com.google.gson.JsonElement;
 import com.teaglu.composite.Composite;
-import com.teaglu.composite.json.JsonCompositeImpl;
+import com.teaglu.configure.config.CircuitState;
 import com.teaglu.configure.config.ConfigTarget;
+import com.teaglu.configure.config.DeltaConfigTarget;
+import com.teaglu.configure.config.WatchableConfigSource;
+import com.teaglu.configure.config.delta.ConfigDiffer;
+import com.teaglu.configure.config.hasher.Sha256ConfigHasher;
+import com.teaglu.configure.config.tree.CompositeTree;
 import com.teaglu.configure.exception.ConfigException;
+import com.teaglu.configure.config.ConfigDelta;
+import com.teaglu.configure.config.ConfigHasher;
 import com.teaglu.configure.config.ConfigManager;
 import com.teaglu.configure.config.ConfigSource;
 
@@ -40,37 +43,51 @@ import com.teaglu.configure.config.ConfigSource;
  * RouteManagerImpl
  * 
  * This standard implementation of RouteManager periodically checks if the configuration
- * source needs a reload, and if so it reloads and applies the changes live.
+ * source needs a reload, and if so it reloads and applies the changes live.  Polling is done
+ * through the shared PollScheduler, so there is no dedicated thread per manager.
  * 
  */
-public class PollingConfigManager implements ConfigManager, Runnable {
+public class PollingConfigManager implements ConfigManager {
 	private static final Logger log= LoggerFactory.getLogger(PollingConfigManager.class);
 	
 	private ConfigSource configSource;
 	private int reloadSeconds;
 	
+	// Time allowed for the source in each poll, or zero for no limit
+	private int deadlineSeconds;
+	
 	private ConfigTarget configTarget;
 	
-	private MessageDigest nodeDigest;
-	private Base64.Encoder base64Encoder;
+	private ConfigHasher configHasher;
 	
 	private String configDigest;
 	
+	// Last configuration applied, compared by identity when it can't be digested
+	private Composite configInstance;
+	
+	// The last configuration failed to apply and nothing was rolled back in its place
+	private boolean retryApply;
+	
+	// Last tree applied successfully, only kept for targets that take deltas
+	private JsonElement appliedTree;
+	
+	// Recently applied configurations to roll back to, or null if rollback is off
+	private @Nullable SnapshotHistory history;
+	
 	private PollingConfigManager(
 			@NonNull ConfigSource configSource,
 			@NonNull ConfigTarget configTarget,
-			int reloadSeconds)
+			int reloadSeconds,
+			@NonNull ConfigHasher configHasher,
+			int deadlineSeconds,
+			@Nullable SnapshotHistory history)
 	{
 		this.configSource= configSource;
 		this.configTarget= configTarget;
 		this.reloadSeconds= reloadSeconds;
-		
-		try {
-			nodeDigest= MessageDigest.getInstance("SHA-256");
-		} catch (NoSuchAlgorithmException e) {
-			throw new RuntimeException("SHA not available");
-		}
-		base64Encoder= Base64.getEncoder();
+		this.configHasher= configHasher;
+		this.deadlineSeconds= deadlineSeconds;
+		this.history= history;
 	}
 	
 	public static @NonNull ConfigManager Create(
@@ -78,113 +95,414 @@ public class PollingConfigManager implements ConfigManager, Runnable {
 			@NonNull ConfigTarget configTarget,
 			int reloadSeconds)
 	{
-		return new PollingConfigManager(configSource, configTarget, reloadSeconds);
+		return new PollingConfigManager(
+				configSource, configTarget, reloadSeconds, Sha256ConfigHasher.Create(), 0, null);
 	}
 	
-    private void reload() {
-    	if (configSource.needsReload()) {
-    		try {
-	    		Composite config= configSource.reload();
-	    		
-	    		boolean changed= true;
-	    		if (configDigest != null) {
-	    			String newDigest= null;
-	    			
-	    			if (config instanceof JsonCompositeImpl) {
-	    				JsonObject rawObject= config.serialize(JsonObject.class);
-	    				byte[] rawBytes= rawObject.toString().getBytes(StandardCharsets.UTF_8);
-	    				byte[] rawDigest= nodeDigest.digest(rawBytes);
-
-	    				newDigest= base64Encoder.encodeToString(rawDigest);
-	    			}
-	    			
-	    			if (newDigest != null) {
-	    				if (configDigest.equals(newDigest)) {
-	    					changed= false;
-	    				} else {
-	    					configDigest= newDigest;
-	    				}
-	    			}
-	    		}
-	    		
-	    		if (changed) {
-		    		try {
-		    			configTarget.apply(config);
-		    		
-		    			configSource.reportSuccess();
-		    		} catch (Exception applyException) {
-		    			log.error(
-		    					"Exception applying configuration",
-		    					applyException);
-		    			
-		    			configSource.reportFailure("EX",
-		    					"Exception applying configuration",
-		    					applyException);
-		    		}
-	    		}
-    		} catch (ConfigException reloadException) {
-    			log.error(
-    					"Unable to reload configuration",
-    					reloadException);
-    			
-    			configSource.reportFailure("RE",
-    					"Exception reloading configuration", null);
-    		} catch (IOException retrieveException) {
-    			log.error(
-    					"Unable to retrieve configuration",
-    					retrieveException);
-    			
-    			// If we get an IO exception we don't know whether it's on our end or the other
-    			// end, but either way it probably can't be reached.  There's no reason to try
-    			// to report a failure for most likely transient things.
-    		} catch (Exception unexpectedException) {
-    			// The composite library was throwing unchecked Gson exceptions, causing the
-    			// polling thread to die.  I've wrapped those in a checked exception to make
-    			// sure that won't happen again, so the bug should be fixed there.  This is just
-    			// to make sure any other wild unchecked exceptions don't kill the polling thread.
-    			log.error(
-    					"Unexpected unchecked exception in polling loop",
-    					unexpectedException);
-    		}
-    	}
-    }
-    
-	private boolean stop= false;
-	private final Semaphore wake= new Semaphore(0);
-	private Thread thread;
+	public static @NonNull ConfigManager Create(
+			@NonNull ConfigSource configSource,
+			@NonNull ConfigTarget configTarget,
+			int reloadSeconds,
+			@NonNull ConfigHasher configHasher)
+	{
+		return new PollingConfigManager(
+				configSource, configTarget, reloadSeconds, configHasher, 0, null);
+	}
 	
-	@Override
-	public void run() {
-		for (boolean run= true; run; ) {
-			reload();
+	/**
+	 * Create
+	 * 
+	 * Create a manager that limits how long each poll may spend in the source.  When the
+	 * deadline passes the poll is interrupted and treated as a failed fetch, so a server that
+	 * stops responding can't hold a polling thread - or stop() - indefinitely.
+	 * 
+	 * @param configSource				Source
+	 * @param configTarget				Target
+	 * @param reloadSeconds				Poll time in seconds
+	 * @param configHasher				Hasher used to detect changes
+	 * @param deadlineSeconds			Time allowed in the source per poll, or zero for no limit
+	 * 
+	 * @return							New manager
+	 */
+	public static @NonNull ConfigManager Create(
+			@NonNull ConfigSource configSource,
+			@NonNull ConfigTarget configTarget,
+			int reloadSeconds,
+			@NonNull ConfigHasher configHasher,
+			int deadlineSeconds)
+	{
+		return new PollingConfigManager(
+				configSource, configTarget, reloadSeconds, configHasher, deadlineSeconds, null);
+	}
+	
+	/**
+	 * Create
+	 * 
+	 * Create a manager that rolls back to the last good configuration when the target throws
+	 * applying a new one.  The rollback comes straight from the history, so it doesn't depend
+	 * on the source being reachable.
+	 * 
+	 * @param configSource				Source
+	 * @param configTarget				Target
+	 * @param reloadSeconds				Poll time in seconds
+	 * @param configHasher				Hasher used to detect changes
+	 * @param deadlineSeconds			Time allowed in the source per poll, or zero for no limit
+	 * @param history					History of applied configurations
+	 * 
+	 * @return							New manager
+	 */
+	public static @NonNull ConfigManager Create(
+			@NonNull ConfigSource configSource,
+			@NonNull ConfigTarget configTarget,
+			int reloadSeconds,
+			@NonNull ConfigHasher configHasher,
+			int deadlineSeconds,
+			@NonNull SnapshotHistory history)
+	{
+		return new PollingConfigManager(
+				configSource, configTarget, reloadSeconds, configHasher, deadlineSeconds, history);
+	}
+	
+	/**
+	 * reload
+	 * 
+	 * Check the source and apply any new configuration
+	 * 
+	 * @return							Whether the source could be reached
+	 */
+	private boolean reload() {
+		boolean reachable= true;
+		
+		// Everything that talks to the source shares one deadline.  Applying the configuration
+		// doesn't count against it - the target may legitimately take a while, and it isn't
+		// ours to interrupt.
+		long deadline= (deadlineSeconds > 0)
+				? System.currentTimeMillis() + (deadlineSeconds * 1000L) : 0;
+		
+		boolean needsReload;
+		try (PollWatchdog watchdog= PollWatchdog.Start(deadline)) {
+			needsReload= configSource.needsReload();
+		}
+		
+		// Sources only report new content once, so ask again for one the target rejected
+		needsReload|= retryApply;
+		
+		if (needsReload) {
+			try {
+				Composite config;
+				try (PollWatchdog watchdog= PollWatchdog.Start(deadline)) {
+					config= configSource.reload();
+				}
+				
+				// If the hasher can't handle this configuration we get null back.  Sources hand
+				// back the same instance when the content hasn't changed, so fall back to
+				// comparing that instead of assuming every load is a change.
+				String newDigest= configHasher.hash(config);
+				
+				boolean changed;
+				if (newDigest != null) {
+					changed= !newDigest.equals(configDigest);
+				} else {
+					changed= (config != configInstance);
+				}
+				
+				if (changed) {
+					try {
+						applyConfiguration(config, false);
+						
+						// Only a configuration the target accepted counts as current, so one
+						// that failed is tried again the next time the source hands it back.
+						configDigest= newDigest;
+						configInstance= config;
+						retryApply= false;
+						
+						SnapshotHistory localHistory= history;
+						if (localHistory != null) {
+							localHistory.record(newDigest, config);
+						}
+						
+						configSource.reportSuccess();
+					} catch (Exception applyException) {
+						log.error(
+								"Exception applying configuration",
+								applyException);
+						
+						configSource.reportFailure("EX",
+								"Exception applying configuration",
+								applyException);
+						
+						retryApply= !rollBack(newDigest);
+					}
+				} else {
+					// The source went back to what the target already has
+					retryApply= false;
+				}
+			} catch (ConfigException reloadException) {
+				log.error(
+						"Unable to reload configuration",
+						reloadException);
+				
+				configSource.reportFailure("RE",
+						"Exception reloading configuration", null);
+			} catch (IOException retrieveException) {
+				log.error(
+						"Unable to retrieve configuration",
+						retrieveException);
+				
+				// If we get an IO exception we don't know whether it's on our end or the other
+				// end, but either way it probably can't be reached.  There's no reason to try
+				// to report a failure for most likely transient things.
+				reachable= false;
+			} catch (Exception unexpectedException) {
+				// The composite library was throwing unchecked Gson exceptions, causing the
+				// polling thread to die.  I've wrapped those in a checked exception to make
+				// sure that won't happen again, so the bug should be fixed there.  This is just
+				// to make sure any other wild unchecked exceptions don't kill the polling thread.
+				log.error(
+						"Unexpected unchecked exception in polling loop",
+						unexpectedException);
+			}
+		}
+		
+		if (configSource.isFetchFailing()) {
+			reachable= false;
+		}
+		
+		return reachable;
+	}
+	
+	/**
+	 * applyConfiguration
+	 * 
+	 * Send a changed configuration to the target.  Targets that understand deltas get only
+	 * what changed since the last successful apply - everything else gets the whole tree, as
+	 * does any configuration CompositeTree can't get a tree for.
+	 * 
+	 * @param config					New configuration
+	 * @param full						Always send the whole tree
+	 * 
+	 * @throws Exception				Whatever the target throws
+	 */
+	private void applyConfiguration(
+			@NonNull Composite config,
+			boolean full) throws Exception
+	{
+		if (configTarget instanceof DeltaConfigTarget) {
+			DeltaConfigTarget deltaTarget= (DeltaConfigTarget)configTarget;
+			
+			JsonElement tree= CompositeTree.Convert(config);
+			JsonElement previousTree= appliedTree;
 			
-			synchronized (this) {
-				run= !stop;
+			if (!full && (tree != null) && (previousTree != null)) {
+				ConfigDelta delta= ConfigDiffer.Compute(previousTree, tree);
+				if (!delta.isEmpty()) {
+					log.debug("Applying configuration delta " + delta);
+					deltaTarget.applyDelta(config, delta);
+				}
+			} else {
+				deltaTarget.apply(config);
 			}
 			
-			if (run) {
-				try {
-					wake.tryAcquire(reloadSeconds, TimeUnit.SECONDS);
-				} catch (InterruptedException e) {
+			// Only move the base forward once the target has accepted it
+			appliedTree= tree;
+		} else {
+			configTarget.apply(config);
+		}
+	}
+	
+	/**
+	 * rollBack
+	 * 
+	 * Put back the most recent good configuration after the target failed to apply a new one.
+	 * The target may have been left part way through the failed apply, so it gets the whole
+	 * configuration rather than a delta.  The restored configuration becomes current, so the
+	 * broken one isn't retried on every poll, but is applied again if the source changes back
+	 * to it later.
+	 * 
+	 * @param failedDigest				Digest of the configuration that failed, if known
+	 * 
+	 * @return							Whether an earlier configuration was put back
+	 */
+	private boolean rollBack(@Nullable String failedDigest) {
+		SnapshotHistory localHistory= history;
+		if (localHistory == null) {
+			return false;
+		}
+		
+		SnapshotHistory.Snapshot snapshot= localHistory.latest(failedDigest);
+		if (snapshot == null) {
+			log.warn("No earlier configuration available to roll back to");
+			return false;
+		}
+		
+		try {
+			applyConfiguration(snapshot.getConfiguration(), true);
+			
+			configDigest= snapshot.getDigest();
+			configInstance= snapshot.getConfiguration();
+			
+			log.warn("Rolled back to last good configuration " + snapshot.getDigest());
+			return true;
+		} catch (Exception rollbackException) {
+			log.error(
+					"Exception rolling back to last good configuration",
+					rollbackException);
+			return false;
+		}
+	}
+	
+	private PollRegistration registration;
+	
+	// Whether the poll phase has been moved off the common start time yet
+	private boolean phaseShifted;
+	
+	// How long abort() gives a poll in progress to notice it was interrupted
+	private static final long ABORT_WAIT_MILLIS= 1000;
+	
+	// Consecutive failures before the circuit is considered open
+	private static final int CIRCUIT_FAILURE_THRESHOLD= 5;
+	
+	// Backoff never goes past this, unless the normal poll time is already longer
+	private static final long MAX_BACKOFF_MILLIS= 15 * 60 * 1000L;
+	
+	private int consecutiveFailures;
+	private volatile CircuitState circuitState= CircuitState.CLOSED;
+	
+	@Override
+	public @NonNull CircuitState getCircuitState() {
+		@SuppressWarnings("null")
+		@NonNull CircuitState rval= circuitState;
+		
+		return rval;
+	}
+	
+	/**
+	 * backoffDelay
+	 * 
+	 * Exponential backoff from the normal poll time, with jitter so a fleet that lost the
+	 * server at the same moment doesn't come back at the same moment.
+	 * 
+	 * @param periodMillis				Normal poll period
+	 * 
+	 * @return							Delay before the next attempt
+	 */
+	private long backoffDelay(long periodMillis) {
+		long ceiling= Math.max(periodMillis, MAX_BACKOFF_MILLIS);
+		
+		long delayMillis= periodMillis << Math.min(consecutiveFailures, 20);
+		if ((delayMillis <= 0) || (delayMillis > ceiling)) {
+			delayMillis= ceiling;
+		}
+		
+		// Anywhere in the top half of the window
+		long half= delayMillis / 2;
+		return half + ThreadLocalRandom.current().nextLong(half + 1);
+	}
+	
+	private long poll() {
+		if (circuitState == CircuitState.OPEN) {
+			circuitState= CircuitState.HALF_OPEN;
+		}
+		
+		boolean reachable= reload();
+		
+		long delayMillis= reloadSeconds * 1000L;
+		
+		if (reachable) {
+			if (consecutiveFailures >= CIRCUIT_FAILURE_THRESHOLD) {
+				log.info("Configuration source is reachable again, resuming normal polling");
+			}
+			
+			consecutiveFailures= 0;
+			circuitState= CircuitState.CLOSED;
+		} else {
+			consecutiveFailures++;
+			delayMillis= backoffDelay(delayMillis);
+			
+			if (consecutiveFailures >= CIRCUIT_FAILURE_THRESHOLD) {
+				if (consecutiveFailures == CIRCUIT_FAILURE_THRESHOLD) {
+					log.warn("Configuration source failed " + consecutiveFailures +
+							" times in a row, backing off");
 				}
+				
+				circuitState= CircuitState.OPEN;
 			}
 		}
+		
+		// A source that started from its cache wants to check upstream straight away
+		if (reachable && configSource.needsRevalidation()) {
+			return 0;
+		}
+		
+		// The source may know better - AppConfig's minimum interval, or a Retry-After from
+		// a server that is throttling us.
+		long hintMillis= configSource.getPollHintSeconds() * 1000L;
+		if (hintMillis > delayMillis) {
+			delayMillis= hintMillis;
+		}
+		
+		// The first poll is immediate so the application has a configuration, but after that
+		// move onto this node's phase so a fleet restart doesn't poll in lockstep.
+		if (reachable && !phaseShifted) {
+			phaseShifted= true;
+			delayMillis= PollJitter.getInstance().shift(delayMillis);
+		}
+		
+		return delayMillis;
 	}
 	
-	public void start() {
-		thread= new Thread(this, "configuration-manager");
-		thread.start();
+	@Override
+	public synchronized void start() {
+		if (registration == null) {
+			phaseShifted= false;
+			consecutiveFailures= 0;
+			circuitState= CircuitState.CLOSED;
+			
+			PollRegistration newRegistration= PollScheduler.getInstance().register(this::poll, 0);
+			registration= newRegistration;
+			
+			// Sources that can detect changes themselves just move the next poll up
+			if (configSource instanceof WatchableConfigSource) {
+				((WatchableConfigSource)configSource).startWatching(newRegistration::wake);
+			}
+		}
 	}
 	
+	@Override
 	public void stop() {
+		PollRegistration stopRegistration;
 		synchronized (this) {
-			stop= true;
+			stopRegistration= registration;
+			registration= null;
 		}
-		wake.release();
 		
-		try {
-			thread.join();
-		} catch (InterruptedException e) {
+		if (stopRegistration != null) {
+			if (configSource instanceof WatchableConfigSource) {
+				((WatchableConfigSource)configSource).stopWatching();
+			}
+			
+			// Cancel waits for any poll in progress, so the target won't be called after this.
+			stopRegistration.cancel();
+		}
+	}
+	
+	@Override
+	public void abort() {
+		PollRegistration abortRegistration;
+		synchronized (this) {
+			abortRegistration= registration;
+			registration= null;
+		}
+		
+		if (abortRegistration != null) {
+			if (configSource instanceof WatchableConfigSource) {
+				((WatchableConfigSource)configSource).stopWatching();
+			}
+			
+			if (!abortRegistration.abort(ABORT_WAIT_MILLIS)) {
+				log.warn("Configuration poll did not stop within " + ABORT_WAIT_MILLIS +
+						"ms of being interrupted");
+			}
 		}
 	}
 }
@@ -0,0 +1,360 @@
+/****************************************************************************
+ * Copyright 2022 Teaglu, LLC                                               *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *   http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ ****************************************************************************/
+
+package com.teaglu.configure.config.manager;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.teaglu.composite.Composite;
+import com.teaglu.composite.exception.SchemaException;
+import com.teaglu.configure.config.tree.CompositeTree;
+import com.teaglu.configure.config.tree.SnapshotFile;
+import com.teaglu.configure.config.tree.TreeEncoding;
+import com.teaglu.configure.config.tree.TreeFormat;
+
+/**
+ * SnapshotHistory
+ * 
+ * A bounded ring of the last few configurations that were applied successfully, so that a
+ * configuration the target rejects can be rolled back without going back to the source.
+ * 
+ * The ring is always kept in memory as ready-to-use composites.  When the CONFIGURATION_CACHE
+ * directory is set it is also kept on disk as encoded trees, so the history survives a restart
+ * and loading a JSON configuration back doesn't involve parsing any text.  YAML configurations
+ * are flagged as such and come back as YAML.
+ *
+ */
+public class SnapshotHistory {
+	private static final Logger log= LoggerFactory.getLogger(SnapshotHistory.class);
+	
+	// "TLKG"
+	private static final @NonNull SnapshotFile SNAPSHOT_FILE=
+			SnapshotFile.Create(0x544C4B47, (short)1);
+	
+	private static final String EXTENSION= ".lkg";
+	
+	private static final short FLAG_YAML= 0x0001;
+	
+	/**
+	 * Snapshot
+	 * 
+	 * A configuration that was applied successfully
+	 */
+	public static class Snapshot {
+		private final long sequence;
+		private final @Nullable String digest;
+		private final @NonNull Composite configuration;
+		
+		private Snapshot(
+				long sequence,
+				@Nullable String digest,
+				@NonNull Composite configuration)
+		{
+			this.sequence= sequence;
+			this.digest= digest;
+			this.configuration= configuration;
+		}
+		
+		public @Nullable String getDigest() {
+			return digest;
+		}
+		
+		public @NonNull Composite getConfiguration() {
+			return configuration;
+		}
+	}
+	
+	private final int size;
+	private final @Nullable Path directory;
+	private final @NonNull String baseName;
+	
+	// Most recent first
+	private final Deque<Snapshot> snapshots= new ArrayDeque<>();
+	private long nextSequence= 1;
+	
+	private SnapshotHistory(
+			int size,
+			@Nullable Path directory,
+			@NonNull String baseName)
+	{
+		this.size= size;
+		this.directory= directory;
+		this.baseName= baseName;
+	}
+	
+	/**
+	 * Create
+	 * 
+	 * Create a history for a configuration, loading anything kept on disk from an earlier run.
+	 * The key is hashed to build the file names, so any credentials in it aren't sitting
+	 * around on disk.
+	 * 
+	 * @param key						Unique key for the configuration
+	 * @param size						Number of snapshots to keep
+	 * 
+	 * @return							New history
+	 */
+	public static @NonNull SnapshotHistory Create(
+			@NonNull String key,
+			int size)
+	{
+		if (size < 1) {
+			throw new IllegalArgumentException("History must hold at least one snapshot");
+		}
+		
+		Path directory= null;
+		String cacheDirectory= System.getenv("CONFIGURATION_CACHE");
+		if (cacheDirectory == null) {
+			log.info("Configuration cache not configured - " +
+					"rollback history will be kept in memory only");
+		} else {
+			directory= Paths.get(cacheDirectory);
+		}
+		
+		SnapshotHistory rval= new SnapshotHistory(size, directory, hashKey(key));
+		rval.load();
+		
+		return rval;
+	}
+	
+	private static @NonNull String hashKey(@NonNull String key) {
+		try {
+			MessageDigest digest= MessageDigest.getInstance("SHA-1");
+			digest.update(key.getBytes(StandardCharsets.UTF_8));
+			
+			// URL-safe so the name never contains a slash
+			@SuppressWarnings("null")
+			@NonNull String rval= Base64.getUrlEncoder().withoutPadding()
+					.encodeToString(digest.digest());
+			
+			return rval;
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException("SHA-1 not available");
+		}
+	}
+	
+	/**
+	 * record
+	 * 
+	 * Record a configuration that was just applied successfully
+	 * 
+	 * @param digest					Digest of the configuration, if the hasher could make one
+	 * @param configuration				Configuration
+	 */
+	public synchronized void record(
+			@Nullable String digest,
+			@NonNull Composite configuration)
+	{
+		Snapshot latest= snapshots.peekFirst();
+		if ((latest != null) && (digest != null) && digest.equals(latest.digest)) {
+			return;
+		}
+		
+		Snapshot snapshot= new Snapshot(nextSequence++, digest, configuration);
+		snapshots.addFirst(snapshot);
+		
+		List<Snapshot> dropped= new ArrayList<>();
+		while (snapshots.size() > size) {
+			dropped.add(snapshots.removeLast());
+		}
+		
+		Path localDirectory= directory;
+		if (localDirectory != null) {
+			JsonElement tree= CompositeTree.Convert(configuration);
+			if ((tree != null) && tree.isJsonObject()) {
+				try {
+					store(localDirectory, snapshot.sequence, digest,
+							CompositeTree.GetFormat(configuration), tree);
+				} catch (IOException e) {
+					log.warn("Unable to save configuration to rollback history", e);
+				}
+			} else {
+				log.debug("Configuration can't be converted to a tree, keeping it in memory only");
+			}
+			
+			for (Snapshot droppedSnapshot : dropped) {
+				try {
+					Files.deleteIfExists(pathFor(localDirectory, droppedSnapshot.sequence));
+				} catch (IOException e) {
+					log.warn("Unable to remove old rollback history file", e);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * latest
+	 * 
+	 * Find the most recent snapshot that isn't the given configuration
+	 * 
+	 * @param excludeDigest				Digest of the configuration being rolled back, if known
+	 * 
+	 * @return							Snapshot, or null if there isn't one
+	 */
+	public synchronized @Nullable Snapshot latest(@Nullable String excludeDigest) {
+		for (Snapshot snapshot : snapshots) {
+			if ((excludeDigest == null) || !excludeDigest.equals(snapshot.digest)) {
+				return snapshot;
+			}
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * getSnapshots
+	 * 
+	 * The snapshots currently held, most recent first
+	 * 
+	 * @return							Snapshots
+	 */
+	public synchronized @NonNull List<@NonNull Snapshot> getSnapshots() {
+		@SuppressWarnings("null")
+		@NonNull List<@NonNull Snapshot> rval= Collections.unmodifiableList(
+				new ArrayList<>(snapshots));
+		
+		return rval;
+	}
+	
+	private @NonNull Path pathFor(@NonNull Path localDirectory, long sequence) {
+		@SuppressWarnings("null")
+		@NonNull Path rval= localDirectory.resolve(baseName + "-" + sequence + EXTENSION);
+		
+		return rval;
+	}
+	
+	private void load() {
+		Path localDirectory= directory;
+		if (localDirectory == null) {
+			return;
+		}
+		
+		String prefix= baseName + "-";
+		
+		List<Snapshot> found= new ArrayList<>();
+		try (DirectoryStream<Path> stream= Files.newDirectoryStream(
+				localDirectory, prefix + "*" + EXTENSION))
+		{
+			for (Path path : stream) {
+				String name= path.getFileName().toString();
+				
+				long sequence;
+				try {
+					sequence= Long.parseLong(
+							name.substring(prefix.length(), name.length() - EXTENSION.length()));
+				} catch (NumberFormatException e) {
+					continue;
+				}
+				
+				Snapshot snapshot= read(path, sequence);
+				if (snapshot != null) {
+					found.add(snapshot);
+				}
+			}
+		} catch (IOException e) {
+			log.warn("Unable to read rollback history", e);
+			return;
+		}
+		
+		found.sort((a, b) -> Long.compare(b.sequence, a.sequence));
+		
+		for (Snapshot snapshot : found) {
+			if (snapshots.size() < size) {
+				snapshots.addLast(snapshot);
+			} else {
+				try {
+					Files.deleteIfExists(pathFor(localDirectory, snapshot.sequence));
+				} catch (IOException e) {
+					log.warn("Unable to remove old rollback history file", e);
+				}
+			}
+			
+			nextSequence= Math.max(nextSequence, snapshot.sequence + 1);
+		}
+		
+		if (!snapshots.isEmpty()) {
+			log.info("Loaded " + snapshots.size() + " configurations from rollback history");
+		}
+	}
+	
+	private static @Nullable Snapshot read(@NonNull Path path, long sequence) {
+		try {
+			SnapshotFile.Contents contents= SNAPSHOT_FILE.read(path);
+			ByteBuffer buffer= contents.getPayload();
+			
+			String digest= SnapshotFile.ReadString(buffer);
+			
+			JsonElement tree= TreeEncoding.Decode(buffer);
+			if (!tree.isJsonObject()) {
+				log.warn("Rollback history file " + path + " does not hold an object");
+				return null;
+			}
+			
+			TreeFormat format= ((contents.getFlags() & FLAG_YAML) != 0)
+					? TreeFormat.YAML : TreeFormat.JSON;
+			
+			@SuppressWarnings("null") @NonNull JsonObject object= tree.getAsJsonObject();
+			return new Snapshot(sequence, digest, CompositeTree.Create(object, format));
+		} catch (IOException | SchemaException | RuntimeException e) {
+			log.warn("Unable to load rollback history file " + path, e);
+			return null;
+		}
+	}
+	
+	private void store(
+			@NonNull Path localDirectory,
+			long sequence,
+			@Nullable String digest,
+			@NonNull TreeFormat format,
+			@NonNull JsonElement tree) throws IOException
+	{
+		ByteArrayOutputStream payloadBuffer= new ByteArrayOutputStream();
+		DataOutputStream payload= new DataOutputStream(payloadBuffer);
+		
+		SnapshotFile.WriteString(payload, digest);
+		payload.write(TreeEncoding.Encode(tree));
+		payload.flush();
+		
+		@SuppressWarnings("null")
+		byte @NonNull[] payloadBytes= payloadBuffer.toByteArray();
+		
+		short flags= (format == TreeFormat.YAML) ? FLAG_YAML : 0;
+		SNAPSHOT_FILE.write(pathFor(localDirectory, sequence), flags, payloadBytes);
+	}
+}
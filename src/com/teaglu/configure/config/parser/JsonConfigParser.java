@@ -24,8 +24,9 @@ import org.eclipse.jdt.annotation.NonNull;
 
 import com.teaglu.composite.Composite;
 import com.teaglu.composite.exception.SchemaException;
-import com.teaglu.composite.json.JsonComposite;
 import com.teaglu.configure.config.ConfigParser;
+import com.teaglu.configure.config.tree.CompositeTree;
+import com.teaglu.configure.config.tree.TreeFormat;
 
 public class JsonConfigParser implements ConfigParser {
 	private JsonConfigParser() {}
@@ -39,7 +40,7 @@ public class JsonConfigParser implements ConfigParser {
 			@NonNull InputStream input) throws SchemaException, IOException
 	{
 		try (InputStreamReader reader= new InputStreamReader(input)) {
-    		return JsonComposite.Parse(reader);
+    		return CompositeTree.Parse(reader, TreeFormat.JSON);
 		}
 	}
 }
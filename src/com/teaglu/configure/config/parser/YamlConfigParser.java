@@ -8,8 +8,9 @@ import org.eclipse.jdt.annotation.NonNull;
 
 import com.teaglu.composite.Composite;
 import com.teaglu.composite.exception.SchemaException;
-import com.teaglu.composite.yaml.YamlComposite;
 import com.teaglu.configure.config.ConfigParser;
+import com.teaglu.configure.config.tree.CompositeTree;
+import com.teaglu.configure.config.tree.TreeFormat;
 
 public class YamlConfigParser implements ConfigParser {
 	private YamlConfigParser() {}
@@ -23,7 +24,7 @@ public class YamlConfigParser implements ConfigParser {
 			@NonNull InputStream input) throws SchemaException, IOException
 	{
 		try (InputStreamReader reader= new InputStreamReader(input)) {
-    		return YamlComposite.Parse(reader);
+    		return CompositeTree.Parse(reader, TreeFormat.YAML);
 		}
 	}
 }
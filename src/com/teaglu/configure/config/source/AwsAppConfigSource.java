@@ -28,12 +28,15 @@ import org.slf4j.LoggerFactory;
 
 import com.teaglu.composite.Composite;
 import com.teaglu.composite.exception.SchemaException;
-import com.teaglu.composite.json.JsonComposite;
-import com.teaglu.composite.yaml.YamlComposite;
 import com.teaglu.configure.config.ConfigSource;
+import com.teaglu.configure.config.PollDeadline;
+import com.teaglu.configure.config.tree.CompositeTree;
+import com.teaglu.configure.config.tree.TreeFormat;
 import com.teaglu.configure.exception.ConfigException;
 
+import software.amazon.awssdk.awscore.AwsRequestOverrideConfiguration;
 import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
 import software.amazon.awssdk.core.exception.SdkException;
 import software.amazon.awssdk.services.appconfig.AppConfigClient;
 import software.amazon.awssdk.services.appconfigdata.AppConfigDataClient;
@@ -63,23 +66,39 @@ public class AwsAppConfigSource implements ConfigSource {
 	
 	private int minimumPollInterval;
 	
+	private final @NonNull FetchTimeouts timeouts;
+	
 	private Composite config;
 	private boolean configPending;
 	
+	// Fingerprint of the raw bytes the current configuration was parsed from
+	private String configFingerprint;
+	
+	// Poll interval requested by AppConfig on the last call
+	private int nextPollSeconds;
+	
+	// Whether the last call to AppConfig failed
+	private boolean fetchFailing;
+	
 	AppConfigClient client;
 	String session;
 	
 	AppConfigDataClient dataClient;
 	
 	private String alarmName;
+	private CloudWatchClient cloudWatchClient;
+	
+	private final @NonNull ReportQueue reportQueue= ReportQueue.Create("CloudWatch alarm");
 	
 	private AwsAppConfigSource(
 			@NonNull String applicationId,
 			@NonNull String configurationId,
 			@NonNull String environmentId,
 			int minimumPollInterval,
-			@Nullable String alarmName) throws ConfigException
+			@Nullable String alarmName,
+			@NonNull FetchTimeouts timeouts) throws ConfigException
 	{
+		this.timeouts= timeouts;
 		this.applicationId= applicationId;
 		this.configurationId= configurationId;
 		this.environmentId= environmentId;
@@ -89,6 +108,11 @@ public class AwsAppConfigSource implements ConfigSource {
 		// As far as I know the client doesn't have any state to go bad.
 		AppConfigDataClientBuilder builder= AppConfigDataClient.builder();
 		
+		// The SDK defaults let a single call run for a very long time with retries
+		builder.overrideConfiguration(ClientOverrideConfiguration.builder()
+				.apiCallAttemptTimeout(timeouts.getTotalTimeout())
+				.build());
+		
 		// You would think you could apply the application/config/environment here but you can't
 		dataClient= builder.build();
 	}
@@ -101,7 +125,47 @@ public class AwsAppConfigSource implements ConfigSource {
 			@Nullable String alarmName) throws ConfigException
 	{
 		return new AwsAppConfigSource(
-				applicationId, configurationId, environmentId, minimumPollInterval, alarmName);
+				applicationId, configurationId, environmentId, minimumPollInterval, alarmName,
+				FetchTimeouts.Default());
+	}
+	
+	/**
+	 * Create
+	 * 
+	 * Create a source with explicit network timeouts
+	 * 
+	 * @param applicationId				AppConfig application
+	 * @param configurationId			AppConfig configuration profile
+	 * @param environmentId				AppConfig environment
+	 * @param minimumPollInterval		Minimum poll interval to declare to AppConfig
+	 * @param alarmName					CloudWatch alarm to set on failure, or null
+	 * @param timeouts					Network timeouts
+	 * 
+	 * @return							New source
+	 * 
+	 * @throws ConfigException			Unable to create the source
+	 */
+	public static @NonNull ConfigSource Create(
+			@NonNull String applicationId,
+			@NonNull String configurationId,
+			@NonNull String environmentId,
+			int minimumPollInterval,
+			@Nullable String alarmName,
+			@NonNull FetchTimeouts timeouts) throws ConfigException
+	{
+		return new AwsAppConfigSource(
+				applicationId, configurationId, environmentId, minimumPollInterval, alarmName,
+				timeouts);
+	}
+	
+	// Limit a whole call, retries included, to the timeouts and whatever is left of the poll
+	private @NonNull AwsRequestOverrideConfiguration callOverride() {
+		@SuppressWarnings("null")
+		@NonNull AwsRequestOverrideConfiguration rval= AwsRequestOverrideConfiguration.builder()
+				.apiCallTimeout(PollDeadline.bound(timeouts.getTotalTimeout()))
+				.build();
+		
+		return rval;
 	}
 	
 	private void refresh() throws ConfigException {
@@ -115,6 +179,7 @@ public class AwsAppConfigSource implements ConfigSource {
 				requestBuilder.applicationIdentifier(applicationId);
 				requestBuilder.configurationProfileIdentifier(configurationId);
 				requestBuilder.requiredMinimumPollIntervalInSeconds(minimumPollInterval);
+				requestBuilder.overrideConfiguration(callOverride());
 				
 				StartConfigurationSessionRequest request= requestBuilder.build();
 				StartConfigurationSessionResponse response=
@@ -127,26 +192,30 @@ public class AwsAppConfigSource implements ConfigSource {
 					GetLatestConfigurationRequest.builder();
 			
 			requestBuilder.configurationToken(session);
+			requestBuilder.overrideConfiguration(callOverride());
 			GetLatestConfigurationRequest request= requestBuilder.build();			
 			GetLatestConfigurationResponse response= dataClient.getLatestConfiguration(request);
 			
 			// The response will include the next token we're supposed to use.
 			session= response.nextPollConfigurationToken();
 
-			/*
-			// I'm not quite sure what this is supposed to be used for - we want to poll when
-			// we want to poll.  I guess we could back-link this to tell the polling manager
-			// when to ask again, but it's a weird intrusion between layers.
-			int nextPollSeconds= response.nextPollIntervalInSeconds();
-			
-			// For now just log it to see what's going on.
-			log.info("Next poll seconds = " + nextPollSeconds);
-			*/
+			// AppConfig tells us how long it wants us to wait before asking again, which the
+			// polling manager treats as a floor on its own poll time.
+			nextPollSeconds= response.nextPollIntervalInSeconds();
+			fetchFailing= false;
 
 			SdkBytes contentSdkBytes= response.configuration();
 			ByteBuffer contentBytes= contentSdkBytes.asByteBuffer();
 			
+			// AppConfig normally sends an empty body when nothing changed, but a new session
+			// or a redeployment of the same version sends everything again.  Compare the
+			// raw bytes before parsing.
+			String fingerprint= null;
 			if (contentBytes.remaining() > 0) {
+				fingerprint= RawContent.Fingerprint(contentBytes);
+			}
+			
+			if ((fingerprint != null) && !fingerprint.equals(configFingerprint)) {
 				// I can't find it in the API what content encoding is used, or how to get
 				// it back from the API response.  So be a little anal about the encoding.
 				CharsetDecoder decoder= StandardCharsets.UTF_8.newDecoder();
@@ -160,14 +229,16 @@ public class AwsAppConfigSource implements ConfigSource {
 					String contentType= response.contentType();
 					switch (contentType) {
 					case "application/json":
-						config= JsonComposite.Parse(content);
+						config= CompositeTree.Parse(content, TreeFormat.JSON);
+						configFingerprint= fingerprint;
 						
 						// Mark that a new configuration is available.
 						configPending= true;
 						break;
 
 					case "application/yaml":
-						config= YamlComposite.Parse(content);
+						config= CompositeTree.Parse(content, TreeFormat.YAML);
+						configFingerprint= fingerprint;
 						
 						configPending= true;
 						break;
@@ -187,6 +258,7 @@ public class AwsAppConfigSource implements ConfigSource {
 		} catch (SdkException e) {
 			// Start a new session on SDK error
 			session= null;
+			fetchFailing= true;
 			
 			log.error("Error retrieving configuration from AppConfig", e);
 			
@@ -195,6 +267,16 @@ public class AwsAppConfigSource implements ConfigSource {
 		}
 	}
 	
+	@Override
+	public int getPollHintSeconds() {
+		return nextPollSeconds;
+	}
+	
+	@Override
+	public boolean isFetchFailing() {
+		return fetchFailing;
+	}
+	
 	@Override
 	public boolean needsReload() {
 		try {
@@ -234,19 +316,39 @@ public class AwsAppConfigSource implements ConfigSource {
 			@Nullable Throwable cause)
 	{
 		if (alarmName != null) {
-			try {
-				CloudWatchClient cloudWatchClient= CloudWatchClient.create(); 
-				
+			// One alarm per configuration version is plenty, and a slow CloudWatch call
+			// shouldn't hold up polling.  A failure before any configuration was accepted
+			// still raises the alarm, just keyed on the failure code instead.
+			String fingerprint= configFingerprint;
+			String reportKey= (fingerprint != null)
+					? "alarm:" + fingerprint : "alarm:" + code;
+			
+			reportQueue.submit(reportKey, () -> {
 				SetAlarmStateRequest.Builder requestBuilder= SetAlarmStateRequest.builder();
 				requestBuilder.alarmName(alarmName);
 				requestBuilder.stateValue(StateValue.ALARM);
+				requestBuilder.stateReason(code + ": " + message);
 				
 				SetAlarmStateRequest request= requestBuilder.build();
 				
-				cloudWatchClient.setAlarmState(request);
-			} catch (SdkException e) {
-				log.error("Error setting cloudwatch alarm");
-			}
+				getCloudWatchClient().setAlarmState(request);
+			});
 		}
 	}
+	
+	private synchronized @NonNull CloudWatchClient getCloudWatchClient() {
+		// Clients hold connection pools and threads, so keep one around
+		if (cloudWatchClient == null) {
+			cloudWatchClient= CloudWatchClient.builder()
+					.overrideConfiguration(ClientOverrideConfiguration.builder()
+							.apiCallTimeout(timeouts.getTotalTimeout())
+							.build())
+					.build();
+		}
+		
+		@SuppressWarnings("null")
+		@NonNull CloudWatchClient rval= cloudWatchClient;
+		
+		return rval;
+	}
 }
@@ -0,0 +1,318 @@
+/****************************************************************************
+ * Copyright 2022 Teaglu, LLC                                               *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *   http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ ****************************************************************************/
+
+package com.teaglu.configure.config.source;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Base64.Encoder;
+import java.util.Objects;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonElement;
+import com.teaglu.composite.Composite;
+import com.teaglu.configure.config.tree.CompositeTree;
+import com.teaglu.configure.config.tree.SnapshotFile;
+import com.teaglu.configure.config.tree.TreeEncoding;
+import com.teaglu.configure.config.tree.TreeFormat;
+
+/**
+ * CacheFile
+ * 
+ * Local cache of the last configuration received from a remote source, kept in the directory
+ * named by the CONFIGURATION_CACHE environment variable.
+ * 
+ * The cache is a single SnapshotFile whose payload is the content type, fingerprint of the
+ * original body, HTTP validators, and finally the configuration.  JSON configurations are
+ * stored as an encoded tree so a cold start doesn't have to parse text, anything else is
+ * stored as the raw body.  A snapshot that fails any check is treated the same as a missing
+ * one.
+ * 
+ * Earlier versions kept the content type and raw body in a .dat file.  That is read once if
+ * there's no snapshot yet, so the first start after an upgrade still has a cache if the
+ * source is down, and deleted once a snapshot has been written.
+ *
+ */
+class CacheFile {
+	private static final Logger log= LoggerFactory.getLogger(CacheFile.class);
+	
+	// "TCFG"
+	private static final @NonNull SnapshotFile SNAPSHOT_FILE=
+			SnapshotFile.Create(0x54434647, (short)1);
+	
+	private static final short FLAG_TREE= 0x0001;
+	
+	private static final String EXTENSION= ".snap";
+	private static final String LEGACY_EXTENSION= ".dat";
+	
+	private final @NonNull Path directory;
+	private final @NonNull String baseName;
+	private final @NonNull String legacyBaseName;
+	private final @NonNull Path file;
+	
+	// What was last read or written, so unchanged polls don't touch the disk
+	private @Nullable String lastFingerprint;
+	private @Nullable HttpValidators lastValidators;
+	
+	private CacheFile(
+			@NonNull Path directory,
+			@NonNull String baseName,
+			@NonNull String legacyBaseName)
+	{
+		this.directory= directory;
+		this.baseName= baseName;
+		this.legacyBaseName= legacyBaseName;
+		
+		@SuppressWarnings("null")
+		@NonNull Path file= directory.resolve(baseName + EXTENSION);
+		this.file= file;
+	}
+	
+	/**
+	 * Locate
+	 * 
+	 * Locate the cache file for a source.  The key is hashed to build the file name, both so
+	 * it's a legal file name and so any credentials in it aren't sitting around on disk.
+	 * 
+	 * @param key						Unique key for the source
+	 * 
+	 * @return							Cache file, or null if caching is not configured
+	 */
+	public static @Nullable CacheFile Locate(@NonNull String key) {
+		String cacheDirectory= System.getenv("CONFIGURATION_CACHE");
+		if (cacheDirectory == null) {
+			log.warn("Configuration cache not configured - this is not recommended.");
+			return null;
+		}
+		
+		try {
+			MessageDigest digest= MessageDigest.getInstance("SHA-1");
+			digest.update(key.getBytes(StandardCharsets.UTF_8));
+			Encoder encoder= Base64.getEncoder();
+			
+			// Standard Base64 can contain a slash, which would wander off into a
+			// subdirectory, so swap that one character.  Earlier versions used the hash
+			// as-is, which is still what the legacy files are looked up by.
+			@SuppressWarnings("null")
+			@NonNull String legacyHash= encoder.encodeToString(digest.digest());
+			
+			@SuppressWarnings("null")
+			@NonNull String configHash= legacyHash.replace('/', '_');
+			
+			@SuppressWarnings("null")
+			@NonNull Path directory= Paths.get(cacheDirectory);
+			
+			return new CacheFile(directory, configHash, legacyHash);
+		} catch (NoSuchAlgorithmException e) {
+			log.error("Unable to find SHA-1 hash to calculate cache file names", e);
+			return null;
+		}
+	}
+	
+	/**
+	 * read
+	 * 
+	 * Read the cached snapshot
+	 * 
+	 * @return							Snapshot, or null if not present or not usable
+	 */
+	public synchronized @Nullable CacheSnapshot read() {
+		try {
+			SnapshotFile.Contents contents= SNAPSHOT_FILE.read(file);
+			ByteBuffer buffer= contents.getPayload();
+			
+			String contentType= SnapshotFile.ReadString(buffer);
+			String fingerprint= SnapshotFile.ReadString(buffer);
+			if (fingerprint == null) {
+				log.error("Configuration cache has no fingerprint");
+				return null;
+			}
+			
+			HttpValidators validators= HttpValidators.Create(
+					SnapshotFile.ReadString(buffer), SnapshotFile.ReadString(buffer));
+			
+			CacheSnapshot rval;
+			if ((contents.getFlags() & FLAG_TREE) != 0) {
+				JsonElement tree= TreeEncoding.Decode(buffer);
+				if (!tree.isJsonObject()) {
+					log.error("Configuration cache tree is not an object");
+					return null;
+				}
+				
+				@SuppressWarnings("null")
+				@NonNull CacheSnapshot snapshot= CacheSnapshot.CreateTree(
+						fingerprint, validators, tree.getAsJsonObject());
+				rval= snapshot;
+			} else {
+				byte[] body= new byte[buffer.remaining()];
+				buffer.get(body);
+				
+				RawContent content= RawContent.Read(
+						new ByteArrayInputStream(body), contentType, validators);
+				
+				rval= CacheSnapshot.CreateContent(fingerprint, validators, content);
+			}
+			
+			lastFingerprint= fingerprint;
+			lastValidators= validators;
+			
+			return rval;
+		} catch (NoSuchFileException e) {
+			CacheSnapshot legacy= readLegacy();
+			if (legacy == null) {
+				log.warn("Configuration cache not present.  " +
+							"If this is not an initial installation this could be a problem.");
+			}
+			return legacy;
+		} catch (IOException | RuntimeException e) {
+			// A damaged snapshot throws all sorts of things out of the buffer, and all of
+			// them mean the same thing - start without it.
+			log.error("Error loading configuration cache", e);
+			return null;
+		}
+	}
+	
+	/**
+	 * readLegacy
+	 * 
+	 * Read the cache left by an earlier version: the content type on the first line of the
+	 * .dat file followed by the raw body.  There are no validators or fingerprint, so the
+	 * first fetch is a full one and the first write replaces the file with a snapshot.
+	 * 
+	 * @return							Snapshot, or null if there's no legacy cache either
+	 */
+	private @Nullable CacheSnapshot readLegacy() {
+		Path bodyFile= directory.resolve(legacyBaseName + LEGACY_EXTENSION);
+		
+		try (InputStream cacheStream= new BufferedInputStream(Files.newInputStream(bodyFile))) {
+			ByteArrayOutputStream headerBuilder= new ByteArrayOutputStream();
+			for (int c; (c= cacheStream.read()) != '\n'; ) {
+				if (c == -1) {
+					log.error("Legacy configuration cache is truncated");
+					return null;
+				}
+				headerBuilder.write(c);
+			}
+			
+			String contentType= headerBuilder.toString(StandardCharsets.UTF_8).trim();
+			RawContent content= RawContent.Read(cacheStream, contentType);
+			
+			log.info("Using configuration cache written by an earlier version");
+			return CacheSnapshot.CreateContent(content.getFingerprint(), null, content);
+		} catch (NoSuchFileException e) {
+			return null;
+		} catch (IOException | RuntimeException e) {
+			log.error("Error loading legacy configuration cache", e);
+			return null;
+		}
+	}
+	
+	/**
+	 * write
+	 * 
+	 * Replace the cached snapshot.  Nothing is written if the snapshot on disk already holds
+	 * the same body with the same validators.
+	 * 
+	 * @param content					Content as received
+	 * @param configuration				Configuration parsed from the content
+	 */
+	public synchronized void write(
+			@NonNull RawContent content,
+			@Nullable Composite configuration)
+	{
+		HttpValidators validators= content.getValidators();
+		
+		if (content.getFingerprint().equals(lastFingerprint) &&
+				Objects.equals(validators, lastValidators))
+		{
+			return;
+		}
+		
+		String contentType= content.getContentType();
+		if (contentType == null) {
+			contentType= "application/json";
+		}
+		
+		try {
+			ByteArrayOutputStream payloadBuffer= new ByteArrayOutputStream(
+					content.getLength() + 256);
+			DataOutputStream payload= new DataOutputStream(payloadBuffer);
+			
+			SnapshotFile.WriteString(payload, contentType);
+			SnapshotFile.WriteString(payload, content.getFingerprint());
+			SnapshotFile.WriteString(payload,
+					(validators == null) ? null : validators.getEtag());
+			SnapshotFile.WriteString(payload,
+					(validators == null) ? null : validators.getLastModified());
+			
+			// Only JSON goes in as a tree - rebuilding anything else from a JSON tree
+			// could subtly change how it reads, so those keep their original text.
+			JsonElement tree= null;
+			if ((HttpConfigLoader.FormatFor(contentType) == TreeFormat.JSON) &&
+					(configuration != null))
+			{
+				tree= CompositeTree.Convert(configuration);
+				if ((tree != null) && !tree.isJsonObject()) {
+					tree= null;
+				}
+			}
+			
+			short flags= 0;
+			if (tree != null) {
+				flags|= FLAG_TREE;
+				payload.write(TreeEncoding.Encode(tree));
+			} else {
+				content.writeTo(payload);
+			}
+			payload.flush();
+			
+			@SuppressWarnings("null")
+			byte @NonNull[] payloadBytes= payloadBuffer.toByteArray();
+			
+			SNAPSHOT_FILE.write(file, flags, payloadBytes);
+			
+			lastFingerprint= content.getFingerprint();
+			lastValidators= validators;
+		} catch (IOException e) {
+			log.error("Error writing configuration cache", e);
+			return;
+		}
+		
+		// The snapshot supersedes anything an earlier version left behind
+		try {
+			Files.deleteIfExists(directory.resolve(legacyBaseName + LEGACY_EXTENSION));
+		} catch (IOException e) {
+			log.warn("Unable to remove old configuration cache file", e);
+		}
+	}
+}
@@ -0,0 +1,110 @@
+/****************************************************************************
+ * Copyright 2022 Teaglu, LLC                                               *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *   http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ ****************************************************************************/
+
+package com.teaglu.configure.config.source;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.google.gson.JsonObject;
+import com.teaglu.composite.Composite;
+import com.teaglu.configure.config.tree.CompositeTree;
+
+/**
+ * CacheSnapshot
+ * 
+ * A configuration loaded back from the cache.  JSON configurations are stored as an already
+ * parsed tree, so they come back ready to use.  Anything else is stored as the raw body and
+ * has to go back through the source's own parser.
+ *
+ */
+class CacheSnapshot {
+	private final @NonNull String fingerprint;
+	private final @Nullable HttpValidators validators;
+	private final @Nullable JsonObject tree;
+	private final @Nullable RawContent content;
+	
+	private CacheSnapshot(
+			@NonNull String fingerprint,
+			@Nullable HttpValidators validators,
+			@Nullable JsonObject tree,
+			@Nullable RawContent content)
+	{
+		this.fingerprint= fingerprint;
+		this.validators= validators;
+		this.tree= tree;
+		this.content= content;
+	}
+	
+	public static @NonNull CacheSnapshot CreateTree(
+			@NonNull String fingerprint,
+			@Nullable HttpValidators validators,
+			@NonNull JsonObject tree)
+	{
+		return new CacheSnapshot(fingerprint, validators, tree, null);
+	}
+	
+	public static @NonNull CacheSnapshot CreateContent(
+			@NonNull String fingerprint,
+			@Nullable HttpValidators validators,
+			@NonNull RawContent content)
+	{
+		return new CacheSnapshot(fingerprint, validators, null, content);
+	}
+	
+	/**
+	 * getFingerprint
+	 * 
+	 * The fingerprint of the body this snapshot was taken from, which is what the sources
+	 * compare against to skip re-parsing an unchanged fetch.
+	 * 
+	 * @return							Fingerprint
+	 */
+	public @NonNull String getFingerprint() {
+		return fingerprint;
+	}
+	
+	public @Nullable HttpValidators getValidators() {
+		return validators;
+	}
+	
+	/**
+	 * getConfiguration
+	 * 
+	 * Rebuild the configuration from a stored tree
+	 * 
+	 * @return							Configuration, or null if the raw body was stored
+	 */
+	public @Nullable Composite getConfiguration() {
+		JsonObject localTree= tree;
+		if (localTree == null) {
+			return null;
+		}
+		
+		return CompositeTree.FromJson(localTree);
+	}
+	
+	/**
+	 * getContent
+	 * 
+	 * The raw body, for configurations that weren't stored as a tree
+	 * 
+	 * @return							Content, or null if a tree was stored
+	 */
+	public @Nullable RawContent getContent() {
+		return content;
+	}
+}
@@ -0,0 +1,96 @@
+/****************************************************************************
+ * Copyright 2022 Teaglu, LLC                                               *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *   http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ ****************************************************************************/
+
+package com.teaglu.configure.config.source;
+
+import java.time.Duration;
+
+import org.eclipse.jdt.annotation.NonNull;
+
+/**
+ * FetchTimeouts
+ * 
+ * Network timeouts for a remote configuration source.  Within a poll these are further
+ * limited by the PollDeadline.
+ *
+ */
+public class FetchTimeouts {
+	private static final Duration DEFAULT_CONNECT_TIMEOUT= Duration.ofSeconds(10);
+	private static final Duration DEFAULT_READ_TIMEOUT= Duration.ofSeconds(30);
+	
+	private final @NonNull Duration connectTimeout;
+	private final @NonNull Duration readTimeout;
+	
+	private FetchTimeouts(
+			@NonNull Duration connectTimeout,
+			@NonNull Duration readTimeout)
+	{
+		this.connectTimeout= connectTimeout;
+		this.readTimeout= readTimeout;
+	}
+	
+	/**
+	 * Create
+	 * 
+	 * Create a set of timeouts
+	 * 
+	 * @param connectTimeout			Time allowed to establish a connection
+	 * @param readTimeout				Time allowed for the server to respond once a request
+	 * 									has been sent
+	 * 
+	 * @return							Timeouts
+	 */
+	public static @NonNull FetchTimeouts Create(
+			@NonNull Duration connectTimeout,
+			@NonNull Duration readTimeout)
+	{
+		return new FetchTimeouts(connectTimeout, readTimeout);
+	}
+	
+	private static final @NonNull FetchTimeouts DEFAULT=
+			new FetchTimeouts(DEFAULT_CONNECT_TIMEOUT, DEFAULT_READ_TIMEOUT);
+	
+	/**
+	 * Default
+	 * 
+	 * @return							Default timeouts - 10 seconds to connect and 30 seconds
+	 * 									to respond
+	 */
+	public static @NonNull FetchTimeouts Default() {
+		return DEFAULT;
+	}
+	
+	public @NonNull Duration getConnectTimeout() {
+		return connectTimeout;
+	}
+	
+	public @NonNull Duration getReadTimeout() {
+		return readTimeout;
+	}
+	
+	/**
+	 * getTotalTimeout
+	 * 
+	 * @return							Connect and read timeouts together, for clients that
+	 * 									only take a single timeout per call
+	 */
+	public @NonNull Duration getTotalTimeout() {
+		@SuppressWarnings("null")
+		@NonNull Duration rval= connectTimeout.plus(readTimeout);
+		
+		return rval;
+	}
+}
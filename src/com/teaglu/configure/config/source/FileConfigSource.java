@@ -21,8 +21,10 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileTime;
+import java.util.Set;
 
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.jdt.annotation.Nullable;
@@ -33,9 +35,11 @@ import com.teaglu.composite.Composite;
 import com.teaglu.composite.exception.SchemaException;
 import com.teaglu.configure.config.ConfigParser;
 import com.teaglu.configure.config.ConfigSource;
+import com.teaglu.configure.config.SourceChangeListener;
+import com.teaglu.configure.config.WatchableConfigSource;
 import com.teaglu.configure.exception.ConfigException;
 
-public class FileConfigSource implements ConfigSource {
+public class FileConfigSource implements WatchableConfigSource {
 	private Logger log= LoggerFactory.getLogger(FileConfigSource.class);
 	
 	private File file;
@@ -43,34 +47,149 @@ public class FileConfigSource implements ConfigSource {
 	
 	private FileTime modifiedTime;
 	
+	// Content read by needsReload() that hasn't been parsed yet
+	private RawContent pendingContent;
+	
+	// Fingerprint of the content last handed out by reload()
+	private String loadedFingerprint;
+	
+	// Debounce time for file system events, or zero to rely on polling alone
+	private long watchDebounceMillis;
+	private FileWatcher.Watch watch;
+	
+	// Kubernetes projects ConfigMaps and Secrets into a timestamped directory and publishes
+	// an update by swapping the ..data symlink to point at a new one.  The file we were given
+	// is a symlink through ..data, and its modified time is not a reliable signal.
+	private static final String KUBERNETES_DATA_LINK= "..data";
+	
+	private boolean kubernetes;
+	
+	// Target of the ..data link and real path of the file as of the last read
+	private String dataGeneration;
+	private Path resolvedPath;
+	
 	private FileConfigSource(
 			@NonNull String path,
-			@NonNull ConfigParser parser)
+			@NonNull ConfigParser parser,
+			long watchDebounceMillis,
+			boolean kubernetes)
 	{
 		this.file= new File(path);
 		this.parser= parser;
+		this.watchDebounceMillis= watchDebounceMillis;
+		this.kubernetes= kubernetes;
 	}
 	
 	public @NonNull static ConfigSource Create(
 			@NonNull String path,
 			@NonNull ConfigParser parser)
 	{
-		return new FileConfigSource(path, parser);
+		return new FileConfigSource(path, parser, 0, false);
+	}
+	
+	/**
+	 * CreateWatching
+	 * 
+	 * Create a file source that is told about changes by the operating system instead of
+	 * waiting for the next poll.  The poll still runs as a backstop for file systems where
+	 * change events aren't delivered, such as most network mounts.
+	 * 
+	 * @param path						Path to file
+	 * @param parser					Parser for file contents
+	 * @param debounceMillis			Quiet time after the last event before reloading
+	 * 
+	 * @return							New source
+	 */
+	public @NonNull static ConfigSource CreateWatching(
+			@NonNull String path,
+			@NonNull ConfigParser parser,
+			long debounceMillis)
+	{
+		return new FileConfigSource(path, parser, Math.max(1, debounceMillis), false);
+	}
+	
+	/**
+	 * CreateKubernetes
+	 * 
+	 * Create a file source for a file projected from a Kubernetes ConfigMap or Secret volume.
+	 * Changes are detected by following the ..data symlink generation and the resolved path
+	 * of the file, so an update is read once when the link is swapped and never otherwise.
+	 * 
+	 * @param path						Path to file as mounted
+	 * @param parser					Parser for file contents
+	 * @param debounceMillis			Quiet time after the swap before reloading, or zero to
+	 * 									rely on polling alone
+	 * 
+	 * @return							New source
+	 */
+	public @NonNull static ConfigSource CreateKubernetes(
+			@NonNull String path,
+			@NonNull ConfigParser parser,
+			long debounceMillis)
+	{
+		return new FileConfigSource(path, parser, Math.max(0, debounceMillis), true);
+	}
+	
+	/**
+	 * IsKubernetesProjected
+	 * 
+	 * Check whether a file looks like it lives in a Kubernetes projected volume
+	 * 
+	 * @param path						Path to file
+	 * 
+	 * @return							Whether there is a ..data symlink next to it
+	 */
+	public static boolean IsKubernetesProjected(@NonNull String path) {
+		File parent= new File(path).getAbsoluteFile().getParentFile();
+		if (parent == null) {
+			return false;
+		}
+		
+		return Files.isSymbolicLink(new File(parent, KUBERNETES_DATA_LINK).toPath());
+	}
+	
+	private @Nullable String readDataGeneration() {
+		File parent= file.getAbsoluteFile().getParentFile();
+		if (parent != null) {
+			try {
+				return Files.readSymbolicLink(
+						new File(parent, KUBERNETES_DATA_LINK).toPath()).toString();
+			} catch (IOException | UnsupportedOperationException e) {
+			}
+		}
+		
+		return null;
+	}
+	
+	private @NonNull RawContent readContent() throws IOException {
+		try (InputStream in= new FileInputStream(file)) {
+			return RawContent.Read(in, null);
+		}
 	}
 	
 	@Override
-	public @NonNull Composite reload() throws ConfigException {
-    	try (InputStream in= new FileInputStream(file)) {
-    		try {
-    			return parser.parse(in);
-    		} catch (SchemaException se) {
-    			throw new ConfigException(
-    					"Parser was not able to parse file data", se);
-    		}
-    	} catch (IOException e) {
-    		throw new ConfigException(
-    				"Error reading configuration file " + file.getAbsolutePath());
-    	}
+	public synchronized @NonNull Composite reload() throws ConfigException {
+		RawContent content= pendingContent;
+		pendingContent= null;
+		
+		try {
+			if (content == null) {
+				content= readContent();
+			}
+			
+			try (InputStream in= content.openStream()) {
+				Composite rval= parser.parse(in);
+				loadedFingerprint= content.getFingerprint();
+				
+				return rval;
+			} catch (SchemaException se) {
+				throw new ConfigException(
+						"Parser was not able to parse file data", se);
+			}
+		} catch (IOException e) {
+			throw new ConfigException(
+					"Error reading configuration file " + file.getAbsolutePath());
+		}
 	}
 
 	@Override
@@ -86,22 +205,107 @@ public class FileConfigSource implements ConfigSource {
 	}
 
 	@Override
-	public boolean needsReload() {
-    	boolean needsReload= true;
-    	try {
+	public synchronized void startWatching(@NonNull SourceChangeListener listener) {
+		if ((watchDebounceMillis == 0) || (watch != null)) {
+			return;
+		}
+		
+		// Watch the directory rather than the file, so a replace-by-rename is still seen
+		Path path= file.getAbsoluteFile().toPath();
+		Path directory= path.getParent();
+		Path name= path.getFileName();
+		
+		if ((directory != null) && (name != null)) {
+			try {
+				@SuppressWarnings("null")
+				@NonNull Set<@NonNull String> names= kubernetes
+						? Set.of(name.toString(), KUBERNETES_DATA_LINK)
+						: Set.of(name.toString());
+				
+				@SuppressWarnings("null")
+				@NonNull Path watchDirectory= directory;
+				
+				watch= FileWatcher.getInstance().watch(
+						watchDirectory, names, watchDebounceMillis, listener);
+			} catch (IOException | UnsupportedOperationException e) {
+				log.warn("Unable to watch configuration file " + path +
+						", falling back to polling", e);
+			}
+		}
+	}
+	
+	@Override
+	public synchronized void stopWatching() {
+		if (watch != null) {
+			try {
+				FileWatcher.getInstance().unwatch(watch);
+			} catch (IOException e) {
+			}
+			
+			watch= null;
+		}
+	}
+	
+	@Override
+	public synchronized boolean needsReload() {
+		if (kubernetes) {
+			return needsKubernetesReload();
+		}
+		
+		boolean needsReload= true;
+		try {
 			@SuppressWarnings("null")
 			BasicFileAttributes attr= Files.readAttributes(
 					file.toPath(), BasicFileAttributes.class);
 			
-    		if ((modifiedTime != null) && (modifiedTime.equals(attr.lastModifiedTime()))) {
-    			needsReload= false;
-    		} else {
-    			modifiedTime= attr.lastModifiedTime();
-    		}
-    	} catch (IOException e) {
-    		log.error("Error reading route file attributes", e);
-    	}
-    	
-    	return needsReload;
+			if ((modifiedTime != null) && (modifiedTime.equals(attr.lastModifiedTime()))) {
+				needsReload= false;
+			} else {
+				modifiedTime= attr.lastModifiedTime();
+				
+				// Editors and deployment tools touch files without changing them all the
+				// time, so check the bytes before asking for a parse.
+				needsReload= checkContent();
+			}
+		} catch (IOException e) {
+			log.error("Error reading route file attributes", e);
+		}
+		
+		return needsReload;
+	}
+	
+	private boolean needsKubernetesReload() {
+		boolean needsReload= true;
+		try {
+			// Both the link target and the resolved path change on every projected update,
+			// so if neither moved there is nothing to read.
+			String generation= readDataGeneration();
+			Path realPath= file.toPath().toRealPath();
+			
+			if ((generation != null) && generation.equals(dataGeneration) &&
+					realPath.equals(resolvedPath))
+			{
+				needsReload= false;
+			} else {
+				needsReload= checkContent();
+				
+				dataGeneration= generation;
+				resolvedPath= realPath;
+			}
+		} catch (IOException e) {
+			log.error("Error resolving projected configuration file", e);
+		}
+		
+		return needsReload;
+	}
+	
+	private boolean checkContent() throws IOException {
+		RawContent content= readContent();
+		if (content.getFingerprint().equals(loadedFingerprint)) {
+			return false;
+		}
+		
+		pendingContent= content;
+		return true;
 	}
 }
@@ -0,0 +1,244 @@
+/****************************************************************************
+ * Copyright 2022 Teaglu, LLC                                               *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *   http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ ****************************************************************************/
+
+package com.teaglu.configure.config.source;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.teaglu.configure.config.SourceChangeListener;
+
+/**
+ * FileWatcher
+ * 
+ * A process-wide file watcher shared by every watching file source.  There is one
+ * WatchService (inotify on Linux) and one thread for all of them.
+ * 
+ * Editors and deployment tools rarely change a file in one step - a save is often a truncate
+ * and a few writes, or a write to a temporary file and a rename.  Events are therefore
+ * debounced: the listener is only called once things have been quiet for the debounce time,
+ * so one logical change gives one wake-up.
+ *
+ */
+class FileWatcher implements Runnable {
+	private static final Logger log= LoggerFactory.getLogger(FileWatcher.class);
+	
+	/**
+	 * Watch
+	 * 
+	 * Handle for one registered watch
+	 */
+	static class Watch {
+		private final @NonNull WatchKey key;
+		private final @NonNull Set<@NonNull String> names;
+		private final long debounceMillis;
+		private final @NonNull SourceChangeListener listener;
+		
+		// When the listener should fire, or 0 if nothing is pending
+		private long deadline= 0;
+		
+		private Watch(
+				@NonNull WatchKey key,
+				@NonNull Set<@NonNull String> names,
+				long debounceMillis,
+				@NonNull SourceChangeListener listener)
+		{
+			this.key= key;
+			this.names= names;
+			this.debounceMillis= debounceMillis;
+			this.listener= listener;
+		}
+	}
+	
+	private final @NonNull WatchService watchService;
+	private final Map<WatchKey, List<@NonNull Watch>> watches= new HashMap<>();
+	private Thread thread;
+	
+	private FileWatcher(@NonNull WatchService watchService) {
+		this.watchService= watchService;
+	}
+	
+	private static FileWatcher instance;
+	
+	public static synchronized @NonNull FileWatcher getInstance() throws IOException {
+		if (instance == null) {
+			@SuppressWarnings("null")
+			@NonNull WatchService watchService= FileSystems.getDefault().newWatchService();
+			
+			instance= new FileWatcher(watchService);
+		}
+		
+		@SuppressWarnings("null")
+		@NonNull FileWatcher rval= instance;
+		
+		return rval;
+	}
+	
+	/**
+	 * watch
+	 * 
+	 * Start watching for changes to files in a directory
+	 * 
+	 * @param directory					Directory to watch
+	 * @param names						File names in the directory that matter
+	 * @param debounceMillis			Quiet time before the listener is called
+	 * @param listener					Listener
+	 * 
+	 * @return							Handle to pass to unwatch()
+	 * 
+	 * @throws IOException				Unable to watch the directory
+	 */
+	public synchronized @NonNull Watch watch(
+			@NonNull Path directory,
+			@NonNull Set<@NonNull String> names,
+			long debounceMillis,
+			@NonNull SourceChangeListener listener) throws IOException
+	{
+		// Registering the same directory twice hands back the same key
+		@SuppressWarnings("null")
+		@NonNull WatchKey key= directory.register(watchService,
+				StandardWatchEventKinds.ENTRY_CREATE,
+				StandardWatchEventKinds.ENTRY_MODIFY,
+				StandardWatchEventKinds.ENTRY_DELETE);
+		
+		@SuppressWarnings("null")
+		@NonNull Set<@NonNull String> namesCopy= Set.copyOf(names);
+		
+		Watch watch= new Watch(key, namesCopy, debounceMillis, listener);
+		watches.computeIfAbsent(key, k -> new ArrayList<>()).add(watch);
+		
+		if (thread == null) {
+			thread= new Thread(this, "configuration-file-watch");
+			thread.setDaemon(true);
+			thread.start();
+		}
+		
+		return watch;
+	}
+	
+	/**
+	 * unwatch
+	 * 
+	 * Stop watching.  The listener will not be called after this returns.
+	 * 
+	 * @param watch						Handle returned from watch()
+	 */
+	public synchronized void unwatch(@NonNull Watch watch) {
+		List<@NonNull Watch> keyWatches= watches.get(watch.key);
+		if (keyWatches != null) {
+			keyWatches.remove(watch);
+			if (keyWatches.isEmpty()) {
+				watches.remove(watch.key);
+				watch.key.cancel();
+			}
+		}
+	}
+	
+	// Fire anything whose debounce time has passed, and return how long until the next one
+	private synchronized long fireDue() {
+		long now= System.currentTimeMillis();
+		long nextDeadline= Long.MAX_VALUE;
+		
+		for (List<@NonNull Watch> keyWatches : watches.values()) {
+			for (Watch watch : keyWatches) {
+				if (watch.deadline != 0) {
+					if (watch.deadline <= now) {
+						watch.deadline= 0;
+						
+						// Called under the lock so it can't fire after unwatch() returns.
+						// The listener only wakes a manager, so it's quick.
+						watch.listener.sourceChanged();
+					} else if (watch.deadline < nextDeadline) {
+						nextDeadline= watch.deadline;
+					}
+				}
+			}
+		}
+		
+		return (nextDeadline == Long.MAX_VALUE) ? Long.MAX_VALUE : (nextDeadline - now);
+	}
+	
+	private synchronized void process(@NonNull WatchKey key) {
+		long now= System.currentTimeMillis();
+		
+		List<@NonNull Watch> keyWatches= watches.get(key);
+		
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (keyWatches == null) {
+				continue;
+			}
+			
+			Object context= event.context();
+			for (Watch watch : keyWatches) {
+				// If events overflowed we don't know what changed, so assume everything did
+				boolean matches= (event.kind() == StandardWatchEventKinds.OVERFLOW) ||
+						((context instanceof Path) &&
+								watch.names.contains(((Path)context).toString()));
+				
+				if (matches) {
+					watch.deadline= now + watch.debounceMillis;
+				}
+			}
+		}
+		
+		if (!key.reset()) {
+			if (keyWatches != null) {
+				log.warn("Watched configuration directory is no longer accessible");
+				watches.remove(key);
+			}
+		}
+	}
+	
+	@Override
+	public void run() {
+		for (;;) {
+			long waitMillis= fireDue();
+			
+			try {
+				WatchKey key;
+				if (waitMillis == Long.MAX_VALUE) {
+					key= watchService.take();
+				} else {
+					key= watchService.poll(waitMillis, TimeUnit.MILLISECONDS);
+				}
+				
+				while (key != null) {
+					process(key);
+					key= watchService.poll();
+				}
+			} catch (InterruptedException e) {
+			} catch (ClosedWatchServiceException e) {
+				return;
+			}
+		}
+	}
+}
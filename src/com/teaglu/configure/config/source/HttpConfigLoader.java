@@ -0,0 +1,412 @@
+/****************************************************************************
+ * Copyright 2022 Teaglu, LLC                                               *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *   http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ ****************************************************************************/
+
+package com.teaglu.configure.config.source;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Locale;
+import java.util.Objects;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.teaglu.composite.Composite;
+import com.teaglu.composite.exception.SchemaException;
+import com.teaglu.configure.config.ConfigSource;
+import com.teaglu.configure.config.PollDeadline;
+import com.teaglu.configure.config.tree.CompositeTree;
+import com.teaglu.configure.config.tree.TreeFormat;
+import com.teaglu.configure.exception.ApiResponseFormatException;
+import com.teaglu.configure.exception.ApiStatusException;
+import com.teaglu.configure.exception.ConfigException;
+
+/**
+ * HttpConfigLoader
+ * 
+ * The fetch, cache and parse logic shared by the sources that load a configuration document
+ * over HTTP.  The loader holds the current configuration and everything known about it, and
+ * the source adds whatever its server supports on top - reports, long-polling and so on.
+ * 
+ * The cache is read when the loader is created, and with a warm start the cached
+ * configuration is handed out before upstream is asked, and the manager is told to come
+ * straight back to revalidate it.  Each fetch is compared to the current configuration by a
+ * fingerprint of the raw bytes, so an unchanged body is never parsed.
+ *
+ */
+class HttpConfigLoader {
+	private static final Logger log= LoggerFactory.getLogger(HttpConfigLoader.class);
+	
+	/**
+	 * ValidatorListener
+	 * 
+	 * Told whenever the validators for the current configuration change
+	 */
+	interface ValidatorListener {
+		void validatorsChanged(@Nullable HttpValidators validators);
+	}
+	
+	// If we can't get a configuration from the upstream URL, and we don't have a cache file or
+	// the cache file is missing/invalid, this is how long we wait to retry
+	static final long STARTUP_RECHECK_TIME= 15_000;
+	
+	private final @NonNull ConfigSource source;
+	private final @NonNull URI configUri;
+	private final @NonNull HttpFetchEngine fetchEngine;
+	private final @NonNull FetchTimeouts timeouts;
+	private final @Nullable ValidatorListener validatorListener;
+	
+	private final @Nullable CacheFile cacheFile;
+	
+	private Composite configuration;
+	
+	// Fingerprint of the raw bytes the current configuration was parsed from
+	private String configurationHash;
+	
+	// Validators for the current configuration
+	private HttpValidators validators;
+	
+	// Fingerprint of the content most recently fetched, which is what reports refer to
+	private String fetchedHash;
+	
+	private boolean needsLoad= true;
+	
+	// Whether the last fetch failed, and how long the server asked us to wait if it said
+	private boolean fetchFailing;
+	private int retryAfterSeconds;
+	
+	private boolean serveCached;
+	private boolean unverified;
+	
+	private HttpConfigLoader(
+			@NonNull ConfigSource source,
+			@NonNull URI configUri,
+			@NonNull String cacheKey,
+			boolean warmStart,
+			@NonNull FetchTimeouts timeouts,
+			@Nullable ValidatorListener validatorListener)
+	{
+		this.source= source;
+		this.configUri= configUri;
+		this.timeouts= timeouts;
+		this.validatorListener= validatorListener;
+		this.fetchEngine= HttpFetchEngine.getInstance(timeouts.getConnectTimeout());
+		
+		cacheFile= CacheFile.Locate(cacheKey);
+		if (cacheFile != null) {
+			CacheSnapshot snapshot= cacheFile.read();
+			if (snapshot != null) {
+				try {
+					Composite cached= snapshot.getConfiguration();
+					if (cached == null) {
+						RawContent content= snapshot.getContent();
+						if (content != null) {
+							cached= Parse(content);
+						}
+					}
+					
+					if (cached != null) {
+						configuration= cached;
+						configurationHash= snapshot.getFingerprint();
+						setValidators(snapshot.getValidators());
+						serveCached= warmStart;
+					}
+				} catch (SchemaException|ApiResponseFormatException|IOException e) {
+					log.error("Error parsing configuration cache", e);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Create
+	 * 
+	 * Create a loader and read the cache for it
+	 * 
+	 * @param source					Source the loader works for, which failures are reported to
+	 * @param configUri					URI to fetch
+	 * @param cacheKey					Unique key for the cache file
+	 * @param warmStart					Apply the cached configuration without waiting for the
+	 * 									server, and revalidate it right afterwards
+	 * @param timeouts					Network timeouts
+	 * @param validatorListener			Told when the validators change, if anyone cares
+	 * 
+	 * @return							New loader
+	 */
+	static @NonNull HttpConfigLoader Create(
+			@NonNull ConfigSource source,
+			@NonNull URI configUri,
+			@NonNull String cacheKey,
+			boolean warmStart,
+			@NonNull FetchTimeouts timeouts,
+			@Nullable ValidatorListener validatorListener)
+	{
+		return new HttpConfigLoader(
+				source, configUri, cacheKey, warmStart, timeouts, validatorListener);
+	}
+	
+	/**
+	 * FormatFor
+	 * 
+	 * Map a content type to the format it holds.  Only the media type counts - servers
+	 * commonly send "application/json; charset=utf-8" - and case doesn't matter.
+	 * 
+	 * @param contentType				Content type, or null for the JSON default
+	 * 
+	 * @return							Format, or null if there's no parser for it
+	 */
+	static @Nullable TreeFormat FormatFor(@Nullable String contentType) {
+		if (contentType == null) {
+			return TreeFormat.JSON;
+		}
+		
+		int parameterOffset= contentType.indexOf(';');
+		String mediaType= (parameterOffset >= 0)
+				? contentType.substring(0, parameterOffset) : contentType;
+		
+		switch (mediaType.trim().toLowerCase(Locale.ROOT)) {
+		case "application/json":
+			return TreeFormat.JSON;
+			
+		case "application/yaml":
+			return TreeFormat.YAML;
+			
+		default:
+			return null;
+		}
+	}
+	
+	/**
+	 * Parse
+	 * 
+	 * Parse content according to its content type
+	 * 
+	 * @param content					Content
+	 * 
+	 * @return							Configuration
+	 * 
+	 * @throws SchemaException			Content doesn't parse
+	 * @throws ApiResponseFormatException	No parser for the content type
+	 * @throws IOException				Error reading content
+	 */
+	static @NonNull Composite Parse(
+			@NonNull RawContent content
+			) throws SchemaException, ApiResponseFormatException, IOException
+	{
+		TreeFormat format= FormatFor(content.getContentType());
+		if (format == null) {
+			throw new ApiResponseFormatException("Content type " + content.getContentType() +
+					" is not mapped to a known parser.");
+		}
+		
+		try (Reader reader= content.openReader()) {
+			return CompositeTree.Parse(reader, format);
+		}
+	}
+	
+	/**
+	 * getFetchedHash
+	 * 
+	 * Fingerprint of the content most recently fetched
+	 * 
+	 * @return							Fingerprint, or null if nothing has been fetched yet
+	 */
+	synchronized @Nullable String getFetchedHash() {
+		return fetchedHash;
+	}
+	
+	private void setValidators(@Nullable HttpValidators newValidators) {
+		validators= newValidators;
+		
+		ValidatorListener listener= validatorListener;
+		if (listener != null) {
+			listener.validatorsChanged(newValidators);
+		}
+	}
+	
+	/**
+	 * fetchConfiguration
+	 * 
+	 * Fetch the configuration from upstream.  If we already have a configuration, the request
+	 * is made conditional on it having changed.
+	 * 
+	 * @return							New content, or null if the server says nothing changed
+	 * 
+	 * @throws IOException				Unable to reach server
+	 * @throws ApiStatusException		Server returned an error
+	 */
+	private @Nullable RawContent fetchConfiguration(
+			) throws IOException, ApiStatusException
+	{
+		HttpRequest.Builder requestBuilder= fetchEngine
+				.newRequest(configUri, timeouts.getReadTimeout())
+				.GET();
+		
+		// Only send validators if we actually have the configuration they refer to,
+		// otherwise a 304 would leave us with nothing.
+		HttpValidators requestValidators= validators;
+		if ((configuration != null) && (requestValidators != null)) {
+			requestValidators.applyTo(requestBuilder);
+		}
+		
+		@SuppressWarnings("null")
+		@NonNull HttpRequest request= requestBuilder.build();
+		HttpResponse<InputStream> response= fetchEngine.fetch(request);
+		
+		int responseCode= response.statusCode();
+		if (responseCode == 304) {
+			response.body().close();
+			return null;
+		} else if (responseCode == 200) {
+			String contentType= HttpFetchEngine.getHeader(response, "Content-Type");
+			if (contentType == null) {
+				log.warn("Content type not received from configuration endpoint");
+				contentType= "application/json";
+			}
+			
+			try (InputStream input= HttpFetchEngine.openBody(response)) {
+				return RawContent.Read(
+						input, contentType, HttpValidators.FromResponse(response));
+			}
+		} else {
+			throw HttpFetchEngine.statusException(
+					response, "Fetching configuration returned error code");
+		}
+	}
+	
+	private void check() {
+		unverified= false;
+		
+		try {
+			RawContent content;
+			try {
+				content= fetchConfiguration();
+				
+				fetchFailing= false;
+				retryAfterSeconds= 0;
+			} catch (IOException|ApiStatusException e) {
+				fetchFailing= true;
+				retryAfterSeconds= (e instanceof ApiStatusException)
+						? ((ApiStatusException)e).getRetryAfterSeconds() : 0;
+				
+				throw e;
+			}
+			if (content == null) {
+				// 304 Not Modified
+				return;
+			}
+			
+			fetchedHash= content.getFingerprint();
+			
+			// Almost every poll returns exactly what we already have, so compare the raw
+			// bytes before going to the trouble of parsing them.
+			if ((configuration != null) &&
+					content.getFingerprint().equals(configurationHash))
+			{
+				// The server may have handed out new validators for the same body, for
+				// example after a restart.  Keep them so the next poll can be conditional.
+				if (!Objects.equals(validators, content.getValidators())) {
+					setValidators(content.getValidators());
+					if (cacheFile != null) {
+						cacheFile.write(content, configuration);
+					}
+				}
+				return;
+			}
+			
+			Composite newConfiguration= Parse(content);
+			
+			configuration= newConfiguration;
+			configurationHash= content.getFingerprint();
+			setValidators(content.getValidators());
+			needsLoad= true;
+			
+			if (cacheFile != null) {
+				cacheFile.write(content, newConfiguration);
+			}
+		} catch (IOException|ApiStatusException e) {
+			log.error("IO/status exception reading configuration", e);
+		} catch (SchemaException e) {
+			log.error("Invalid response from configuration endpoint", e);
+			source.reportFailure("invalid-json", "Configuration is not well-formed file", e);
+		} catch (ApiResponseFormatException e) {
+			log.error("Invalid response from configuration endpoint", e);
+			source.reportFailure(
+					"invalid-json", "Configuration data is not a known MIME type", e);
+		}
+	}
+	
+	synchronized boolean needsReload() {
+		if (serveCached) {
+			serveCached= false;
+			unverified= true;
+			
+			return needsLoad;
+		}
+		
+		check();
+		return needsLoad;
+	}
+	
+	synchronized boolean needsRevalidation() {
+		return unverified;
+	}
+	
+	synchronized boolean isFetchFailing() {
+		return fetchFailing;
+	}
+	
+	synchronized int getPollHintSeconds() {
+		return retryAfterSeconds;
+	}
+	
+	synchronized @NonNull Composite reload() throws ConfigException, IOException {
+		Composite rval= configuration;
+		while (rval == null) {
+			check();
+			rval= configuration;
+			
+			if (rval == null) {
+				long waitMillis= Math.max(STARTUP_RECHECK_TIME, retryAfterSeconds * 1000L);
+				
+				// Don't wait past the poll deadline - give up and let the manager retry
+				if (PollDeadline.getRemainingMillis() <= waitMillis) {
+					throw new IOException(
+							"Initial configuration was not available before the poll deadline");
+				}
+				
+				log.warn("Waiting to retry initial configuration load");
+				try {
+					Thread.sleep(waitMillis);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException(
+							"Interrupted waiting for initial configuration");
+				}
+			}
+		}
+		
+		needsLoad= false;
+		return rval;
+	}
+}
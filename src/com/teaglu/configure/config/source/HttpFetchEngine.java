@@ -0,0 +1,335 @@
+/****************************************************************************
+ * Copyright 2022 Teaglu, LLC                                               *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *   http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ ****************************************************************************/
+
+package com.teaglu.configure.config.source;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.PushbackInputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.teaglu.configure.config.PollDeadline;
+import com.teaglu.configure.exception.ApiStatusException;
+
+/**
+ * HttpFetchEngine
+ * 
+ * The HTTP client shared by every HTTP-based configuration source.  Using one HttpClient
+ * means connections are kept alive and reused between polls and reports, and HTTP/2 requests
+ * to the same host from any number of sources are multiplexed over one connection instead of
+ * each paying for its own TCP and TLS handshake.
+ * 
+ * Requests advertise gzip and deflate, since configurations tend to be large and very
+ * repetitive.  Compressed bodies are decoded as a stream on the way to the reader, so the
+ * compressed and uncompressed copies are never held in memory side by side.
+ *
+ */
+class HttpFetchEngine {
+	private static final Logger log= LoggerFactory.getLogger(HttpFetchEngine.class);
+	
+	private static final String USER_AGENT= "Teaglu-Configure-Lib";
+	private static final int INFLATE_BUFFER_SIZE= 8192;
+	
+	private final @NonNull HttpClient client;
+	
+	private HttpFetchEngine(@NonNull Duration connectTimeout) {
+		@SuppressWarnings("null")
+		@NonNull HttpClient tmpClient= HttpClient.newBuilder()
+				.version(HttpClient.Version.HTTP_2)
+				.followRedirects(HttpClient.Redirect.NORMAL)
+				.connectTimeout(connectTimeout)
+				.build();
+		
+		client= tmpClient;
+	}
+	
+	// The connect timeout belongs to the client rather than the request, so there is one
+	// engine per distinct timeout.  In practice that's one or two.
+	private static final Map<Duration, HttpFetchEngine> instances= new HashMap<>();
+	
+	public static @NonNull HttpFetchEngine getInstance() {
+		return getInstance(FetchTimeouts.Default().getConnectTimeout());
+	}
+	
+	public static synchronized @NonNull HttpFetchEngine getInstance(
+			@NonNull Duration connectTimeout)
+	{
+		@SuppressWarnings("null")
+		@NonNull HttpFetchEngine rval= instances.computeIfAbsent(
+				connectTimeout, HttpFetchEngine::new);
+		
+		return rval;
+	}
+	
+	/**
+	 * newRequest
+	 * 
+	 * Start building a request with the headers every configuration request carries
+	 * 
+	 * @param uri						Request URI
+	 * 
+	 * @return							Request builder
+	 */
+	public HttpRequest.@NonNull Builder newRequest(@NonNull URI uri) {
+		@SuppressWarnings("null")
+		HttpRequest.@NonNull Builder rval= HttpRequest.newBuilder(uri)
+				.header("User-Agent", USER_AGENT)
+				.header("Cache-Control", "no-cache, no-store")
+				.header("Accept-Encoding", "gzip, deflate");
+		
+		return rval;
+	}
+	
+	/**
+	 * newRequest
+	 * 
+	 * Start building a request that has to be answered within a read timeout.  The timeout
+	 * runs until the response headers arrive, and is cut short by any poll deadline.
+	 * 
+	 * @param uri						Request URI
+	 * @param readTimeout				Time allowed for the server to respond
+	 * 
+	 * @return							Request builder
+	 */
+	public HttpRequest.@NonNull Builder newRequest(
+			@NonNull URI uri,
+			@NonNull Duration readTimeout)
+	{
+		@SuppressWarnings("null")
+		HttpRequest.@NonNull Builder rval= newRequest(uri)
+				.timeout(PollDeadline.bound(readTimeout));
+		
+		return rval;
+	}
+	
+	/**
+	 * fetch
+	 * 
+	 * Send a request and wait for the response headers.  The body is left as a stream for the
+	 * caller to consume and close.
+	 * 
+	 * @param request					Request
+	 * 
+	 * @return							Response
+	 * 
+	 * @throws IOException				Unable to reach the server, or interrupted
+	 */
+	public @NonNull HttpResponse<InputStream> fetch(
+			@NonNull HttpRequest request) throws IOException
+	{
+		try {
+			@SuppressWarnings("null")
+			@NonNull HttpResponse<InputStream> rval= client.send(
+					request, HttpResponse.BodyHandlers.ofInputStream());
+			
+			return rval;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted waiting for configuration server");
+		}
+	}
+	
+	/**
+	 * fetchAsync
+	 * 
+	 * Send a request without blocking.  Cancelling the returned future aborts the exchange.
+	 * 
+	 * @param request					Request
+	 * @param bodyHandler				How to handle the response body
+	 * 
+	 * @return							Future response
+	 */
+	public <T> @NonNull CompletableFuture<HttpResponse<T>> fetchAsync(
+			@NonNull HttpRequest request,
+			HttpResponse.@NonNull BodyHandler<T> bodyHandler)
+	{
+		@SuppressWarnings("null")
+		@NonNull CompletableFuture<HttpResponse<T>> rval= client.sendAsync(request, bodyHandler);
+		
+		return rval;
+	}
+	
+	/**
+	 * getHeader
+	 * 
+	 * Return the first value of a response header
+	 * 
+	 * @param response					Response
+	 * @param name						Header name
+	 * 
+	 * @return							Value, or null if not present
+	 */
+	public static @Nullable String getHeader(
+			@NonNull HttpResponse<?> response,
+			@NonNull String name)
+	{
+		return response.headers().firstValue(name).orElse(null);
+	}
+	
+	/**
+	 * openBody
+	 * 
+	 * Return the response body as a stream, decompressing it on the fly according to the
+	 * Content-Encoding header.
+	 * 
+	 * @param response					Response
+	 * 
+	 * @return							Decoded body stream
+	 * 
+	 * @throws IOException				Unknown encoding or corrupt compressed header
+	 */
+	public static @NonNull InputStream openBody(
+			@NonNull HttpResponse<InputStream> response) throws IOException
+	{
+		@SuppressWarnings("null")
+		@NonNull InputStream body= response.body();
+		
+		String encoding= getHeader(response, "Content-Encoding");
+		if (encoding == null) {
+			return body;
+		}
+		
+		switch (encoding.trim().toLowerCase()) {
+		case "":
+		case "identity":
+			return body;
+			
+		case "gzip":
+		case "x-gzip":
+			return new GZIPInputStream(body, INFLATE_BUFFER_SIZE);
+			
+		case "deflate":
+			// HTTP deflate is supposed to be zlib-wrapped, but enough servers send a raw
+			// deflate stream that it's worth checking the header.
+			PushbackInputStream pushback= new PushbackInputStream(body, 2);
+			byte[] header= pushback.readNBytes(2);
+			pushback.unread(header);
+			
+			boolean zlibWrapped= (header.length == 2) &&
+					((header[0] & 0x0F) == 8) &&
+					((((header[0] & 0xFF) << 8) | (header[1] & 0xFF)) % 31 == 0);
+			
+			// A supplied inflater isn't released by close(), so do that ourselves rather
+			// than leaving native memory to the cleaner.
+			Inflater inflater= new Inflater(!zlibWrapped);
+			return new InflaterInputStream(pushback, inflater, INFLATE_BUFFER_SIZE) {
+				@Override
+				public void close() throws IOException {
+					try {
+						super.close();
+					} finally {
+						inflater.end();
+					}
+				}
+			};
+			
+		default:
+			body.close();
+			throw new IOException("Unsupported content encoding " + encoding);
+		}
+	}
+	
+	/**
+	 * statusException
+	 * 
+	 * Consume and log the body of an error response, and build an exception for it.
+	 * 
+	 * @param response					Error response
+	 * @param message					Message prefix
+	 * 
+	 * @return							Exception to throw
+	 */
+	public static @NonNull ApiStatusException statusException(
+			@NonNull HttpResponse<InputStream> response,
+			@NonNull String message)
+	{
+		try (InputStream errorStream= openBody(response)) {
+			String responseText= new String(
+					errorStream.readAllBytes(), StandardCharsets.UTF_8);
+			
+			log.debug("Error response: " + responseText);
+		} catch (IOException e) {
+		}
+		
+		int statusCode= response.statusCode();
+		
+		// Only throttling and unavailable responses carry a meaningful Retry-After
+		int retryAfterSeconds= 0;
+		if ((statusCode == 429) || (statusCode == 503)) {
+			retryAfterSeconds= parseRetryAfter(getHeader(response, "Retry-After"));
+		}
+		
+		return new ApiStatusException(
+				message + " " + statusCode, statusCode, retryAfterSeconds);
+	}
+	
+	// Don't let a confused server park us for days
+	private static final int MAX_RETRY_AFTER_SECONDS= 3600;
+	
+	/**
+	 * parseRetryAfter
+	 * 
+	 * Parse a Retry-After header, which is either a number of seconds or an HTTP date.
+	 * 
+	 * @param value						Header value
+	 * 
+	 * @return							Seconds to wait, or zero if missing or unreadable
+	 */
+	static int parseRetryAfter(@Nullable String value) {
+		if (value == null) {
+			return 0;
+		}
+		
+		value= value.trim();
+		
+		long seconds= 0;
+		try {
+			seconds= Long.parseLong(value);
+		} catch (NumberFormatException e) {
+			try {
+				ZonedDateTime when= ZonedDateTime.parse(
+						value, DateTimeFormatter.RFC_1123_DATE_TIME);
+				
+				seconds= Duration.between(Instant.now(), when.toInstant()).getSeconds();
+			} catch (DateTimeParseException pe) {
+				log.debug("Unable to parse Retry-After value " + value);
+			}
+		}
+		
+		return (int)Math.max(0, Math.min(MAX_RETRY_AFTER_SECONDS, seconds));
+	}
+}
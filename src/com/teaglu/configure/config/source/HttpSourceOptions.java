@@ -0,0 +1,108 @@
+/****************************************************************************
+ * Copyright 2022 Teaglu, LLC                                               *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *   http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ ****************************************************************************/
+
+package com.teaglu.configure.config.source;
+
+import org.eclipse.jdt.annotation.NonNull;
+
+/**
+ * HttpSourceOptions
+ * 
+ * Options for the sources that fetch a configuration over HTTP.  Options are immutable - each
+ * with method returns a copy with one option changed, so a set of options can be started
+ * from the defaults and shared freely.
+ * 
+ *     HttpSourceOptions.Default()
+ *         .withWarmStart(true)
+ *         .withLongPollSeconds(60)
+ *
+ */
+public class HttpSourceOptions {
+	private final boolean warmStart;
+	private final int longPollSeconds;
+	private final @NonNull FetchTimeouts timeouts;
+	
+	private HttpSourceOptions(
+			boolean warmStart,
+			int longPollSeconds,
+			@NonNull FetchTimeouts timeouts)
+	{
+		this.warmStart= warmStart;
+		this.longPollSeconds= longPollSeconds;
+		this.timeouts= timeouts;
+	}
+	
+	private static final @NonNull HttpSourceOptions DEFAULT=
+			new HttpSourceOptions(false, 0, FetchTimeouts.Default());
+	
+	/**
+	 * Default
+	 * 
+	 * @return							Default options - no warm start, no long-polling, and
+	 * 									the default timeouts
+	 */
+	public static @NonNull HttpSourceOptions Default() {
+		return DEFAULT;
+	}
+	
+	/**
+	 * withWarmStart
+	 * 
+	 * @param warmStart					Apply the cached configuration without waiting for the
+	 * 									server, and revalidate it right afterwards
+	 * 
+	 * @return							Options with warm start set
+	 */
+	public @NonNull HttpSourceOptions withWarmStart(boolean warmStart) {
+		return new HttpSourceOptions(warmStart, longPollSeconds, timeouts);
+	}
+	
+	/**
+	 * withLongPollSeconds
+	 * 
+	 * Only used by sources whose server supports long-polling.
+	 * 
+	 * @param longPollSeconds			Long-poll timeout, or 0 to only poll
+	 * 
+	 * @return							Options with the long-poll timeout set
+	 */
+	public @NonNull HttpSourceOptions withLongPollSeconds(int longPollSeconds) {
+		return new HttpSourceOptions(warmStart, longPollSeconds, timeouts);
+	}
+	
+	/**
+	 * withTimeouts
+	 * 
+	 * @param timeouts					Network timeouts
+	 * 
+	 * @return							Options with the timeouts set
+	 */
+	public @NonNull HttpSourceOptions withTimeouts(@NonNull FetchTimeouts timeouts) {
+		return new HttpSourceOptions(warmStart, longPollSeconds, timeouts);
+	}
+	
+	public boolean isWarmStart() {
+		return warmStart;
+	}
+	
+	public int getLongPollSeconds() {
+		return longPollSeconds;
+	}
+	
+	public @NonNull FetchTimeouts getTimeouts() {
+		return timeouts;
+	}
+}
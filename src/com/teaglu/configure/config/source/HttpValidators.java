@@ -0,0 +1,123 @@
+/****************************************************************************
+ * Copyright 2022 Teaglu, LLC                                               *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *   http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ ****************************************************************************/
+
+package com.teaglu.configure.config.source;
+
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Objects;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * HttpValidators
+ * 
+ * The HTTP cache validators (ETag and Last-Modified) returned with a configuration.  These
+ * are sent back on the next request so the server can answer 304 Not Modified instead of
+ * sending the whole body again.
+ *
+ */
+class HttpValidators {
+	private final @Nullable String etag;
+	private final @Nullable String lastModified;
+	
+	private HttpValidators(
+			@Nullable String etag,
+			@Nullable String lastModified)
+	{
+		this.etag= etag;
+		this.lastModified= lastModified;
+	}
+	
+	/**
+	 * Create
+	 * 
+	 * Create a validator set
+	 * 
+	 * @param etag						ETag header value
+	 * @param lastModified				Last-Modified header value
+	 * 
+	 * @return							Validators, or null if neither is present
+	 */
+	public static @Nullable HttpValidators Create(
+			@Nullable String etag,
+			@Nullable String lastModified)
+	{
+		if ((etag == null) && (lastModified == null)) {
+			return null;
+		} else {
+			return new HttpValidators(etag, lastModified);
+		}
+	}
+	
+	/**
+	 * FromResponse
+	 * 
+	 * Pull the validators out of a response
+	 * 
+	 * @param response					Response
+	 * 
+	 * @return							Validators, or null if there weren't any
+	 */
+	public static @Nullable HttpValidators FromResponse(
+			@NonNull HttpResponse<?> response)
+	{
+		return Create(
+				HttpFetchEngine.getHeader(response, "ETag"),
+				HttpFetchEngine.getHeader(response, "Last-Modified"));
+	}
+	
+	public @Nullable String getEtag() {
+		return etag;
+	}
+	
+	public @Nullable String getLastModified() {
+		return lastModified;
+	}
+	
+	/**
+	 * applyTo
+	 * 
+	 * Add the conditional request headers to a request
+	 * 
+	 * @param builder					Request being built
+	 */
+	public void applyTo(HttpRequest.@NonNull Builder builder) {
+		if (etag != null) {
+			builder.header("If-None-Match", etag);
+		}
+		if (lastModified != null) {
+			builder.header("If-Modified-Since", lastModified);
+		}
+	}
+	
+	@Override
+	public boolean equals(Object other) {
+		if (!(other instanceof HttpValidators)) {
+			return false;
+		}
+		
+		HttpValidators otherValidators= (HttpValidators)other;
+		return Objects.equals(etag, otherValidators.etag) &&
+				Objects.equals(lastModified, otherValidators.lastModified);
+	}
+	
+	@Override
+	public int hashCode() {
+		return Objects.hash(etag, lastModified);
+	}
+}
@@ -0,0 +1,187 @@
+/****************************************************************************
+ * Copyright 2022 Teaglu, LLC                                               *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *   http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ ****************************************************************************/
+
+package com.teaglu.configure.config.source;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * RawContent
+ * 
+ * The raw bytes of a configuration as received from upstream, along with a fingerprint that
+ * is computed while the bytes are read.  Sources compare the fingerprint against the last
+ * version they saw so they can skip parsing entirely when nothing changed, which is almost
+ * every poll.
+ *
+ */
+class RawContent {
+	private static final int READ_BUFFER_SIZE= 8192;
+	
+	private final @Nullable String contentType;
+	private final @Nullable HttpValidators validators;
+	private final byte @NonNull[] data;
+	private final int length;
+	private final @NonNull String fingerprint;
+	
+	private RawContent(
+			@Nullable String contentType,
+			@Nullable HttpValidators validators,
+			byte @NonNull[] data,
+			int length,
+			@NonNull String fingerprint)
+	{
+		this.contentType= contentType;
+		this.validators= validators;
+		this.data= data;
+		this.length= length;
+		this.fingerprint= fingerprint;
+	}
+	
+	private static @NonNull MessageDigest createDigest() {
+		try {
+			@SuppressWarnings("null")
+			@NonNull MessageDigest rval= MessageDigest.getInstance("SHA-256");
+			
+			return rval;
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException("SHA not available");
+		}
+	}
+	
+	private static @NonNull String encode(@NonNull MessageDigest digest) {
+		@SuppressWarnings("null")
+		@NonNull String rval= Base64.getEncoder().encodeToString(digest.digest());
+		
+		return rval;
+	}
+	
+	/**
+	 * Read
+	 * 
+	 * Read an input stream to EOF, fingerprinting the data as it goes by.  The stream is not
+	 * closed.
+	 * 
+	 * @param input						Input stream
+	 * @param contentType				Content type if known
+	 * 
+	 * @return							Content
+	 * 
+	 * @throws IOException				Error reading stream
+	 */
+	public static @NonNull RawContent Read(
+			@NonNull InputStream input,
+			@Nullable String contentType) throws IOException
+	{
+		return Read(input, contentType, null);
+	}
+	
+	/**
+	 * Read
+	 * 
+	 * Read an input stream to EOF, fingerprinting the data as it goes by, and keep the HTTP
+	 * validators that came with it.  The stream is not closed.
+	 * 
+	 * @param input						Input stream
+	 * @param contentType				Content type if known
+	 * @param validators				HTTP validators if any
+	 * 
+	 * @return							Content
+	 * 
+	 * @throws IOException				Error reading stream
+	 */
+	public static @NonNull RawContent Read(
+			@NonNull InputStream input,
+			@Nullable String contentType,
+			@Nullable HttpValidators validators) throws IOException
+	{
+		MessageDigest digest= createDigest();
+		
+		byte[] buffer= new byte[READ_BUFFER_SIZE];
+		int length= 0;
+		
+		for (int bufferCnt; (bufferCnt= input.read(buffer, length, buffer.length - length)) != -1; ) {
+			digest.update(buffer, length, bufferCnt);
+			length+= bufferCnt;
+			
+			if (length == buffer.length) {
+				buffer= Arrays.copyOf(buffer, buffer.length * 2);
+			}
+		}
+		
+		@SuppressWarnings("null")
+		byte @NonNull[] data= buffer;
+		
+		return new RawContent(contentType, validators, data, length, encode(digest));
+	}
+	
+	/**
+	 * Fingerprint
+	 * 
+	 * Fingerprint a buffer without copying it.  The buffer position is not changed.
+	 * 
+	 * @param buffer					Buffer
+	 * 
+	 * @return							Fingerprint
+	 */
+	public static @NonNull String Fingerprint(@NonNull ByteBuffer buffer) {
+		MessageDigest digest= createDigest();
+		digest.update(buffer.duplicate());
+		
+		return encode(digest);
+	}
+	
+	public @Nullable String getContentType() {
+		return contentType;
+	}
+	
+	public @Nullable HttpValidators getValidators() {
+		return validators;
+	}
+	
+	public @NonNull String getFingerprint() {
+		return fingerprint;
+	}
+	
+	public int getLength() {
+		return length;
+	}
+	
+	public @NonNull InputStream openStream() {
+		return new ByteArrayInputStream(data, 0, length);
+	}
+	
+	public @NonNull Reader openReader() {
+		return new InputStreamReader(openStream(), StandardCharsets.UTF_8);
+	}
+	
+	public void writeTo(@NonNull OutputStream output) throws IOException {
+		output.write(data, 0, length);
+	}
+}
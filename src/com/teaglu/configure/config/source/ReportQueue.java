@@ -0,0 +1,200 @@
+/****************************************************************************
+ * Copyright 2022 Teaglu, LLC                                               *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *   http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ ****************************************************************************/
+
+package com.teaglu.configure.config.source;
+
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * ReportQueue
+ * 
+ * Delivers success and failure reports for one source in the background, so a slow or broken
+ * report endpoint never holds up applying configuration.
+ * 
+ * Each report carries a key naming what is being reported, normally the outcome and the
+ * fingerprint of the configuration.  A report with the same key as one already delivered or
+ * waiting is dropped, and a new report replaces one that hasn't gone out yet - only the most
+ * recent state of the source matters.  Failed deliveries are retried with exponential backoff,
+ * tracked per queue so one endpoint being down doesn't slow down reports to another.
+ * 
+ * All queues share a small pool of daemon threads.  Each queue has at most one delivery
+ * scheduled or running at a time, so reports for one source go out in order, and an endpoint
+ * that hangs only ever ties up one thread - reports for other sources carry on.
+ *
+ */
+class ReportQueue {
+	private static final Logger log= LoggerFactory.getLogger(ReportQueue.class);
+	
+	/**
+	 * Report
+	 * 
+	 * A report to deliver
+	 */
+	interface Report {
+		/**
+		 * send
+		 * 
+		 * Send the report.  Throwing means it should be retried.
+		 * 
+		 * @throws Exception				Delivery failed
+		 */
+		void send() throws Exception;
+	}
+	
+	private static final long INITIAL_RETRY_MILLIS= 1_000;
+	private static final long MAX_RETRY_MILLIS= 5 * 60 * 1000;
+	private static final int MAX_ATTEMPTS= 10;
+	
+	// Sends block for as long as the endpoint takes to answer, so one thread per source that
+	// might be slow at the same time.  Idle threads are let go.
+	private static final int POOL_SIZE= 4;
+	private static final long IDLE_SECONDS= 60;
+	
+	private static ScheduledThreadPoolExecutor executor;
+	
+	private static synchronized @NonNull ScheduledThreadPoolExecutor getExecutor() {
+		if (executor == null) {
+			AtomicInteger threadCount= new AtomicInteger();
+			
+			executor= new ScheduledThreadPoolExecutor(POOL_SIZE, runnable -> {
+				Thread thread= new Thread(
+						runnable, "configuration-report-" + threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			});
+			executor.setKeepAliveTime(IDLE_SECONDS, TimeUnit.SECONDS);
+			executor.allowCoreThreadTimeOut(true);
+		}
+		
+		@SuppressWarnings("null")
+		@NonNull ScheduledThreadPoolExecutor rval= executor;
+		
+		return rval;
+	}
+	
+	private final @NonNull String name;
+	
+	private String pendingKey;
+	private Report pendingReport;
+	private int attempts;
+	
+	private String deliveredKey;
+	
+	// Whether a delivery is scheduled or running
+	private boolean dispatching;
+	
+	private ReportQueue(@NonNull String name) {
+		this.name= name;
+	}
+	
+	/**
+	 * Create
+	 * 
+	 * Create a report queue
+	 * 
+	 * @param name						Name used in log messages
+	 * 
+	 * @return							New queue
+	 */
+	static @NonNull ReportQueue Create(@NonNull String name) {
+		return new ReportQueue(name);
+	}
+	
+	/**
+	 * submit
+	 * 
+	 * Queue a report for delivery.  This never blocks.
+	 * 
+	 * @param key						What is being reported
+	 * @param report					Report to send
+	 */
+	synchronized void submit(
+			@NonNull String key,
+			@NonNull Report report)
+	{
+		if (key.equals(deliveredKey) || key.equals(pendingKey)) {
+			return;
+		}
+		
+		pendingKey= key;
+		pendingReport= report;
+		attempts= 0;
+		
+		if (!dispatching) {
+			dispatching= true;
+			getExecutor().execute(this::deliver);
+		}
+	}
+	
+	private void deliver() {
+		String key;
+		Report report;
+		synchronized (this) {
+			key= pendingKey;
+			report= pendingReport;
+			
+			if ((key == null) || (report == null)) {
+				dispatching= false;
+				return;
+			}
+		}
+		
+		boolean delivered= false;
+		try {
+			report.send();
+			delivered= true;
+		} catch (Exception e) {
+			log.warn("Unable to deliver " + name + " report", e);
+		}
+		
+		synchronized (this) {
+			if (!key.equals(pendingKey)) {
+				// Superseded while we were sending, so go straight on to the new one
+				if (delivered) {
+					deliveredKey= key;
+				}
+				getExecutor().execute(this::deliver);
+			} else if (delivered) {
+				deliveredKey= key;
+				pendingKey= null;
+				pendingReport= null;
+				dispatching= false;
+			} else if (++attempts >= MAX_ATTEMPTS) {
+				log.error("Giving up on " + name + " report after " + attempts + " attempts");
+				
+				pendingKey= null;
+				pendingReport= null;
+				dispatching= false;
+			} else {
+				long delayMillis= Math.min(
+						MAX_RETRY_MILLIS, INITIAL_RETRY_MILLIS << (attempts - 1));
+				
+				// Jitter so a fleet whose endpoint went down together doesn't retry together
+				delayMillis= (delayMillis / 2) +
+						ThreadLocalRandom.current().nextLong((delayMillis / 2) + 1);
+				
+				getExecutor().schedule(this::deliver, delayMillis, TimeUnit.MILLISECONDS);
+			}
+		}
+	}
+}
@@ -16,33 +16,23 @@
 
 package com.teaglu.configure.config.source;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.Reader;
-import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
-import java.net.URL;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.util.Base64;
-import java.util.Base64.Encoder;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.jdt.annotation.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
@@ -50,421 +40,338 @@ import com.google.gson.JsonSyntaxException;
 import com.teaglu.composite.Composite;
 import com.teaglu.composite.exception.SchemaException;
 import com.teaglu.composite.exception.WrongTypeException;
-import com.teaglu.composite.json.JsonComposite;
-import com.teaglu.composite.yaml.YamlComposite;
 import com.teaglu.configure.config.ConfigSource;
+import com.teaglu.configure.config.SourceChangeListener;
+import com.teaglu.configure.config.WatchableConfigSource;
 import com.teaglu.configure.exception.ApiResponseFormatException;
 import com.teaglu.configure.exception.ApiStatusException;
 import com.teaglu.configure.exception.ConfigException;
 
-public class SmbtrackConfigSource implements ConfigSource {
+public class SmbtrackConfigSource implements WatchableConfigSource {
 	private static final Logger log= LoggerFactory.getLogger(SmbtrackConfigSource.class);
 	
-	private static final String USER_AGENT= "Teaglu-Configure-Lib";
-	private static final int READ_BUFFER_SIZE= 2048;
+	private final @NonNull URI confirmUri;
+	private final @NonNull URI rejectUri;
+	private final @NonNull URI watchUri;
 	
-	private final @NonNull URL configUrl;
+	private final @NonNull HttpFetchEngine fetchEngine;
+	private final @NonNull FetchTimeouts timeouts;
 	
-	private final @NonNull URL confirmUrl;
-	private final @NonNull URL rejectUrl;
+	// How long the server should hold a long-poll request open, or 0 to only poll
+	private final int longPollSeconds;
 	
-	private File cacheFile;
-
-	// If we can't get a configuration from the upstream URL, and we don't have a cache file or
-	// the cache file is missing/invalid, this is how long we wait to retry
-	private static final long STARTUP_RECHECK_TIME= 15_000;
-
-	private Composite configuration;
-	private String configurationHash;
+	// Extra time past the long-poll timeout before we give up on the server
+	private static final int LONG_POLL_SLACK_SECONDS= 15;
+	
+	private final @NonNull HttpConfigLoader loader;
+	
+	// Reports go out in the background so a slow endpoint doesn't hold up the poll
+	private final @NonNull ReportQueue reportQueue= ReportQueue.Create("SMBTrack");
 	
-	private boolean needsLoad= true;
-	private boolean needsReport= false;
+	// The watch state is guarded by its own lock, because the loader holds its monitor across
+	// network calls.  Each step of the long-poll chain carries the sequence number it was
+	// started with, and quietly does nothing if the chain has since been restarted or stopped.
+	private final Object watchLock= new Object();
+	private String currentEtag;
+	private SourceChangeListener watchListener;
+	private CompletableFuture<HttpResponse<Void>> watchFuture;
+	private long watchSequence= 0;
+	private boolean watching= false;
 	
 	private SmbtrackConfigSource(
-			@NonNull String host,
-			@NonNull String token) throws ConfigException
+			@NonNull String baseUrl,
+			@NonNull String token,
+			@NonNull HttpSourceOptions options) throws ConfigException
 	{
-		String cacheDirectory= System.getenv("CONFIGURATION_CACHE");
-		if (cacheDirectory != null) {
-			if (!cacheDirectory.endsWith(File.separator)) {
-				cacheDirectory+= File.separator;
-			}
-			
-			try {
-				// The token will be unique, but we still hash it just so the authentication
-				// token won't be sitting around somewhere.  All we're really trying to do is
-				// make sure that two different invocations don't step on each other.
-				MessageDigest digest= MessageDigest.getInstance("SHA-1");
-				digest.update(token.getBytes(StandardCharsets.UTF_8));
-				Encoder encoder= Base64.getEncoder();
-				String configHash= encoder.encodeToString(digest.digest());
-				
-				cacheFile= new File(cacheDirectory + configHash + ".dat");
-				
-				if (cacheFile.exists()) {
-					String contentType;
-					String content;
-					
-					try (InputStream cacheStream= new FileInputStream(cacheFile)) {
-						try (Reader cacheReader= new InputStreamReader(cacheStream)) {
-							try (BufferedReader bufferedReader= new BufferedReader(cacheReader)) {
-								contentType= bufferedReader.readLine();
-								
-								StringBuilder contentBuilder= new StringBuilder();
-								
-								char buffer[]= new char[READ_BUFFER_SIZE];
-								int bufferCnt= 0;
-								while ((bufferCnt= bufferedReader.read(buffer)) != -1) {
-									contentBuilder.append(buffer, 0, bufferCnt);
-								}
-								
-								content= contentBuilder.toString();
-							}
-						}
-						
-						if ((contentType != null) && (content != null)) {
-							try {
-								configuration= parseConfiguration(contentType, content);
-							} catch (SchemaException|ApiResponseFormatException e) {
-								log.error("Error parsing configuration cache", e);
-							}
-						}
-					} catch (IOException|JsonSyntaxException e) {
-						log.error("Error loading configuration cache", e);
-					}
-				} else {
-					log.warn("Configuration cache not present.  " +
-								"If this is not an initial installation this could be a problem.");
-				}
-			} catch (NoSuchAlgorithmException e) {
-				log.error(
-						"Unable to find SHA-1 hash to calculate cache file names", e);
-			}
-		} else {
-			log.warn(
-					"Configuration cache not configured - this is not recommended.");
-			cacheFile= null;
-		}
-
+		this.longPollSeconds= options.getLongPollSeconds();
+		this.timeouts= options.getTimeouts();
+		this.fetchEngine= HttpFetchEngine.getInstance(timeouts.getConnectTimeout());
+		
+		URI configUri;
 		try {
-			String configUrl= "https://" + host + "/api/v1/cfg/direct/" + token;
+			String configUrl= baseUrl + "/api/v1/cfg/direct/" + token;
 			
-			this.configUrl= new URL(configUrl);
-			this.confirmUrl= new URL(configUrl + "/confirm");
-			this.rejectUrl= new URL(configUrl + "/reject");
-		} catch (MalformedURLException e) {
+			configUri= new URI(configUrl);
+			this.confirmUri= new URI(configUrl + "/confirm");
+			this.rejectUri= new URI(configUrl + "/reject");
+			this.watchUri= new URI(configUrl + "/watch?timeout=" + longPollSeconds);
+		} catch (URISyntaxException e) {
 			throw new ConfigException("Malformed configuration URL", e);
 		}
+		
+		// The token will be unique, but the cache file name is a hash of it so the
+		// authentication token won't be sitting around somewhere.  All we're really trying
+		// to do is make sure that two different invocations don't step on each other.
+		this.loader= HttpConfigLoader.Create(this, configUri, token,
+				options.isWarmStart(), timeouts, this::setCurrentEtag);
 	}
 	
 	public static @NonNull ConfigSource Create(
 			@NonNull String host,
 			@NonNull String token) throws ConfigException
 	{
-		return new SmbtrackConfigSource(host, token);
+		return new SmbtrackConfigSource("https://" + host, token, HttpSourceOptions.Default());
 	}
 	
-	private String getJsonHash(@NonNull Composite el) {
-		try {
-			MessageDigest md= MessageDigest.getInstance("SHA-1");
-			md.update(el.toString().getBytes(StandardCharsets.UTF_8));
-			Encoder encoder= Base64.getEncoder();
-			return encoder.encodeToString(md.digest());
-		} catch (NoSuchAlgorithmException e) {
-			log.error("Unable to hash algorithm SHA-1", e);
-			
-			return Long.toString(System.currentTimeMillis());
-		}
+	/**
+	 * Create
+	 * 
+	 * Create a source with explicit options
+	 * 
+	 * @param host						SMBTrack host name
+	 * @param token						Direct access token
+	 * @param options					Long-polling, warm start and network timeouts
+	 * 
+	 * @return							New source
+	 * 
+	 * @throws ConfigException			Malformed URL
+	 */
+	public static @NonNull ConfigSource Create(
+			@NonNull String host,
+			@NonNull String token,
+			@NonNull HttpSourceOptions options) throws ConfigException
+	{
+		return new SmbtrackConfigSource("https://" + host, token, options);
 	}
 	
-	private @NonNull Composite parseConfiguration(
-			@NonNull String contentTypeHeader,
-			@NonNull String content) throws SchemaException, ApiResponseFormatException
+	/**
+	 * CreateWithBaseUrl
+	 * 
+	 * Create a source against an explicit base URL instead of an https host name, for an
+	 * installation served over plain http, on a non-standard port, or under a path prefix.
+	 * This is public API - it's also how the tests and benchmarks point a source at a local
+	 * stub server.
+	 * 
+	 * @param baseUrl					Base URL such as http://localhost:8080, without the
+	 * 									trailing slash
+	 * @param token						Direct access token
+	 * @param options					Long-polling, warm start and network timeouts
+	 * 
+	 * @return							New source
+	 * 
+	 * @throws ConfigException			Malformed URL
+	 */
+	public static @NonNull ConfigSource CreateWithBaseUrl(
+			@NonNull String baseUrl,
+			@NonNull String token,
+			@NonNull HttpSourceOptions options) throws ConfigException
 	{
-		String contentType= contentTypeHeader;
-		int charsetOffset= contentType.indexOf(';');
-		if (charsetOffset > 0) {
-			contentType= contentType.substring(0, charsetOffset);
-		}
-		
-		switch (contentType) {
-		case "application/json":
-			return JsonComposite.Parse(content);
-		
-		case "application/yaml":
-			return YamlComposite.Parse(content);
-			
-		default:
-			throw new ApiResponseFormatException(
-					"Content type " + contentType + " is not mapped to a known parser.");
-		}
+		return new SmbtrackConfigSource(baseUrl, token, options);
 	}
 	
-	private @NonNull Composite fetchConfiguration(
+	private @NonNull JsonObject uploadResponse(
+			@NonNull URI respondUri,
+			@NonNull JsonObject data
 			) throws IOException, SchemaException, ApiResponseFormatException, ApiStatusException
 	{
-		// If we were doing any real volume the Apache HTTP library is more efficient because it
-		// keeps a consistent connection pool, but since we're only pulling something every 5
-		// minutes or so the connections would go stale anyway.  Using the native stuff is one
-		// less dependency to drag in.  -DAW 221007
-		HttpURLConnection connection= (HttpURLConnection)configUrl.openConnection();
-
-		try {
-			connection.setRequestProperty("User-Agent", USER_AGENT);
-			connection.setRequestProperty("Cache-Control", "no-cache, no-store");
-			connection.setRequestMethod("GET");
-	
-			connection.setDoInput(true);
-			connection.setDoOutput(false);
-
-			int responseCode= connection.getResponseCode();
-			if (responseCode == 200) {
-				String contentType= connection.getContentType();
-				if (contentType == null) {
-					log.warn("Content type not received from configuration endpoint");
-					contentType= "application/json";
-				}
-				
-				InputStream input= connection.getInputStream();
-				if (input == null) {
-					throw new RuntimeException("Input stream is null on HttpURLConnection");
-				}
-				
-				StringBuilder response= new StringBuilder();
+		@SuppressWarnings("null")
+		@NonNull HttpRequest request= fetchEngine
+				.newRequest(respondUri, timeouts.getReadTimeout())
+				.header("Content-Type", "application/json")
+				.POST(HttpRequest.BodyPublishers.ofString(
+						data.toString(), StandardCharsets.UTF_8))
+				.build();
+		
+		HttpResponse<InputStream> response= fetchEngine.fetch(request);
+		
+		int responseCode= response.statusCode();
+		if (responseCode == 200) {
+			try (InputStreamReader isr= new InputStreamReader(
+					HttpFetchEngine.openBody(response), StandardCharsets.UTF_8))
+			{
+				// For now the response isn't actually used - it's just required to be a
+				// JSON object.
+				JsonElement responseElement= JsonParser.parseReader(isr);
 				
-				OutputStreamWriter cacheWriter= null;
-				try {
-					if (cacheFile != null) {
-						cacheWriter= new FileWriter(cacheFile);						
-						cacheWriter.write(contentType + "\n");
-					}
-					
-					try (InputStreamReader reader= new InputStreamReader(input)) {
-						char[] buffer= new char[READ_BUFFER_SIZE];
-						int bufferCnt= 0;
-						while ((bufferCnt= reader.read(buffer)) != -1) {
-							response.append(buffer, 0, bufferCnt);
-							
-							// Copy the data to the cache file at the same time
-							if (cacheWriter != null) {
-								cacheWriter.write(buffer, 0, bufferCnt);
-							}
-						}
-					}
-				} finally {
-					if (cacheWriter != null) {
-						cacheWriter.close();
-					}
+				if (!responseElement.isJsonObject()) {
+					throw new WrongTypeException("Main Body", "Element");
 				}
 				
 				@SuppressWarnings("null")
-				@NonNull String content= response.toString();
-
-				return parseConfiguration(contentType, content);
-			} else {
-				// User error stream first, or input if error is null
-				InputStream inputStream= connection.getErrorStream();
-				if (inputStream == null) {
-					try {
-						inputStream= connection.getInputStream();
-					} catch (IOException e) {
-					}
-				}
+				@NonNull JsonObject rval= responseElement.getAsJsonObject();
 				
-				StringBuilder responseText= new StringBuilder();
-				if (inputStream != null) {
-					try (InputStreamReader isr=
-							new InputStreamReader(inputStream, StandardCharsets.UTF_8))
-					{
-						char[] responseBuffer= new char[2048];
-						
-						while (true) {
-							int bytesRead= isr.read(responseBuffer);
-							if (bytesRead == -1) {
-								break;
-							} else {
-								responseText.append(responseBuffer, 0, bytesRead);
-							}
-						}
-
-						log.debug("Error response: " + responseText.toString());
-					}
-				}
-				throw new ApiStatusException(
-						"Fetching configuration returned error code " + responseCode);
+				return rval;
+			} catch (JsonSyntaxException e) {
+				throw new ApiResponseFormatException("Unable to Parse JSON Response", e);
 			}
-		} finally {
-			connection.disconnect();
+		} else {
+			throw HttpFetchEngine.statusException(response, "Status code");
 		}
 	}
 	
-	private @NonNull JsonObject uploadResponse(
-			@NonNull URL respondUrl,
-			@NonNull JsonObject data
-			) throws IOException, SchemaException, ApiResponseFormatException, ApiStatusException
-	{
-		HttpURLConnection connection= (HttpURLConnection)respondUrl.openConnection();
-
-		try {
-			connection.setRequestProperty("User-Agent", USER_AGENT);
-			connection.setRequestProperty("Cache-Control", "no-cache, no-store");
-			connection.setRequestMethod("POST");
-	
-			connection.setDoInput(true);
-			connection.setDoOutput(true);
-			
-			byte[] dataBytes= data.toString().getBytes(StandardCharsets.UTF_8);
-			connection.setRequestProperty("Content-Type", "application/json");
-			connection.setRequestProperty("Content-Length", Integer.toString(dataBytes.length));
+	private void setCurrentEtag(@Nullable HttpValidators validators) {
+		String etag= (validators == null) ? null : validators.getEtag();
+		
+		synchronized (watchLock) {
+			boolean changed= (etag != null) && !etag.equals(currentEtag);
+			currentEtag= etag;
 			
-			OutputStream output= connection.getOutputStream();
-			output.write(dataBytes);
-
-			int responseCode= connection.getResponseCode();
-			if (responseCode == 200) {
-				try (InputStreamReader isr= new InputStreamReader(
-						connection.getInputStream(), StandardCharsets.UTF_8))
-				{
-					// For now the response isn't actually used - it's just required to be a
-					// JSON object.
-					JsonElement responseElement= JsonParser.parseReader(isr);
-					
-					if (!responseElement.isJsonObject()) {
-						throw new WrongTypeException("Main Body", "Element");
-					}
-					
-					@SuppressWarnings("null")
-					@NonNull JsonObject rval= responseElement.getAsJsonObject();
-					
-					return rval;
-				} catch (JsonSyntaxException e) {
-					throw new ApiResponseFormatException("Unable to Parse JSON Response", e);
-				}
-			} else {
-				InputStream inputStream= connection.getErrorStream();
-				if (inputStream == null) {
-					try {
-						inputStream= connection.getInputStream();
-					} catch (IOException e) {
-					}
-				}
-				
-				StringBuilder responseText= new StringBuilder();
-				if (inputStream != null) {
-					try (InputStreamReader isr= new InputStreamReader(
-							inputStream, StandardCharsets.UTF_8))
-					{
-						char[] responseBuffer= new char[READ_BUFFER_SIZE];
-						
-						while (true) {
-							int bytesRead= isr.read(responseBuffer);
-							if (bytesRead == -1) {
-								break;
-							} else {
-								responseText.append(responseBuffer, 0, bytesRead);
-							}
-						}
-
-						log.debug("Error response: " + responseText.toString());
+			// If the chain is parked waiting for a newer version, start it right back up
+			// rather than waiting for the fallback timer.
+			if (changed && watching && (watchFuture == null)) {
+				scheduleWatch(0);
+			}
+		}
+	}
+	
+	// Caller holds watchLock
+	private void scheduleWatch(long delayMillis) {
+		long sequence= ++watchSequence;
+		
+		if (delayMillis == 0) {
+			sendWatch(sequence);
+		} else {
+			CompletableFuture.delayedExecutor(delayMillis, TimeUnit.MILLISECONDS).execute(() -> {
+				synchronized (watchLock) {
+					if (watching && (sequence == watchSequence)) {
+						sendWatch(sequence);
 					}
 				}
-				throw new ApiStatusException("Status code " + responseCode);
-			}
-		} finally {
-			connection.disconnect();
+			});
 		}
 	}
 	
-	private void check() {
-		try {
-			Composite newConfiguration= fetchConfiguration();
-			String newConfigurationHash= getJsonHash(newConfiguration);
+	// Caller holds watchLock
+	private void sendWatch(long sequence) {
+		// Without an ETag the server has no way to know what we have, so wait until a
+		// regular poll gets us one.  setCurrentEtag() restarts the chain.
+		String etag= currentEtag;
+		if (etag == null) {
+			return;
+		}
+		
+		@SuppressWarnings("null")
+		@NonNull HttpRequest request= fetchEngine.newRequest(watchUri)
+				.header("If-None-Match", etag)
+				.timeout(Duration.ofSeconds(longPollSeconds + LONG_POLL_SLACK_SECONDS))
+				.GET()
+				.build();
+		
+		watchFuture= fetchEngine.fetchAsync(request, HttpResponse.BodyHandlers.discarding());
+		watchFuture.whenComplete((response, exception) ->
+				watchComplete(sequence, etag, response, exception));
+	}
+	
+	private void watchComplete(
+			long sequence,
+			@NonNull String etag,
+			@Nullable HttpResponse<Void> response,
+			@Nullable Throwable exception)
+	{
+		synchronized (watchLock) {
+			if (!watching || (sequence != watchSequence)) {
+				return;
+			}
+			watchFuture= null;
 			
-			boolean changed= false;
-			if (configuration == null) {
-				changed= true;
-			} else {
-				changed= !newConfigurationHash.equals(configurationHash);
+			if ((exception != null) || (response == null)) {
+				log.warn("Error waiting for configuration change", exception);
+				
+				// Regular polling still runs, so there's no hurry to get back in
+				scheduleWatch(HttpConfigLoader.STARTUP_RECHECK_TIME);
+				return;
 			}
 			
-			if (changed) {
-				configuration= newConfiguration;
-				configurationHash= newConfigurationHash;
-				needsLoad= true;
-				needsReport= true;
+			int responseCode= response.statusCode();
+			switch (responseCode) {
+			case 200:
+				// The listener is called under the lock so it can't fire after stopWatching()
+				// returns.  It only wakes the manager, so it's quick.
+				SourceChangeListener listener= watchListener;
+				if (listener != null) {
+					listener.sourceChanged();
+				}
 				
-				if (cacheFile != null) {
-					try (OutputStream cacheStream= new FileOutputStream(cacheFile)) {
-						try (OutputStreamWriter cacheWriter=
-								new OutputStreamWriter(cacheStream, StandardCharsets.UTF_8))
-						{
-							// Use pretty-printing so the file is readable
-							GsonBuilder gsonBuilder= new GsonBuilder();
-							gsonBuilder.setPrettyPrinting();
-							Gson gson= gsonBuilder.create();
-							
-							cacheWriter.write(gson.toJson(newConfiguration));
-							cacheWriter.write("\n");
-						}
-					} catch (IOException|JsonSyntaxException e) {
-						log.error("Error writing configuration cache", e);
-					}
+				// The poll we just triggered should bring a new ETag and restart the chain.
+				// If it doesn't for some reason, try again after a while anyway.
+				if (etag.equals(currentEtag)) {
+					scheduleWatch(HttpConfigLoader.STARTUP_RECHECK_TIME);
+				} else {
+					scheduleWatch(0);
 				}
+				break;
+				
+			case 204:
+			case 304:
+				// Timed out with no change - just go around again
+				scheduleWatch(0);
+				break;
+				
+			case 404:
+			case 405:
+			case 501:
+				log.info("Configuration server does not support long-polling, " +
+						"falling back to polling");
+				watching= false;
+				break;
+				
+			default:
+				log.warn("Long-poll request returned error code " + responseCode);
+				scheduleWatch(HttpConfigLoader.STARTUP_RECHECK_TIME);
 			}
-		} catch (IOException|ApiStatusException e) {
-			log.error("IO/status exception reading configuration", e);
-		} catch (SchemaException e) {
-			log.error("Invalid response from configuration endpoint", e);
-			reportFailure("invalid-json", "Configuration is not well-formed file", e);
-		} catch (ApiResponseFormatException e) {
-			log.error("Invalid response from configuration endpoint", e);
-			reportFailure("invalid-json", "Configuration data is not a known MIME type", e);
 		}
 	}
 	
 	@Override
-	public synchronized boolean needsReload() {
-		check();
-		return needsLoad;
+	public void startWatching(@NonNull SourceChangeListener listener) {
+		if (longPollSeconds > 0) {
+			synchronized (watchLock) {
+				if (!watching) {
+					watching= true;
+					watchListener= listener;
+					
+					scheduleWatch(0);
+				}
+			}
+		}
 	}
-
+	
 	@Override
-	public synchronized @NonNull Composite reload() throws ConfigException {
-		Composite rval= configuration;
-		while (rval == null) {
-			check();
-			rval= configuration;
+	public void stopWatching() {
+		synchronized (watchLock) {
+			watching= false;
+			watchListener= null;
+			watchSequence++;
 			
-			if (rval == null) {
-				log.warn("Waiting to retry initial configuration load");
-				try {
-					Thread.sleep(STARTUP_RECHECK_TIME);
-				} catch (InterruptedException e) {
-				}
+			if (watchFuture != null) {
+				watchFuture.cancel(true);
+				watchFuture= null;
 			}
 		}
+	}
+	
+	@Override
+	public boolean needsReload() {
+		return loader.needsReload();
+	}
+	
+	@Override
+	public boolean needsRevalidation() {
+		return loader.needsRevalidation();
+	}
+	
+	@Override
+	public boolean isFetchFailing() {
+		return loader.isFetchFailing();
+	}
+	
+	@Override
+	public int getPollHintSeconds() {
+		return loader.getPollHintSeconds();
+	}
 
-		needsLoad= false;
-		return rval;
+	@Override
+	public @NonNull Composite reload() throws ConfigException, IOException {
+		return loader.reload();
 	}
 
 	@Override
 	public void reportSuccess() {
-		if (needsReport) {
-			URL url= confirmUrl;
-			if (url != null) {
-				JsonObject data= new JsonObject();
-				try {
-					uploadResponse(url, data);
-					needsReport= false;
-				} catch (IOException |
-						ApiStatusException |
-						ApiResponseFormatException |
-						SchemaException e)
-				{
-					log.error("Unable to report configuration confirmation", e);
-				}
-			}
+		String hash= loader.getFetchedHash();
+		if (hash != null) {
+			reportQueue.submit("confirm:" + hash, () -> {
+				uploadResponse(confirmUri, new JsonObject());
+			});
 		}
 	}
 
@@ -474,24 +381,15 @@ public class SmbtrackConfigSource implements ConfigSource {
 			@NonNull String message,
 			@Nullable Throwable cause)
 	{
-		if (needsReport) {
-			URL url= rejectUrl;
-			if (url != null) {
-				JsonObject data= new JsonObject();
-				data.addProperty("code", code);
-				data.addProperty("message", message);
-	
-				try {
-					uploadResponse(url, data);
-					needsReport= false;
-				} catch (IOException |
-						SchemaException |
-						ApiResponseFormatException |
-						ApiStatusException e)
-				{
-					log.error("Unable to report configuration rejections", e);
-				}
-			}
+		String hash= loader.getFetchedHash();
+		if (hash != null) {
+			JsonObject data= new JsonObject();
+			data.addProperty("code", code);
+			data.addProperty("message", message);
+			
+			reportQueue.submit("reject:" + hash, () -> {
+				uploadResponse(rejectUri, data);
+			});
 		}
 	}
 }
@@ -0,0 +1,310 @@
+/****************************************************************************
+ * Copyright 2022 Teaglu, LLC                                               *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *   http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ ****************************************************************************/
+
+package com.teaglu.configure.config.tree;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.teaglu.composite.Composite;
+import com.teaglu.composite.exception.SchemaException;
+import com.teaglu.composite.json.JsonComposite;
+import com.teaglu.composite.json.JsonCompositeImpl;
+import com.teaglu.composite.yaml.YamlComposite;
+
+/**
+ * CompositeTree
+ * 
+ * Tree adapter for Composite.  Configurations parsed or rebuilt through this class keep the
+ * JSON tree they were built from alongside them, so hashing, diffing and secret resolution
+ * can walk JSON and YAML configurations alike without serializing them again.  For JSON the
+ * tree is the same object the Composite wraps, so nothing is copied.
+ * 
+ * Configurations built elsewhere fall back to the implementation's own JSON serialization.
+ * 
+ */
+public class CompositeTree {
+	private CompositeTree() {}
+	
+	private static class Attachment {
+		private final @NonNull TreeFormat format;
+		private final @NonNull JsonObject tree;
+		
+		private Attachment(@NonNull TreeFormat format, @NonNull JsonObject tree) {
+			this.format= format;
+			this.tree= tree;
+		}
+	}
+	
+	// Keys compare by identity and hold the configuration weakly, so a configuration that's
+	// been replaced doesn't stay reachable through this map.
+	private static class IdentityKey extends WeakReference<Composite> {
+		private final int hash;
+		
+		private IdentityKey(
+				@NonNull Composite config,
+				@Nullable ReferenceQueue<Composite> queue)
+		{
+			super(config, queue);
+			hash= System.identityHashCode(config);
+		}
+		
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+		
+		@Override
+		public boolean equals(Object other) {
+			if (other == this) {
+				return true;
+			} else if (other instanceof IdentityKey key) {
+				Composite referent= get();
+				return (referent != null) && (referent == key.get());
+			} else {
+				return false;
+			}
+		}
+	}
+	
+	private static final @NonNull Map<IdentityKey, Attachment> attachments=
+			new ConcurrentHashMap<>();
+	
+	private static final @NonNull ReferenceQueue<Composite> released= new ReferenceQueue<>();
+	
+	/**
+	 * Parse
+	 * 
+	 * Parse configuration text, keeping its tree.  Errors are reported by the Composite
+	 * library's own parser, so callers see the same exceptions as before.
+	 * 
+	 * @param text						Configuration text
+	 * @param format					Format of the text
+	 * 
+	 * @return							Configuration
+	 * 
+	 * @throws SchemaException			The text can't be parsed as a configuration
+	 */
+	public static @NonNull Composite Parse(
+			@NonNull String text,
+			@NonNull TreeFormat format) throws SchemaException
+	{
+		switch (format) {
+		case JSON: {
+			JsonElement tree= null;
+			try {
+				tree= JsonParser.parseString(text);
+			} catch (JsonParseException e) {
+				// Fall through so the library reports the error
+			}
+			
+			if ((tree == null) || !tree.isJsonObject()) {
+				@SuppressWarnings("null") @NonNull Composite rval= JsonComposite.Parse(text);
+				return rval;
+			}
+			
+			@SuppressWarnings("null") @NonNull JsonObject object= tree.getAsJsonObject();
+			return attach(new JsonCompositeImpl(object), format, object);
+		}
+			
+		case YAML: {
+			@SuppressWarnings("null") @NonNull Composite rval= YamlComposite.Parse(text);
+			
+			JsonElement tree= YamlTree.Load(text);
+			if ((tree != null) && tree.isJsonObject()) {
+				@SuppressWarnings("null") @NonNull JsonObject object= tree.getAsJsonObject();
+				attach(rval, format, object);
+			}
+			return rval;
+		}
+			
+		default:
+			throw new IllegalArgumentException("Unhandled format " + format);
+		}
+	}
+	
+	/**
+	 * Parse
+	 * 
+	 * Parse configuration text from a reader, keeping its tree.
+	 * 
+	 * @param reader					Reader
+	 * @param format					Format of the text
+	 * 
+	 * @return							Configuration
+	 * 
+	 * @throws SchemaException			The text can't be parsed as a configuration
+	 * @throws IOException				Error reading
+	 */
+	public static @NonNull Composite Parse(
+			@NonNull Reader reader,
+			@NonNull TreeFormat format) throws SchemaException, IOException
+	{
+		StringWriter writer= new StringWriter();
+		reader.transferTo(writer);
+		
+		@SuppressWarnings("null") @NonNull String text= writer.toString();
+		return Parse(text, format);
+	}
+	
+	/**
+	 * Create
+	 * 
+	 * Build a configuration from a tree.  The tree is kept as-is and must not be modified
+	 * afterwards.
+	 * 
+	 * @param tree						Tree
+	 * @param format					Format of the configuration to build
+	 * 
+	 * @return							Configuration
+	 * 
+	 * @throws SchemaException			The tree can't be represented in the format
+	 */
+	public static @NonNull Composite Create(
+			@NonNull JsonObject tree,
+			@NonNull TreeFormat format) throws SchemaException
+	{
+		switch (format) {
+		case JSON:
+			return FromJson(tree);
+			
+		case YAML: {
+			@SuppressWarnings("null") @NonNull Composite rval=
+					YamlComposite.Parse(YamlTree.Dump(tree));
+			
+			return attach(rval, format, tree);
+		}
+			
+		default:
+			throw new IllegalArgumentException("Unhandled format " + format);
+		}
+	}
+	
+	/**
+	 * FromJson
+	 * 
+	 * Build a JSON configuration from a tree.  The tree is kept as-is and must not be
+	 * modified afterwards.
+	 * 
+	 * @param tree						Tree
+	 * 
+	 * @return							Configuration
+	 */
+	public static @NonNull Composite FromJson(@NonNull JsonObject tree) {
+		return attach(new JsonCompositeImpl(tree), TreeFormat.JSON, tree);
+	}
+	
+	/**
+	 * Rebuild
+	 * 
+	 * Build a configuration from a tree derived from another configuration, in the same
+	 * format as the original.
+	 * 
+	 * @param original					Configuration the tree was derived from
+	 * @param tree						New tree
+	 * 
+	 * @return							Configuration
+	 * 
+	 * @throws SchemaException			The tree can't be represented in the format
+	 */
+	public static @NonNull Composite Rebuild(
+			@NonNull Composite original,
+			@NonNull JsonObject tree) throws SchemaException
+	{
+		return Create(tree, GetFormat(original));
+	}
+	
+	/**
+	 * GetFormat
+	 * 
+	 * Return the format a configuration was built from.  Configurations that weren't built
+	 * here are treated as JSON, since that's the only tree they can expose.
+	 * 
+	 * @param config					Configuration
+	 * 
+	 * @return							Format
+	 */
+	public static @NonNull TreeFormat GetFormat(@NonNull Composite config) {
+		Attachment attachment= lookup(config);
+		return (attachment != null) ? attachment.format : TreeFormat.JSON;
+	}
+	
+	/**
+	 * Convert
+	 * 
+	 * Return the configuration as a JSON tree.  Configurations built through this class
+	 * return the tree they were built from; anything else falls back to the implementation's
+	 * own serialize(), and implementations that don't support JSON serialization get null
+	 * back so callers can treat the configuration as opaque.
+	 * 
+	 * The returned tree is shared and must not be modified.
+	 * 
+	 * @param config					Configuration
+	 * 
+	 * @return							Tree, or null if the implementation doesn't expose one
+	 */
+	public static @Nullable JsonElement Convert(@NonNull Composite config) {
+		Attachment attachment= lookup(config);
+		if (attachment != null) {
+			return attachment.tree;
+		}
+		
+		try {
+			return config.serialize(JsonObject.class);
+		} catch (Exception e) {
+			// Not every implementation supports JSON serialization
+			return null;
+		}
+	}
+	
+	private static @NonNull Composite attach(
+			@NonNull Composite config,
+			@NonNull TreeFormat format,
+			@NonNull JsonObject tree)
+	{
+		purge();
+		attachments.put(new IdentityKey(config, released), new Attachment(format, tree));
+		
+		return config;
+	}
+	
+	private static @Nullable Attachment lookup(@NonNull Composite config) {
+		purge();
+		return attachments.get(new IdentityKey(config, null));
+	}
+	
+	private static void purge() {
+		for (;;) {
+			Object key= released.poll();
+			if (key == null) {
+				break;
+			}
+			attachments.remove(key);
+		}
+	}
+}
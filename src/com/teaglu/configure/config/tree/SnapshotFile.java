@@ -0,0 +1,283 @@
+/****************************************************************************
+ * Copyright 2022 Teaglu, LLC                                               *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *   http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ ****************************************************************************/
+
+package com.teaglu.configure.config.tree;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * SnapshotFile
+ * 
+ * The container shared by the on-disk configuration snapshots: a fixed header with a magic
+ * number, format version, flags, CRC32 of the payload and payload length, followed by the
+ * payload itself.  What goes in the payload is up to the caller.
+ * 
+ * Reads map the file rather than copying it.  Writes go to a temporary file that is forced
+ * to disk and then renamed over the target, so a crash part way through leaves the previous
+ * file intact.  The directory is forced after the rename so the new entry is durable too.
+ *
+ */
+public class SnapshotFile {
+	// Magic, version, flags, CRC, payload length
+	private static final int HEADER_SIZE= 4 + 2 + 2 + 4 + 4;
+	
+	private static final String TEMP_EXTENSION= ".tmp";
+	
+	private final int magic;
+	private final short version;
+	
+	private SnapshotFile(int magic, short version) {
+		this.magic= magic;
+		this.version= version;
+	}
+	
+	/**
+	 * Create
+	 * 
+	 * Create a reader / writer for one kind of snapshot
+	 * 
+	 * @param magic						Magic number identifying the kind of snapshot
+	 * @param version					Payload format version
+	 * 
+	 * @return							New reader / writer
+	 */
+	public static @NonNull SnapshotFile Create(int magic, short version) {
+		return new SnapshotFile(magic, version);
+	}
+	
+	/**
+	 * Contents
+	 * 
+	 * A snapshot that passed every check
+	 */
+	public static class Contents {
+		private final short flags;
+		private final @NonNull ByteBuffer payload;
+		
+		private Contents(short flags, @NonNull ByteBuffer payload) {
+			this.flags= flags;
+			this.payload= payload;
+		}
+		
+		public short getFlags() {
+			return flags;
+		}
+		
+		/**
+		 * getPayload
+		 * 
+		 * The payload, positioned at its start and limited to its length
+		 * 
+		 * @return							Payload
+		 */
+		public @NonNull ByteBuffer getPayload() {
+			return payload;
+		}
+	}
+	
+	/**
+	 * read
+	 * 
+	 * Read and verify a snapshot
+	 * 
+	 * @param path						File to read
+	 * 
+	 * @return							Contents
+	 * 
+	 * @throws java.nio.file.NoSuchFileException	File doesn't exist
+	 * @throws IOException				Unreadable, or fails any check - the message says which
+	 */
+	public @NonNull Contents read(@NonNull Path path) throws IOException {
+		try (FileChannel channel= FileChannel.open(path, StandardOpenOption.READ)) {
+			long size= channel.size();
+			if (size < HEADER_SIZE) {
+				throw new IOException("Snapshot " + path + " is truncated");
+			}
+			
+			MappedByteBuffer buffer= channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			
+			int fileMagic= buffer.getInt();
+			short fileVersion= buffer.getShort();
+			short flags= buffer.getShort();
+			int crc= buffer.getInt();
+			int payloadLength= buffer.getInt();
+			
+			if (fileMagic != magic) {
+				throw new IOException("Snapshot " + path + " is not the expected kind of file");
+			}
+			if (fileVersion != version) {
+				throw new IOException("Snapshot " + path + " is format version " +
+						fileVersion + ", which this version does not read");
+			}
+			if ((payloadLength < 0) || (payloadLength != size - HEADER_SIZE)) {
+				throw new IOException("Snapshot " + path + " is truncated");
+			}
+			
+			CRC32 checksum= new CRC32();
+			checksum.update(buffer.duplicate());
+			if ((int)checksum.getValue() != crc) {
+				throw new IOException("Snapshot " + path + " failed checksum verification");
+			}
+			
+			@SuppressWarnings("null")
+			@NonNull ByteBuffer payload= buffer.slice();
+			
+			return new Contents(flags, payload);
+		}
+	}
+	
+	/**
+	 * write
+	 * 
+	 * Replace a snapshot
+	 * 
+	 * @param path						File to replace
+	 * @param flags						Flags for the caller's own use
+	 * @param payload					Payload
+	 * 
+	 * @throws IOException				Error writing
+	 */
+	public void write(
+			@NonNull Path path,
+			short flags,
+			byte @NonNull[] payload) throws IOException
+	{
+		CRC32 checksum= new CRC32();
+		checksum.update(payload);
+		
+		ByteBuffer header= ByteBuffer.allocate(HEADER_SIZE);
+		header.putInt(magic);
+		header.putShort(version);
+		header.putShort(flags);
+		header.putInt((int)checksum.getValue());
+		header.putInt(payload.length);
+		header.flip();
+		
+		ByteBuffer body= ByteBuffer.wrap(payload);
+		
+		Path tempFile= path.resolveSibling(path.getFileName() + TEMP_EXTENSION);
+		
+		try {
+			try (FileChannel channel= FileChannel.open(tempFile,
+					StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING,
+					StandardOpenOption.WRITE))
+			{
+				while (header.hasRemaining() || body.hasRemaining()) {
+					channel.write(new ByteBuffer[] { header, body });
+				}
+				
+				// Make sure the data is down before the rename makes it visible
+				channel.force(true);
+			}
+			
+			try {
+				Files.move(tempFile, path,
+						StandardCopyOption.ATOMIC_MOVE,
+						StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				// Same directory, so this should only happen on odd filesystems.  A plain
+				// replace can still leave a partial file, but the checksum will catch it.
+				Files.move(tempFile, path, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(tempFile);
+		}
+		
+		Path directory= path.toAbsolutePath().getParent();
+		if (directory != null) {
+			syncDirectory(directory);
+		}
+	}
+	
+	// The rename only lives in the directory until the directory itself is forced, so a crash
+	// right after it could otherwise bring back the old file or no file at all.
+	private static void syncDirectory(@NonNull Path directory) throws IOException {
+		try (FileChannel channel= FileChannel.open(directory, StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (AccessDeniedException e) {
+			// Some platforms - Windows in particular - won't open a directory this way, and
+			// don't need it since the rename is already durable there.
+		}
+	}
+	
+	/**
+	 * WriteString
+	 * 
+	 * Write a string to a payload as a length followed by UTF-8, with a negative length
+	 * meaning null
+	 * 
+	 * @param output					Payload being built
+	 * @param value						String
+	 * 
+	 * @throws IOException				Error writing
+	 */
+	public static void WriteString(
+			@NonNull DataOutputStream output,
+			@Nullable String value) throws IOException
+	{
+		if (value == null) {
+			output.writeInt(-1);
+		} else {
+			byte[] bytes= value.getBytes(StandardCharsets.UTF_8);
+			output.writeInt(bytes.length);
+			output.write(bytes);
+		}
+	}
+	
+	/**
+	 * ReadString
+	 * 
+	 * Read a string written by WriteString
+	 * 
+	 * @param buffer					Payload
+	 * 
+	 * @return							String
+	 * 
+	 * @throws IOException				Length runs past the end of the payload
+	 */
+	public static @Nullable String ReadString(
+			@NonNull ByteBuffer buffer) throws IOException
+	{
+		int length= buffer.getInt();
+		if (length < 0) {
+			return null;
+		}
+		if (length > buffer.remaining()) {
+			throw new IOException("String length past end of snapshot");
+		}
+		
+		byte[] bytes= new byte[length];
+		buffer.get(bytes);
+		
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,326 @@
+/****************************************************************************
+ * Copyright 2022 Teaglu, LLC                                               *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *   http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ ****************************************************************************/
+
+package com.teaglu.configure.config.tree;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jdt.annotation.NonNull;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+
+/**
+ * TreeEncoding
+ * 
+ * A compact binary encoding of a JSON tree, used for configuration snapshots.  Decoding is a
+ * single pass over a buffer with no text parsing, apart from the rare number that isn't a
+ * plain integer.
+ * 
+ * Each value is a one-byte tag followed by its data.  Lengths and counts are unsigned varints
+ * and integers are zigzag varints.  Object keys are written once and afterwards referred to
+ * by index, since configurations tend to repeat the same keys many times over.
+ *
+ */
+public class TreeEncoding {
+	private TreeEncoding() {}
+	
+	private static final int TAG_NULL= 0;
+	private static final int TAG_FALSE= 1;
+	private static final int TAG_TRUE= 2;
+	private static final int TAG_INTEGER= 3;
+	private static final int TAG_NUMBER= 4;
+	private static final int TAG_STRING= 5;
+	private static final int TAG_ARRAY= 6;
+	private static final int TAG_OBJECT= 7;
+	
+	// Guards against a corrupt count asking for an absurd allocation
+	private static final int MAX_COUNT= 64 * 1024 * 1024;
+	
+	/**
+	 * Encode
+	 * 
+	 * Encode a tree
+	 * 
+	 * @param tree						Tree
+	 * 
+	 * @return							Encoded bytes
+	 */
+	public static byte @NonNull[] Encode(@NonNull JsonElement tree) {
+		ByteArrayOutputStream output= new ByteArrayOutputStream();
+		new Encoder(output).write(tree);
+		
+		@SuppressWarnings("null")
+		byte @NonNull[] rval= output.toByteArray();
+		
+		return rval;
+	}
+	
+	/**
+	 * Decode
+	 * 
+	 * Decode a tree starting at the buffer's position, leaving the position just past it
+	 * 
+	 * @param buffer					Buffer
+	 * 
+	 * @return							Tree
+	 * 
+	 * @throws IOException				Data is not a valid encoding
+	 */
+	public static @NonNull JsonElement Decode(@NonNull ByteBuffer buffer) throws IOException {
+		try {
+			return new Decoder(buffer).read();
+		} catch (BufferUnderflowException | IllegalArgumentException | JsonParseException e) {
+			throw new IOException("Encoded configuration tree is corrupt", e);
+		}
+	}
+	
+	private static class Encoder {
+		private final @NonNull ByteArrayOutputStream output;
+		private final Map<String, Integer> keyIndex= new HashMap<>();
+		
+		private Encoder(@NonNull ByteArrayOutputStream output) {
+			this.output= output;
+		}
+		
+		private void writeVarint(long value) {
+			while ((value & ~0x7FL) != 0) {
+				output.write((int)((value & 0x7F) | 0x80));
+				value>>>= 7;
+			}
+			output.write((int)value);
+		}
+		
+		private void writeString(@NonNull String value) {
+			byte[] bytes= value.getBytes(StandardCharsets.UTF_8);
+			writeVarint(bytes.length);
+			output.write(bytes, 0, bytes.length);
+		}
+		
+		private void writeKey(@NonNull String key) {
+			// Zero introduces a new key, anything else is one more than a known key's index
+			Integer index= keyIndex.get(key);
+			if (index == null) {
+				keyIndex.put(key, keyIndex.size());
+				writeVarint(0);
+				writeString(key);
+			} else {
+				writeVarint(index + 1);
+			}
+		}
+		
+		private void write(@NonNull JsonElement element) {
+			if (element.isJsonObject()) {
+				JsonObject object= element.getAsJsonObject();
+				output.write(TAG_OBJECT);
+				writeVarint(object.size());
+				for (Map.Entry<String, JsonElement> entry : object.entrySet()) {
+					@SuppressWarnings("null")
+					@NonNull String key= entry.getKey();
+					@SuppressWarnings("null")
+					@NonNull JsonElement value= entry.getValue();
+					
+					writeKey(key);
+					write(value);
+				}
+			} else if (element.isJsonArray()) {
+				JsonArray array= element.getAsJsonArray();
+				output.write(TAG_ARRAY);
+				writeVarint(array.size());
+				for (JsonElement value : array) {
+					@SuppressWarnings("null")
+					@NonNull JsonElement nonNullValue= value;
+					
+					write(nonNullValue);
+				}
+			} else if (element.isJsonPrimitive()) {
+				JsonPrimitive primitive= element.getAsJsonPrimitive();
+				if (primitive.isBoolean()) {
+					output.write(primitive.getAsBoolean() ? TAG_TRUE : TAG_FALSE);
+				} else if (primitive.isNumber()) {
+					// Keep the number exactly as written.  Plain integers are by far the
+					// most common, so they get a binary form - anything else keeps its text.
+					@SuppressWarnings("null")
+					@NonNull String text= primitive.getAsString();
+					
+					Long integer= parseCanonicalLong(text);
+					if (integer != null) {
+						output.write(TAG_INTEGER);
+						writeVarint((integer << 1) ^ (integer >> 63));
+					} else {
+						output.write(TAG_NUMBER);
+						writeString(text);
+					}
+				} else {
+					@SuppressWarnings("null")
+					@NonNull String text= primitive.getAsString();
+					
+					output.write(TAG_STRING);
+					writeString(text);
+				}
+			} else {
+				output.write(TAG_NULL);
+			}
+		}
+		
+		private static Long parseCanonicalLong(@NonNull String text) {
+			try {
+				long value= Long.parseLong(text);
+				
+				// Only if it prints back the same, so "+1" and "007" keep their text
+				return Long.toString(value).equals(text) ? value : null;
+			} catch (NumberFormatException e) {
+				return null;
+			}
+		}
+	}
+	
+	private static class Decoder {
+		private final @NonNull ByteBuffer buffer;
+		private final List<String> keys= new ArrayList<>();
+		
+		private Decoder(@NonNull ByteBuffer buffer) {
+			this.buffer= buffer;
+		}
+		
+		private long readVarint() throws IOException {
+			long value= 0;
+			for (int shift= 0; shift < 64; shift+= 7) {
+				byte b= buffer.get();
+				value|= (long)(b & 0x7F) << shift;
+				if ((b & 0x80) == 0) {
+					return value;
+				}
+			}
+			
+			throw new IOException("Malformed varint in encoded configuration tree");
+		}
+		
+		private int readCount() throws IOException {
+			long count= readVarint();
+			if ((count < 0) || (count > MAX_COUNT) || (count > buffer.remaining())) {
+				throw new IOException("Invalid length in encoded configuration tree");
+			}
+			
+			return (int)count;
+		}
+		
+		private @NonNull String readString() throws IOException {
+			int length= readCount();
+			
+			String rval;
+			if (buffer.hasArray()) {
+				int offset= buffer.arrayOffset() + buffer.position();
+				rval= new String(buffer.array(), offset, length, StandardCharsets.UTF_8);
+				buffer.position(buffer.position() + length);
+			} else {
+				byte[] bytes= new byte[length];
+				buffer.get(bytes);
+				rval= new String(bytes, StandardCharsets.UTF_8);
+			}
+			
+			return rval;
+		}
+		
+		private @NonNull String readKey() throws IOException {
+			long reference= readVarint();
+			if (reference == 0) {
+				String key= readString();
+				keys.add(key);
+				
+				return key;
+			}
+			
+			if ((reference < 0) || (reference > keys.size())) {
+				throw new IOException("Invalid key reference in encoded configuration tree");
+			}
+			
+			@SuppressWarnings("null")
+			@NonNull String rval= keys.get((int)(reference - 1));
+			
+			return rval;
+		}
+		
+		private @NonNull JsonElement read() throws IOException {
+			int tag= buffer.get();
+			switch (tag) {
+			case TAG_NULL:
+				@SuppressWarnings("null")
+				@NonNull JsonElement nullElement= JsonNull.INSTANCE;
+				
+				return nullElement;
+				
+			case TAG_FALSE:
+				return new JsonPrimitive(false);
+				
+			case TAG_TRUE:
+				return new JsonPrimitive(true);
+				
+			case TAG_INTEGER:
+				long zigzag= readVarint();
+				return new JsonPrimitive((zigzag >>> 1) ^ -(zigzag & 1));
+				
+			case TAG_NUMBER:
+				// Let Gson build its own lazily parsed number so the text is kept as-is
+				@SuppressWarnings("null")
+				@NonNull JsonElement number= JsonParser.parseString(readString());
+				
+				if (!number.isJsonPrimitive() || !number.getAsJsonPrimitive().isNumber()) {
+					throw new IOException("Invalid number in encoded configuration tree");
+				}
+				return number;
+				
+			case TAG_STRING:
+				return new JsonPrimitive(readString());
+				
+			case TAG_ARRAY: {
+				int count= readCount();
+				JsonArray array= new JsonArray(count);
+				for (int i= 0; i < count; i++) {
+					array.add(read());
+				}
+				return array;
+			}
+				
+			case TAG_OBJECT: {
+				int count= readCount();
+				JsonObject object= new JsonObject();
+				for (int i= 0; i < count; i++) {
+					String key= readKey();
+					object.add(key, read());
+				}
+				return object;
+			}
+				
+			default:
+				throw new IOException("Unknown tag " + tag + " in encoded configuration tree");
+			}
+		}
+	}
+}
@@ -0,0 +1,156 @@
+/****************************************************************************
+ * Copyright 2022 Teaglu, LLC                                               *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *   http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ ****************************************************************************/
+
+package com.teaglu.configure.config.tree;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.LoaderOptions;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.constructor.SafeConstructor;
+import org.yaml.snakeyaml.error.YAMLException;
+import org.yaml.snakeyaml.representer.Representer;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+/**
+ * YamlTree
+ * 
+ * Conversion between YAML text and the JSON tree model used for hashing, diffing and
+ * rewriting.  Only the safe constructor is used, so documents can't instantiate classes.
+ * 
+ */
+final class YamlTree {
+	private YamlTree() {}
+	
+	/**
+	 * Load
+	 * 
+	 * Load a YAML document as a tree.
+	 * 
+	 * @param text						YAML text
+	 * 
+	 * @return							Tree, or null if the document isn't valid YAML
+	 */
+	static @Nullable JsonElement Load(@NonNull String text) {
+		try {
+			return toTree(createYaml().load(text));
+		} catch (YAMLException e) {
+			return null;
+		}
+	}
+	
+	/**
+	 * Dump
+	 * 
+	 * Write a tree as block-style YAML.
+	 * 
+	 * @param tree						Tree
+	 * 
+	 * @return							YAML text
+	 */
+	static @NonNull String Dump(@NonNull JsonElement tree) {
+		@SuppressWarnings("null") @NonNull String rval= createYaml().dump(fromTree(tree));
+		return rval;
+	}
+	
+	private static @NonNull Yaml createYaml() {
+		DumperOptions dumperOptions= new DumperOptions();
+		dumperOptions.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
+		
+		return new Yaml(
+				new SafeConstructor(new LoaderOptions()),
+				new Representer(dumperOptions),
+				dumperOptions);
+	}
+	
+	private static @NonNull JsonElement toTree(@Nullable Object value) {
+		if (value == null) {
+			return JsonNull.INSTANCE;
+		} else if (value instanceof Map<?,?> map) {
+			JsonObject rval= new JsonObject();
+			for (Map.Entry<?,?> entry : map.entrySet()) {
+				rval.add(String.valueOf(entry.getKey()), toTree(entry.getValue()));
+			}
+			return rval;
+		} else if (value instanceof Collection<?> collection) {
+			JsonArray rval= new JsonArray();
+			for (Object item : collection) {
+				rval.add(toTree(item));
+			}
+			return rval;
+		} else if (value instanceof Number number) {
+			return new JsonPrimitive(number);
+		} else if (value instanceof Boolean bool) {
+			return new JsonPrimitive(bool);
+		} else if (value instanceof Date date) {
+			return new JsonPrimitive(date.toInstant().toString());
+		} else if (value instanceof byte[] bytes) {
+			return new JsonPrimitive(Base64.getEncoder().encodeToString(bytes));
+		} else {
+			return new JsonPrimitive(value.toString());
+		}
+	}
+	
+	private static @Nullable Object fromTree(@NonNull JsonElement tree) {
+		if (tree.isJsonObject()) {
+			Map<String, Object> rval= new LinkedHashMap<>();
+			for (Map.Entry<String, JsonElement> entry : tree.getAsJsonObject().entrySet()) {
+				@SuppressWarnings("null") @NonNull JsonElement value= entry.getValue();
+				rval.put(entry.getKey(), fromTree(value));
+			}
+			return rval;
+		} else if (tree.isJsonArray()) {
+			List<Object> rval= new ArrayList<>();
+			for (JsonElement item : tree.getAsJsonArray()) {
+				@SuppressWarnings("null") @NonNull JsonElement value= item;
+				rval.add(fromTree(value));
+			}
+			return rval;
+		} else if (tree.isJsonPrimitive()) {
+			JsonPrimitive primitive= tree.getAsJsonPrimitive();
+			if (primitive.isBoolean()) {
+				return primitive.getAsBoolean();
+			} else if (primitive.isNumber()) {
+				// Keep integers as integers so they don't come back with a trailing .0
+				Number number= primitive.getAsNumber();
+				String text= number.toString();
+				if (text.indexOf('.') < 0 && text.indexOf('e') < 0 && text.indexOf('E') < 0) {
+					return new BigInteger(text);
+				}
+				return primitive.getAsDouble();
+			} else {
+				return primitive.getAsString();
+			}
+		} else {
+			return null;
+		}
+	}
+}
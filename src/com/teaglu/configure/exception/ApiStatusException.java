@@ -18,6 +18,9 @@ package com.teaglu.configure.exception;
 
 public class ApiStatusException extends Exception {
 	private static final long serialVersionUID = 1L;
+	
+	private int statusCode;
+	private int retryAfterSeconds;
 
 	public ApiStatusException(String message) {
 		super(message);
@@ -26,4 +29,30 @@ public class ApiStatusException extends Exception {
 	public ApiStatusException(String message, Throwable cause) {
 		super(message, cause);
 	}
+	
+	public ApiStatusException(String message, int statusCode, int retryAfterSeconds) {
+		super(message);
+		
+		this.statusCode= statusCode;
+		this.retryAfterSeconds= retryAfterSeconds;
+	}
+	
+	/**
+	 * getStatusCode
+	 * 
+	 * @return							HTTP status code, or zero if not known
+	 */
+	public int getStatusCode() {
+		return statusCode;
+	}
+	
+	/**
+	 * getRetryAfterSeconds
+	 * 
+	 * @return							Seconds the server asked us to wait, or zero if it
+	 * 									didn't say
+	 */
+	public int getRetryAfterSeconds() {
+		return retryAfterSeconds;
+	}
 }
@@ -0,0 +1,190 @@
+/****************************************************************************
+ * Copyright 2022 Teaglu, LLC                                               *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *   http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ ****************************************************************************/
+
+package com.teaglu.configure.secret;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.teaglu.composite.Composite;
+import com.teaglu.configure.config.ConfigHasher;
+import com.teaglu.configure.config.hasher.Sha256ConfigHasher;
+import com.teaglu.configure.exception.ConfigException;
+
+/**
+ * ResolvedConfigView
+ * 
+ * Keeps the secret-resolved form of a configuration, so that secrets are resolved once per
+ * version of the configuration and of the secrets instead of every time a value is read.
+ * Every caller gets the same resolved instance until either one changes.
+ * 
+ * Asking again with the same configuration instance and unchanged secrets costs a couple of
+ * field reads.  A different instance is hashed first, so re-applying an identical
+ * configuration still reuses the earlier resolution.
+ *
+ */
+public class ResolvedConfigView {
+	private final @NonNull SecretTreeResolver resolver;
+	private final @NonNull SecretProvider secretProvider;
+	private final @NonNull ConfigHasher configHasher;
+	
+	/**
+	 * Entry
+	 * 
+	 * One resolution, never modified once published
+	 */
+	private static class Entry {
+		private final @NonNull Composite config;
+		private final @Nullable String digest;
+		private final long generation;
+		private final @NonNull Composite resolved;
+		
+		private Entry(
+				@NonNull Composite config,
+				@Nullable String digest,
+				long generation,
+				@NonNull Composite resolved)
+		{
+			this.config= config;
+			this.digest= digest;
+			this.generation= generation;
+			this.resolved= resolved;
+		}
+	}
+	
+	private volatile @Nullable Entry current;
+	
+	private ResolvedConfigView(
+			@NonNull SecretTreeResolver resolver,
+			@NonNull SecretProvider secretProvider,
+			@NonNull ConfigHasher configHasher)
+	{
+		this.resolver= resolver;
+		this.secretProvider= secretProvider;
+		this.configHasher= configHasher;
+	}
+	
+	/**
+	 * Create
+	 * 
+	 * Create a view
+	 * 
+	 * @param resolver					Resolver used to build the resolved configuration
+	 * @param secretProvider			Provider the resolver reads from, to detect rotation
+	 * 
+	 * @return							New view
+	 */
+	public static @NonNull ResolvedConfigView Create(
+			@NonNull SecretTreeResolver resolver,
+			@NonNull SecretProvider secretProvider)
+	{
+		return new ResolvedConfigView(resolver, secretProvider, Sha256ConfigHasher.Create());
+	}
+	
+	/**
+	 * Create
+	 * 
+	 * Create a view using a specific hasher to recognize repeated configurations
+	 * 
+	 * @param resolver					Resolver used to build the resolved configuration
+	 * @param secretProvider			Provider the resolver reads from, to detect rotation
+	 * @param configHasher				Hasher
+	 * 
+	 * @return							New view
+	 */
+	public static @NonNull ResolvedConfigView Create(
+			@NonNull SecretTreeResolver resolver,
+			@NonNull SecretProvider secretProvider,
+			@NonNull ConfigHasher configHasher)
+	{
+		return new ResolvedConfigView(resolver, secretProvider, configHasher);
+	}
+	
+	/**
+	 * resolve
+	 * 
+	 * Return the resolved form of a configuration, resolving it only if the configuration or
+	 * the secrets have changed since the last call
+	 * 
+	 * @param config					Configuration
+	 * 
+	 * @return							Resolved configuration
+	 * 
+	 * @throws ConfigException			Unable to resolve a secret
+	 */
+	public @NonNull Composite resolve(
+			@NonNull Composite config) throws ConfigException
+	{
+		// Read before resolving, so a rotation part way through leaves this entry stale
+		// rather than marking half-old values as current.
+		long generation= secretProvider.getGeneration();
+		
+		Entry entry= current;
+		if ((entry != null) && (entry.config == config) && (entry.generation == generation)) {
+			return entry.resolved;
+		}
+		
+		synchronized (this) {
+			entry= current;
+			if ((entry != null) && (entry.config == config) && (entry.generation == generation)) {
+				return entry.resolved;
+			}
+			
+			// Hashers aren't thread-safe, which is one reason this is under the lock
+			String digest= configHasher.hash(config);
+			
+			Composite resolved;
+			if ((entry != null) && (digest != null) && digest.equals(entry.digest) &&
+					(entry.generation == generation))
+			{
+				resolved= entry.resolved;
+			} else {
+				resolved= resolver.resolve(config);
+				
+				// A provider that loads lazily publishes its first values during the resolve.
+				// Nothing was published before a generation of zero, so everything the resolve
+				// read came from that load, and the entry is current as of it rather than stale
+				// the moment it's stored.
+				if (generation == 0) {
+					generation= secretProvider.getGeneration();
+				}
+			}
+			
+			current= new Entry(config, digest, generation, resolved);
+			
+			return resolved;
+		}
+	}
+	
+	/**
+	 * get
+	 * 
+	 * Return the most recently resolved configuration, re-resolving it first if the secrets
+	 * have changed since
+	 * 
+	 * @return							Resolved configuration, or null if nothing resolved yet
+	 * 
+	 * @throws ConfigException			Unable to resolve a secret
+	 */
+	public @Nullable Composite get() throws ConfigException {
+		Entry entry= current;
+		if (entry == null) {
+			return null;
+		}
+		
+		return resolve(entry.config);
+	}
+}
@@ -16,6 +16,10 @@
 
 package com.teaglu.configure.secret;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
 import org.eclipse.jdt.annotation.NonNull;
 
 import com.teaglu.configure.exception.ConfigException;
@@ -38,4 +42,50 @@ public interface SecretProvider {
 	 */
 	public @NonNull String getSecret(
 			@NonNull String name) throws ConfigException;
+	
+	/**
+	 * getSecrets
+	 * 
+	 * Get the values of several secrets in one call.  Providers that can fetch or snapshot
+	 * values in bulk should override this - the default just asks for each one in turn.
+	 * 
+	 * @param names						Names of the secrets
+	 * @return							Values keyed by name
+	 * 
+	 * @throws ConfigException			Schema error, or any secret not defined
+	 */
+	public default @NonNull Map<@NonNull String, @NonNull String> getSecrets(
+			@NonNull Set<@NonNull String> names) throws ConfigException
+	{
+		Map<@NonNull String, @NonNull String> rval= new HashMap<>();
+		for (@NonNull String name : names) {
+			rval.put(name, getSecret(name));
+		}
+		
+		return rval;
+	}
+	
+	/**
+	 * getGeneration
+	 * 
+	 * A number that changes whenever the provider's values may have changed, so anything
+	 * built from secrets knows when it has to be built again.  Providers whose values never
+	 * change after creation can leave this at zero.  A provider that loads its values on first
+	 * use should stay at zero until then, so callers can tell the first load from a rotation.
+	 * 
+	 * @return							Generation
+	 */
+	public default long getGeneration() {
+		return 0;
+	}
+	
+	/**
+	 * close
+	 * 
+	 * Stop any background work, such as refreshing values.  Lookups may still work afterwards
+	 * but the values won't change any more.  Providers without background work can leave this
+	 * alone.
+	 */
+	public default void close() {
+	}
 }
@@ -16,11 +16,18 @@
 
 package com.teaglu.configure.secret;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.regex.Pattern;
+
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.jdt.annotation.Nullable;
 
 import com.teaglu.configure.exception.ConfigException;
 import com.teaglu.configure.secret.provider.AwsSecretProvider;
+import com.teaglu.configure.secret.provider.ChainedSecretProvider;
 import com.teaglu.configure.secret.provider.PropertyFileSecretProvider;
 import com.teaglu.configure.secret.provider.DockerSecretProvider;
 import com.teaglu.configure.secret.provider.NullSecretProvider;
@@ -41,6 +48,9 @@ public class SecretProviderFactory {
 	private static @NonNull SecretProviderFactory instance= new SecretProviderFactory();	
 	public static @NonNull SecretProviderFactory getInstance() { return instance; }
 	
+	// Separates the providers in a chained configuration string
+	private static final String CHAIN_SEPARATOR= "|";
+	
 	/**
 	 * createFromString
 	 * 
@@ -49,7 +59,8 @@ public class SecretProviderFactory {
 	 * but that's not forced.
 	 * 
 	 * The configuration is expected to start with a type string, with a colon delimiting any
-	 * other information needed to create the provider.
+	 * other information needed to create the provider.  Several configurations separated by
+	 * a vertical bar (|) create a chained provider - see createFromStrings.
 	 * 
 	 * @param config					Configuration string
 	 * @return							New secret provider
@@ -61,6 +72,18 @@ public class SecretProviderFactory {
 	{
 		if (configUri == null) {
 			return NullSecretProvider.Create();
+		} else if (configUri.indexOf(CHAIN_SEPARATOR) >= 0) {
+			List<@NonNull String> configUris= new ArrayList<>();
+			for (String part : configUri.split(Pattern.quote(CHAIN_SEPARATOR))) {
+				@SuppressWarnings("null")
+				@NonNull String trimmed= part.trim();
+				
+				if (!trimmed.isEmpty()) {
+					configUris.add(trimmed);
+				}
+			}
+			
+			return createFromStrings(configUris);
 		} else {
 			Uri uri= UriImpl.CreateFromString(configUri);
 			
@@ -93,9 +116,36 @@ public class SecretProviderFactory {
 				}
 				
 				String region= uri.getPathSection(1);
-				String secretName= uri.getPathSection(2);
 				
-				return AwsSecretProvider.Create(region, secretName);
+				// Several secrets can share one provider, separated by commas - secret
+				// names can't contain a comma.
+				List<@NonNull String> secretNames= new ArrayList<>();
+				for (String secretName : uri.getPathSection(2).split(",")) {
+					if (!secretName.isBlank()) {
+						secretNames.add(secretName.trim());
+					}
+				}
+				
+				// Same local arguments as configuration sources, but the SDK only takes a
+				// limit on the whole call.
+				int connectSeconds= parseSeconds(uri, "connectTimeout", 10);
+				int readSeconds= parseSeconds(uri, "readTimeout", 30);
+				
+				@SuppressWarnings("null")
+				@NonNull Duration apiCallTimeout= Duration.ofSeconds(connectSeconds + readSeconds);
+				
+				// Rotation is only picked up if asked for, since the version check needs
+				// DescribeSecret permission on top of GetSecretValue.
+				int refreshSeconds= 0;
+				if (uri.getLocalArgument("refresh") != null) {
+					refreshSeconds= parseSeconds(uri, "refresh", 0);
+				}
+				
+				@SuppressWarnings("null")
+				@NonNull Duration refreshInterval= Duration.ofSeconds(refreshSeconds);
+				
+				return AwsSecretProvider.Create(
+						region, secretNames, apiCallTimeout, refreshInterval);
 	
 			default:
 				throw new ConfigException(
@@ -104,6 +154,64 @@ public class SecretProviderFactory {
 		}
 	}
 	
+	/**
+	 * createFromStrings
+	 * 
+	 * Create a chained provider from several configuration strings, looked up in the order
+	 * given.  Each provider is registered under a prefix, which is the schema unless the
+	 * prefix local argument says otherwise, so a name like "aws:db_password" goes straight to
+	 * the provider with that prefix.
+	 * 
+	 * @param configUris				Configuration strings
+	 * @return							New secret provider
+	 * 
+	 * @throws ConfigException			Something went wrong, or two providers share a prefix
+	 */
+	public @NonNull SecretProvider createFromStrings(
+			@NonNull List<@NonNull String> configUris) throws ConfigException
+	{
+		if (configUris.size() == 1) {
+			return createFromString(configUris.get(0));
+		}
+		
+		LinkedHashMap<@NonNull String, @NonNull SecretProvider> providers= new LinkedHashMap<>();
+		for (@NonNull String configUri : configUris) {
+			Uri uri= UriImpl.CreateFromString(configUri);
+			String prefix= uri.getLocalArgument("prefix", uri.getSchema());
+			
+			if (providers.containsKey(prefix)) {
+				throw new ConfigException(
+						"Secret prefix " + prefix + " is used by more than one provider");
+			}
+			
+			providers.put(prefix, createFromString(configUri));
+		}
+		
+		return ChainedSecretProvider.Create(providers);
+	}
+	
+	private int parseSeconds(
+			@NonNull Uri uri,
+			@NonNull String name,
+			int defaultSeconds) throws ConfigException
+	{
+		String valueString= uri.getLocalArgument(name);
+		if (valueString == null) {
+			return defaultSeconds;
+		}
+		
+		try {
+			int value= Integer.parseInt(valueString);
+			if (value < 1) {
+				throw new ConfigException("Value for " + name + " must be at least 1");
+			}
+			
+			return value;
+		} catch (NumberFormatException e) {
+			throw new ConfigException("Value for " + name + " is not a number", e);
+		}
+	}
+	
 	public @NonNull SecretProvider createFromEnvironment() throws ConfigException {
 		String configString= System.getenv("SECRETS");
 		if (configString == null) {
@@ -0,0 +1,47 @@
+/****************************************************************************
+ * Copyright 2022 Teaglu, LLC                                               *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *   http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ ****************************************************************************/
+
+package com.teaglu.configure.secret;
+
+import org.eclipse.jdt.annotation.NonNull;
+
+import com.teaglu.composite.Composite;
+import com.teaglu.configure.exception.ConfigException;
+
+/**
+ * SecretTreeResolver
+ * 
+ * A SecretTreeResolver resolves every secret reference in a whole configuration at once,
+ * instead of a target calling a SecretReplacer on each value as it goes.  Each distinct secret
+ * is looked up only once no matter how many times it is referenced.
+ *
+ */
+public interface SecretTreeResolver {
+	/**
+	 * resolve
+	 * 
+	 * Return a copy of the configuration with all secret references replaced by their values.
+	 * The configuration passed in is not modified.
+	 * 
+	 * @param config					Configuration
+	 * @return							Resolved configuration
+	 * 
+	 * @throws ConfigException			A secret is not defined, or the configuration can't be
+	 * 									walked
+	 */
+	@NonNull Composite resolve(
+			@NonNull Composite config) throws ConfigException;
+}
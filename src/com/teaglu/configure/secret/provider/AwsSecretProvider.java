@@ -16,10 +16,27 @@
 
 package com.teaglu.configure.secret.provider;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
@@ -27,93 +44,687 @@ import com.google.gson.JsonParser;
 import com.google.gson.JsonPrimitive;
 import com.google.gson.JsonSyntaxException;
 import com.teaglu.configure.exception.ConfigException;
+import com.teaglu.configure.exception.SecretNotFoundException;
 import com.teaglu.configure.secret.SecretProvider;
 
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
 import software.amazon.awssdk.core.exception.SdkException;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.secretsmanager.SecretsManagerClient;
 import software.amazon.awssdk.services.secretsmanager.SecretsManagerClientBuilder;
+import software.amazon.awssdk.services.secretsmanager.model.APIErrorType;
+import software.amazon.awssdk.services.secretsmanager.model.BatchGetSecretValueRequest;
+import software.amazon.awssdk.services.secretsmanager.model.BatchGetSecretValueResponse;
+import software.amazon.awssdk.services.secretsmanager.model.DescribeSecretRequest;
+import software.amazon.awssdk.services.secretsmanager.model.DescribeSecretResponse;
 import software.amazon.awssdk.services.secretsmanager.model.GetSecretValueRequest;
 import software.amazon.awssdk.services.secretsmanager.model.GetSecretValueResponse;
+import software.amazon.awssdk.services.secretsmanager.model.SecretValueEntry;
 
+/**
+ * AwsSecretProvider
+ * 
+ * Secret provider backed by one or more key/value secrets in AWS Secrets Manager.  The keys
+ * of all the secrets are merged into one set of names, with earlier secrets winning if the
+ * same key appears more than once.
+ * 
+ * Nothing is fetched until the first lookup.  At that point every secret is fetched at once,
+ * using BatchGetSecretValue when there is more than one, or concurrent GetSecretValue calls if
+ * batch access isn't allowed.  All providers for a region share one SDK client.
+ * 
+ * The values are published as an immutable map which is swapped out whole, so lookups never
+ * take a lock.  If a refresh interval is given the secrets are checked in the background,
+ * using the version metadata from DescribeSecret so a value is only downloaded again when it
+ * has actually been rotated.  The refresh runs on a shared thread, so close() the provider
+ * when it's no longer needed to take it off the schedule.
+ *
+ */
 public class AwsSecretProvider implements SecretProvider {
-	private Map<@NonNull String, String> secretValues= new TreeMap<>();
-
+	private static final Logger log= LoggerFactory.getLogger(AwsSecretProvider.class);
+	
+	// Without this the SDK lets a call with retries run for a very long time
+	private static final Duration DEFAULT_API_CALL_TIMEOUT= Duration.ofSeconds(40);
+	
+	// Staging label Secrets Manager puts on the version in use
+	private static final String CURRENT_STAGE= "AWSCURRENT";
+	
+	// Most secrets BatchGetSecretValue accepts by ID in one request
+	private static final int BATCH_LIMIT= 20;
+	
+	private static ScheduledThreadPoolExecutor refreshExecutor;
+	
+	private static synchronized @NonNull ScheduledThreadPoolExecutor getRefreshExecutor() {
+		if (refreshExecutor == null) {
+			refreshExecutor= new ScheduledThreadPoolExecutor(1, runnable -> {
+				Thread thread= new Thread(runnable, "secret-refresh");
+				thread.setDaemon(true);
+				return thread;
+			});
+			
+			// A closed provider's refresh shouldn't sit in the queue, holding on to the
+			// provider, until it would have run.
+			refreshExecutor.setRemoveOnCancelPolicy(true);
+		}
+		
+		@SuppressWarnings("null")
+		@NonNull ScheduledThreadPoolExecutor rval= refreshExecutor;
+		
+		return rval;
+	}
+	
+	private static ExecutorService fetchExecutor;
+	
+	private static synchronized @NonNull ExecutorService getFetchExecutor() {
+		if (fetchExecutor == null) {
+			fetchExecutor= Executors.newCachedThreadPool(runnable -> {
+				Thread thread= new Thread(runnable, "secret-fetch");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		
+		@SuppressWarnings("null")
+		@NonNull ExecutorService rval= fetchExecutor;
+		
+		return rval;
+	}
+	
+	// Clients are thread-safe and hold a connection pool, so share one per region and timeout
+	private static final Map<String, SecretsManagerClient> clients= new HashMap<>();
+	
+	private static synchronized @NonNull SecretsManagerClient getClient(
+			@NonNull String region,
+			@NonNull Duration apiCallTimeout)
+	{
+		String key= region + "/" + apiCallTimeout.toMillis();
+		
+		SecretsManagerClient client= clients.get(key);
+		if (client == null) {
+			SecretsManagerClientBuilder builder= SecretsManagerClient.builder();
+			builder.region(Region.of(region));
+			builder.overrideConfiguration(ClientOverrideConfiguration.builder()
+					.apiCallTimeout(apiCallTimeout)
+					.build());
+			
+			client= builder.build();
+			clients.put(key, client);
+		}
+		
+		@SuppressWarnings("null")
+		@NonNull SecretsManagerClient rval= client;
+		
+		return rval;
+	}
+	
+	/**
+	 * LoadedSecret
+	 * 
+	 * The values of one secret and the version they came from
+	 */
+	private static class LoadedSecret {
+		private final @NonNull Map<@NonNull String, @NonNull String> values;
+		private final @Nullable String versionId;
+		
+		private LoadedSecret(
+				@NonNull Map<@NonNull String, @NonNull String> values,
+				@Nullable String versionId)
+		{
+			this.values= values;
+			this.versionId= versionId;
+		}
+	}
+	
+	private final @NonNull SecretsManagerClient client;
+	private final @NonNull List<@NonNull String> secretIds;
+	private final @NonNull Duration refreshInterval;
+	
+	// Merged values, replaced whole and never modified.  Null until the first lookup.
+	private volatile @Nullable Map<@NonNull String, @NonNull String> secretValues;
+	
+	// Bumped every time new values are published
+	private volatile long generation;
+	
+	// Guards loading and refreshing, never taken on the lookup path once loaded
+	private final Object loadLock= new Object();
+	private final Map<@NonNull String, @NonNull LoadedSecret> loadedSecrets= new HashMap<>();
+	
+	// Background refresh, and whether close() has been called - both guarded by loadLock
+	private ScheduledFuture<?> refreshFuture;
+	private boolean closed;
+	
+	// Whether these calls are allowed, since not every policy grants them
+	private volatile boolean describeAllowed= true;
+	private volatile boolean batchAllowed= true;
+	
 	private AwsSecretProvider(
 			@NonNull String region,
-			@NonNull String secretName) throws ConfigException
+			@NonNull List<@NonNull String> secretIds,
+			@NonNull Duration apiCallTimeout,
+			@NonNull Duration refreshInterval) throws ConfigException
 	{
-		SecretsManagerClientBuilder builder= SecretsManagerClient.builder();
-		builder.region(Region.of(region));
-		
-		SecretsManagerClient client= builder.build();
-	    
-	    // In this sample we only handle the specific exceptions for the 'GetSecretValue' API.
-	    // See https://docs.aws.amazon.com/secretsmanager/latest/apireference/API_GetSecretValue.html
-	    // We rethrow the exception by default.
-	    
-	    GetSecretValueRequest getSecretValueRequest= GetSecretValueRequest
-	    		.builder()
-	    		.secretId(secretName).build();
-
-	    try {
-	    	GetSecretValueResponse result = client.getSecretValue(getSecretValueRequest);
-	        String rawJson= result.secretString();
-	        
-	        try {
-	        	JsonElement jsonElement= JsonParser.parseString(rawJson);
-	        	if (!jsonElement.isJsonObject()) {
-	        		throw new ConfigException("AWS Secret is not Object/Key-Value");
-	        	}
-	        	
-	        	JsonObject jsonObject= jsonElement.getAsJsonObject();
-	        	for (Map.Entry<String, JsonElement> entry : jsonObject.entrySet()) {
-	        		@SuppressWarnings("null") @NonNull String key= entry.getKey();
-	        		
-	        		JsonElement valueEl= entry.getValue();
-	        		if (valueEl == null) {
-	        			throw new ConfigException(
-	        					"Value for configuration key " + key + " is null");
-	        		}
-	        		if (!valueEl.isJsonPrimitive()) {
-	        			throw new ConfigException(
-	        					"Value for configuration key " + key + " is not primitive");
-	        		}
-	        		JsonPrimitive valuePr= valueEl.getAsJsonPrimitive();
-	        		if (!valuePr.isString()) {
-	        			throw new ConfigException(
-	        					"Value for configuration key " + key + " is not string");
-	        		}
-	        		String value= valuePr.getAsString();
-        			secretValues.put(key, value);
-	        	}
-	        } catch (JsonSyntaxException e) {
-	        	throw new ConfigException(
-	        			"Unable to parse AWS secret as JSON", e);
-	        }
-	    } catch (SdkException e) {
-	        // Secrets Manager can't decrypt the protected secret text using the provided KMS key.
-	        // Deal with the exception here, and/or rethrow at your discretion.
-	        throw new ConfigException("Error loading secret key " + secretName, e);
-	    }
+		this(secretIds, refreshInterval, getClient(region, apiCallTimeout));
+	}
+	
+	// Also used by tests to supply their own client
+	AwsSecretProvider(
+			@NonNull List<@NonNull String> secretIds,
+			@NonNull Duration refreshInterval,
+			@NonNull SecretsManagerClient client) throws ConfigException
+	{
+		if (secretIds.isEmpty()) {
+			throw new ConfigException("At least one AWS secret name is required");
+		}
+		
+		@SuppressWarnings("null")
+		@NonNull List<@NonNull String> idCopy= List.copyOf(secretIds);
+		
+		this.secretIds= idCopy;
+		this.refreshInterval= refreshInterval;
+		this.client= client;
 	}
 	
 	public static @NonNull SecretProvider Create(
 			@NonNull String region,
 			@NonNull String secretName) throws ConfigException
 	{
-		return new AwsSecretProvider(region, secretName);
+		return Create(region, secretName, DEFAULT_API_CALL_TIMEOUT);
+	}
+	
+	/**
+	 * Create
+	 * 
+	 * Create a provider with an explicit limit on each call to Secrets Manager
+	 * 
+	 * @param region					AWS region
+	 * @param secretName				Name of the secret holding the key/value pairs
+	 * @param apiCallTimeout			Time allowed for a call including retries
+	 * 
+	 * @return							New provider
+	 * 
+	 * @throws ConfigException			Invalid arguments
+	 */
+	public static @NonNull SecretProvider Create(
+			@NonNull String region,
+			@NonNull String secretName,
+			@NonNull Duration apiCallTimeout) throws ConfigException
+	{
+		@SuppressWarnings("null")
+		@NonNull Duration never= Duration.ZERO;
+		
+		return Create(region, secretName, apiCallTimeout, never);
+	}
+	
+	/**
+	 * Create
+	 * 
+	 * Create a provider that picks up rotated values.  Every refresh interval the secret's
+	 * version metadata is checked, and the values are downloaded again if a new version has
+	 * become current.  If a refresh fails the existing values are kept.
+	 * 
+	 * @param region					AWS region
+	 * @param secretName				Name of the secret holding the key/value pairs
+	 * @param apiCallTimeout			Time allowed for a call including retries
+	 * @param refreshInterval			Time between checks, or zero to never refresh
+	 * 
+	 * @return							New provider
+	 * 
+	 * @throws ConfigException			Invalid arguments
+	 */
+	public static @NonNull SecretProvider Create(
+			@NonNull String region,
+			@NonNull String secretName,
+			@NonNull Duration apiCallTimeout,
+			@NonNull Duration refreshInterval) throws ConfigException
+	{
+		@SuppressWarnings("null")
+		@NonNull List<@NonNull String> secretIds= List.of(secretName);
+		
+		return new AwsSecretProvider(region, secretIds, apiCallTimeout, refreshInterval);
+	}
+	
+	/**
+	 * Create
+	 * 
+	 * Create a provider that merges the keys of several secrets.  If the same key is in more
+	 * than one secret, the one listed first wins.
+	 * 
+	 * @param region					AWS region
+	 * @param secretIds					Names or ARNs of the secrets holding the key/value pairs
+	 * @param apiCallTimeout			Time allowed for a call including retries
+	 * @param refreshInterval			Time between checks, or zero to never refresh
+	 * 
+	 * @return							New provider
+	 * 
+	 * @throws ConfigException			Invalid arguments
+	 */
+	public static @NonNull SecretProvider Create(
+			@NonNull String region,
+			@NonNull List<@NonNull String> secretIds,
+			@NonNull Duration apiCallTimeout,
+			@NonNull Duration refreshInterval) throws ConfigException
+	{
+		return new AwsSecretProvider(region, secretIds, apiCallTimeout, refreshInterval);
+	}
+	
+	/**
+	 * getValues
+	 * 
+	 * Return the merged values, fetching every secret on the first call.  If the fetch fails
+	 * the next call tries again.
+	 * 
+	 * @return							Values
+	 * 
+	 * @throws ConfigException			Unable to fetch or parse a secret
+	 */
+	private @NonNull Map<@NonNull String, @NonNull String> getValues() throws ConfigException {
+		Map<@NonNull String, @NonNull String> values= secretValues;
+		if (values != null) {
+			return values;
+		}
+		
+		synchronized (loadLock) {
+			values= secretValues;
+			if (values == null) {
+				loadedSecrets.putAll(fetch(secretIds));
+				values= publish();
+				
+				if (!refreshInterval.isZero() && !closed) {
+					long refreshMillis= refreshInterval.toMillis();
+					refreshFuture= getRefreshExecutor().scheduleWithFixedDelay(
+							this::refresh, refreshMillis, refreshMillis, TimeUnit.MILLISECONDS);
+				}
+			}
+			
+			return values;
+		}
+	}
+	
+	// Caller holds loadLock
+	private @NonNull Map<@NonNull String, @NonNull String> publish() {
+		Map<@NonNull String, @NonNull String> merged= new HashMap<>();
+		for (@NonNull String secretId : secretIds) {
+			LoadedSecret loaded= loadedSecrets.get(secretId);
+			if (loaded != null) {
+				for (Map.Entry<@NonNull String, @NonNull String> entry : loaded.values.entrySet()) {
+					merged.putIfAbsent(entry.getKey(), entry.getValue());
+				}
+			}
+		}
+		
+		@SuppressWarnings("null")
+		@NonNull Map<@NonNull String, @NonNull String> snapshot= Map.copyOf(merged);
+		
+		secretValues= snapshot;
+		generation++;
+		
+		return snapshot;
+	}
+	
+	/**
+	 * fetch
+	 * 
+	 * Fetch the current version of several secrets at once
+	 * 
+	 * @param ids						Secret names or ARNs
+	 * 
+	 * @return							Loaded secrets by ID
+	 * 
+	 * @throws ConfigException			Unable to fetch or parse a secret
+	 */
+	private @NonNull Map<@NonNull String, @NonNull LoadedSecret> fetch(
+			@NonNull Collection<@NonNull String> ids) throws ConfigException
+	{
+		Map<@NonNull String, @NonNull LoadedSecret> rval= new HashMap<>();
+		List<@NonNull String> remaining= new ArrayList<>(ids);
+		
+		// A single secret doesn't gain anything from the batch call, and the batch call
+		// needs its own permission, so only use it where it helps.
+		if ((remaining.size() > 1) && batchAllowed) {
+			try {
+				for (int start= 0; start < remaining.size(); start+= BATCH_LIMIT) {
+					@SuppressWarnings("null")
+					@NonNull List<@NonNull String> chunk= remaining.subList(
+							start, Math.min(start + BATCH_LIMIT, remaining.size()));
+					
+					fetchBatch(chunk, rval);
+				}
+			} catch (SdkException e) {
+				if (isAccessDenied(e)) {
+					log.warn("Not allowed to batch fetch secrets, fetching them individually", e);
+					batchAllowed= false;
+				} else {
+					log.warn("Unable to batch fetch secrets, fetching them individually this time", e);
+				}
+			}
+			
+			remaining.removeAll(rval.keySet());
+		}
+		
+		if (remaining.size() == 1) {
+			@SuppressWarnings("null")
+			@NonNull String secretId= remaining.get(0);
+			
+			rval.put(secretId, fetchOne(secretId));
+		} else if (!remaining.isEmpty()) {
+			Map<@NonNull String, CompletableFuture<@NonNull LoadedSecret>> futures=
+					new LinkedHashMap<>();
+			
+			for (@NonNull String secretId : remaining) {
+				futures.put(secretId, CompletableFuture.supplyAsync(() -> {
+					try {
+						return fetchOne(secretId);
+					} catch (ConfigException e) {
+						throw new CompletionException(e);
+					}
+				}, getFetchExecutor()));
+			}
+			
+			for (Map.Entry<@NonNull String, CompletableFuture<@NonNull LoadedSecret>> entry :
+					futures.entrySet())
+			{
+				try {
+					@SuppressWarnings("null")
+					@NonNull LoadedSecret loaded= entry.getValue().join();
+					
+					rval.put(entry.getKey(), loaded);
+				} catch (CompletionException e) {
+					Throwable cause= e.getCause();
+					if (cause instanceof ConfigException) {
+						throw (ConfigException)cause;
+					}
+					
+					throw new ConfigException(
+							"Error loading secret key " + entry.getKey(), cause);
+				}
+			}
+		}
+		
+		return rval;
+	}
+	
+	private void fetchBatch(
+			@NonNull List<@NonNull String> ids,
+			@NonNull Map<@NonNull String, @NonNull LoadedSecret> results) throws ConfigException
+	{
+		String nextToken= null;
+		do {
+			BatchGetSecretValueRequest.Builder requestBuilder=
+					BatchGetSecretValueRequest.builder().secretIdList(ids);
+			if (nextToken != null) {
+				requestBuilder.nextToken(nextToken);
+			}
+			
+			BatchGetSecretValueResponse response=
+					client.batchGetSecretValue(requestBuilder.build());
+			
+			List<APIErrorType> errors= response.errors();
+			if ((errors != null) && !errors.isEmpty()) {
+				APIErrorType error= errors.get(0);
+				throw new ConfigException("Error loading secret key " + error.secretId() +
+						": " + error.errorCode() + " " + error.message());
+			}
+			
+			List<SecretValueEntry> entries= response.secretValues();
+			if (entries != null) {
+				for (SecretValueEntry entry : entries) {
+					// The response names the secret, which may not be how it was asked for
+					for (@NonNull String secretId : ids) {
+						if (secretId.equals(entry.name()) || secretId.equals(entry.arn())) {
+							results.put(secretId, new LoadedSecret(
+									parseValues(secretId, entry.secretString()),
+									entry.versionId()));
+						}
+					}
+				}
+			}
+			
+			nextToken= response.nextToken();
+		} while (nextToken != null);
+	}
+	
+	private @NonNull LoadedSecret fetchOne(@NonNull String secretId) throws ConfigException {
+		GetSecretValueResponse result;
+		try {
+			result= client.getSecretValue(GetSecretValueRequest.builder()
+					.secretId(secretId)
+					.build());
+		} catch (SdkException e) {
+			throw new ConfigException("Error loading secret key " + secretId, e);
+		}
+		
+		return new LoadedSecret(
+				parseValues(secretId, result.secretString()), result.versionId());
+	}
+	
+	private static @NonNull Map<@NonNull String, @NonNull String> parseValues(
+			@NonNull String secretId,
+			@Nullable String rawJson) throws ConfigException
+	{
+		if (rawJson == null) {
+			throw new ConfigException("AWS Secret " + secretId + " has no string value");
+		}
+		
+		Map<@NonNull String, @NonNull String> values= new HashMap<>();
+		try {
+			JsonElement jsonElement= JsonParser.parseString(rawJson);
+			if (!jsonElement.isJsonObject()) {
+				throw new ConfigException("AWS Secret is not Object/Key-Value");
+			}
+			
+			JsonObject jsonObject= jsonElement.getAsJsonObject();
+			for (Map.Entry<String, JsonElement> entry : jsonObject.entrySet()) {
+				@SuppressWarnings("null") @NonNull String key= entry.getKey();
+				
+				JsonElement valueEl= entry.getValue();
+				if (valueEl == null) {
+					throw new ConfigException(
+							"Value for configuration key " + key + " is null");
+				}
+				if (!valueEl.isJsonPrimitive()) {
+					throw new ConfigException(
+							"Value for configuration key " + key + " is not primitive");
+				}
+				JsonPrimitive valuePr= valueEl.getAsJsonPrimitive();
+				if (!valuePr.isString()) {
+					throw new ConfigException(
+							"Value for configuration key " + key + " is not string");
+				}
+				
+				@SuppressWarnings("null")
+				@NonNull String value= valuePr.getAsString();
+				values.put(key, value);
+			}
+		} catch (JsonSyntaxException e) {
+			throw new ConfigException(
+					"Unable to parse AWS secret " + secretId + " as JSON", e);
+		}
+		
+		@SuppressWarnings("null")
+		@NonNull Map<@NonNull String, @NonNull String> rval= Map.copyOf(values);
+		
+		return rval;
+	}
+	
+	/**
+	 * isAccessDenied
+	 * 
+	 * Whether a call failed because the policy doesn't grant it, as opposed to something that
+	 * may work next time like throttling or a timeout
+	 * 
+	 * @param e							Exception from the SDK
+	 * 
+	 * @return							Whether access was denied
+	 */
+	private static boolean isAccessDenied(@NonNull SdkException e) {
+		if (!(e instanceof AwsServiceException)) {
+			return false;
+		}
+		
+		AwsServiceException serviceException= (AwsServiceException)e;
+		if (serviceException.statusCode() == 403) {
+			return true;
+		}
+		
+		AwsErrorDetails details= serviceException.awsErrorDetails();
+		return (details != null) && "AccessDeniedException".equals(details.errorCode());
+	}
+	
+	/**
+	 * currentVersion
+	 * 
+	 * Ask which version of a secret is current, without downloading it
+	 * 
+	 * @param secretId					Secret name or ARN
+	 * 
+	 * @return							Version ID, or null if it couldn't be determined
+	 */
+	private @Nullable String currentVersion(@NonNull String secretId) {
+		if (!describeAllowed) {
+			return null;
+		}
+		
+		DescribeSecretResponse response;
+		try {
+			response= client.describeSecret(DescribeSecretRequest.builder()
+					.secretId(secretId)
+					.build());
+		} catch (SdkException e) {
+			if (isAccessDenied(e)) {
+				// The policy only grants GetSecretValue.  That still works, it just means
+				// downloading the values every time.
+				log.warn("Not allowed to describe secret " + secretId +
+						", refreshing without the version check", e);
+				
+				describeAllowed= false;
+			} else {
+				// Throttling, a timeout, or a problem on their end - skip the check this time
+				log.warn("Unable to describe secret " + secretId +
+						", downloading it this time", e);
+			}
+			
+			return null;
+		}
+		
+		Map<String, List<String>> stages= response.versionIdsToStages();
+		if (stages != null) {
+			for (Map.Entry<String, List<String>> entry : stages.entrySet()) {
+				List<String> labels= entry.getValue();
+				if ((labels != null) && labels.contains(CURRENT_STAGE)) {
+					return entry.getKey();
+				}
+			}
+		}
+		
+		return null;
+	}
+	
+	void refresh() {
+		try {
+			synchronized (loadLock) {
+				List<@NonNull String> changed= new ArrayList<>();
+				for (@NonNull String secretId : secretIds) {
+					LoadedSecret loaded= loadedSecrets.get(secretId);
+					String current= currentVersion(secretId);
+					
+					if ((loaded == null) || (current == null) ||
+							!current.equals(loaded.versionId))
+					{
+						changed.add(secretId);
+					}
+				}
+				
+				if (changed.isEmpty()) {
+					return;
+				}
+				
+				// Without the version check every secret comes back here, so only count the
+				// ones that actually differ - publishing bumps the generation, which throws
+				// away everything resolved against the old values.
+				boolean rotated= false;
+				for (Map.Entry<@NonNull String, @NonNull LoadedSecret> entry :
+						fetch(changed).entrySet())
+				{
+					LoadedSecret fetched= entry.getValue();
+					LoadedSecret previous= loadedSecrets.get(entry.getKey());
+					
+					if ((previous != null) &&
+							Objects.equals(previous.versionId, fetched.versionId) &&
+							previous.values.equals(fetched.values))
+					{
+						continue;
+					}
+					
+					loadedSecrets.put(entry.getKey(), fetched);
+					
+					if ((previous != null) && (previous.versionId != null) &&
+							!previous.versionId.equals(fetched.versionId))
+					{
+						log.info("Secret " + entry.getKey() +
+								" rotated to version " + fetched.versionId);
+					}
+					rotated= true;
+				}
+				
+				if (rotated) {
+					publish();
+				}
+			}
+		} catch (ConfigException e) {
+			log.error("Unable to refresh secrets, keeping current values", e);
+		} catch (RuntimeException e) {
+			// Anything thrown out of here would cancel the refresh schedule
+			log.error("Unexpected exception refreshing secrets", e);
+		}
+	}
+	
+	@Override
+	public long getGeneration() {
+		return generation;
+	}
+	
+	@Override
+	public void close() {
+		synchronized (loadLock) {
+			closed= true;
+			
+			if (refreshFuture != null) {
+				refreshFuture.cancel(false);
+				refreshFuture= null;
+			}
+		}
 	}
 	
 	@Override
 	public @NonNull String getSecret(@NonNull String name) throws ConfigException {
-		String rval= secretValues.get(name);
+		String rval= getValues().get(name);
 		if (rval == null) {
-			throw new ConfigException(
+			throw new SecretNotFoundException(
 					"No definition for secret " + name);
 		}
 		
 		return rval;
 	}
-
+	
+	@Override
+	public @NonNull Map<@NonNull String, @NonNull String> getSecrets(
+			@NonNull Set<@NonNull String> names) throws ConfigException
+	{
+		// Read the snapshot once, so every value comes from the same version even if a
+		// refresh lands part way through.
+		Map<@NonNull String, @NonNull String> values= getValues();
+		
+		Map<@NonNull String, @NonNull String> rval= new HashMap<>();
+		for (@NonNull String name : names) {
+			String value= values.get(name);
+			if (value == null) {
+				throw new SecretNotFoundException(
+						"No definition for secret " + name);
+			}
+			rval.put(name, value);
+		}
+		
+		return rval;
+	}
 }
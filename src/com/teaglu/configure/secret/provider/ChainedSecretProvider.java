@@ -0,0 +1,320 @@
+/****************************************************************************
+ * Copyright 2022 Teaglu, LLC                                               *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *   http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ ****************************************************************************/
+
+package com.teaglu.configure.secret.provider;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.teaglu.configure.exception.ConfigException;
+import com.teaglu.configure.exception.SecretNotFoundException;
+import com.teaglu.configure.secret.SecretProvider;
+
+/**
+ * ChainedSecretProvider
+ * 
+ * Layers several secret providers, each registered under a prefix.  A name written as
+ * prefix:name goes straight to the provider with that prefix.  Any other name is looked up in
+ * each provider in the order given, so an earlier provider - a local file, say - can override
+ * a later one.
+ * 
+ * Only a provider saying a secret is not defined moves the lookup on to the next one.  Any
+ * other failure - a network or permission error, say - is thrown straight away, because
+ * falling through could quietly serve a value from a provider further down the chain.
+ * 
+ * Once an unprefixed name has been found, later lookups go straight to the provider that had
+ * it.  A name that no provider has is remembered for a while, so a reference to an unknown
+ * secret doesn't go back through every provider on every reload.  Both are forgotten whenever
+ * the generation of the chain changes.
+ *
+ */
+public class ChainedSecretProvider implements SecretProvider {
+	// Default time a miss is remembered
+	private static final Duration DEFAULT_NEGATIVE_TTL= Duration.ofSeconds(60);
+	
+	private final @NonNull List<@NonNull SecretProvider> chain;
+	
+	// Prefix to provider, built once at construction
+	private final @NonNull Map<@NonNull String, @NonNull SecretProvider> prefixIndex;
+	
+	// Unprefixed name to the provider that had it
+	private final Map<@NonNull String, @NonNull SecretProvider> routeCache= new ConcurrentHashMap<>();
+	
+	// Name to the System.nanoTime() when the miss expires
+	private final Map<@NonNull String, @NonNull Long> negativeCache= new ConcurrentHashMap<>();
+	private final long negativeTtlNanos;
+	
+	// Generation the two caches above were built against
+	private volatile long cacheGeneration;
+	
+	private ChainedSecretProvider(
+			@NonNull Map<@NonNull String, @NonNull SecretProvider> providers,
+			@NonNull Duration negativeTtl) throws ConfigException
+	{
+		if (providers.isEmpty()) {
+			throw new ConfigException("A chained secret provider needs at least one provider");
+		}
+		
+		@SuppressWarnings("null")
+		@NonNull List<@NonNull SecretProvider> chain= List.copyOf(providers.values());
+		this.chain= chain;
+		
+		@SuppressWarnings("null")
+		@NonNull Map<@NonNull String, @NonNull SecretProvider> prefixIndex= Map.copyOf(providers);
+		this.prefixIndex= prefixIndex;
+		
+		this.negativeTtlNanos= negativeTtl.toNanos();
+		this.cacheGeneration= getGeneration();
+	}
+	
+	/**
+	 * Create
+	 * 
+	 * Create a chained provider
+	 * 
+	 * @param providers					Providers by prefix, in lookup order
+	 * 
+	 * @return							New provider
+	 * 
+	 * @throws ConfigException			No providers given
+	 */
+	public static @NonNull SecretProvider Create(
+			@NonNull LinkedHashMap<@NonNull String, @NonNull SecretProvider> providers)
+					throws ConfigException
+	{
+		@SuppressWarnings("null")
+		@NonNull Duration negativeTtl= DEFAULT_NEGATIVE_TTL;
+		
+		return new ChainedSecretProvider(providers, negativeTtl);
+	}
+	
+	/**
+	 * Create
+	 * 
+	 * Create a chained provider with an explicit time to remember misses
+	 * 
+	 * @param providers					Providers by prefix, in lookup order
+	 * @param negativeTtl				How long a name no provider has is remembered
+	 * 
+	 * @return							New provider
+	 * 
+	 * @throws ConfigException			No providers given
+	 */
+	public static @NonNull SecretProvider Create(
+			@NonNull LinkedHashMap<@NonNull String, @NonNull SecretProvider> providers,
+			@NonNull Duration negativeTtl) throws ConfigException
+	{
+		return new ChainedSecretProvider(providers, negativeTtl);
+	}
+	
+	/**
+	 * Route
+	 * 
+	 * Where a prefixed name goes
+	 */
+	private static class Route {
+		private final @NonNull SecretProvider provider;
+		private final @NonNull String name;
+		
+		private Route(
+				@NonNull SecretProvider provider,
+				@NonNull String name)
+		{
+			this.provider= provider;
+			this.name= name;
+		}
+	}
+	
+	private @Nullable Route routePrefixed(@NonNull String name) {
+		int colonOffset= name.indexOf(':');
+		if (colonOffset > 0) {
+			SecretProvider provider= prefixIndex.get(name.substring(0, colonOffset));
+			if (provider != null) {
+				@SuppressWarnings("null")
+				@NonNull String localName= name.substring(colonOffset + 1);
+				
+				return new Route(provider, localName);
+			}
+		}
+		
+		return null;
+	}
+	
+	private void checkGeneration() {
+		// A provider that has reloaded may have gained, lost, or moved any name
+		long generation= getGeneration();
+		if (generation != cacheGeneration) {
+			routeCache.clear();
+			negativeCache.clear();
+			cacheGeneration= generation;
+		}
+	}
+	
+	private void checkNegative(@NonNull String name) throws ConfigException {
+		Long expires= negativeCache.get(name);
+		if (expires != null) {
+			if (System.nanoTime() - expires < 0) {
+				throw new SecretNotFoundException("Secret " + name + " is not defined by any provider");
+			}
+			
+			negativeCache.remove(name, expires);
+		}
+	}
+	
+	@Override
+	public @NonNull String getSecret(
+			@NonNull String name) throws ConfigException
+	{
+		Route route= routePrefixed(name);
+		if (route != null) {
+			return route.provider.getSecret(route.name);
+		}
+		
+		checkGeneration();
+		
+		SecretProvider cached= routeCache.get(name);
+		if (cached != null) {
+			try {
+				return cached.getSecret(name);
+			} catch (SecretNotFoundException e) {
+				// Gone from where it was found - look through the chain again
+				routeCache.remove(name, cached);
+			}
+		}
+		
+		checkNegative(name);
+		
+		// Anything other than a miss propagates, and nothing is cached for it
+		SecretNotFoundException lastException= null;
+		for (@NonNull SecretProvider provider : chain) {
+			try {
+				String rval= provider.getSecret(name);
+				routeCache.put(name, provider);
+				
+				return rval;
+			} catch (SecretNotFoundException e) {
+				lastException= e;
+			}
+		}
+		
+		if (negativeTtlNanos > 0) {
+			negativeCache.put(name, System.nanoTime() + negativeTtlNanos);
+		}
+		
+		throw new SecretNotFoundException(
+				"Secret " + name + " is not defined by any provider", lastException);
+	}
+	
+	@Override
+	public long getGeneration() {
+		// Each generation only ever goes up, so the sum changes whenever any of them does
+		long rval= 0;
+		for (@NonNull SecretProvider provider : chain) {
+			rval+= provider.getGeneration();
+		}
+		
+		return rval;
+	}
+	
+	@Override
+	public void close() {
+		for (@NonNull SecretProvider provider : chain) {
+			provider.close();
+		}
+	}
+	
+	@Override
+	public @NonNull Map<@NonNull String, @NonNull String> getSecrets(
+			@NonNull Set<@NonNull String> names) throws ConfigException
+	{
+		checkGeneration();
+		
+		Map<@NonNull String, @NonNull String> rval= new HashMap<>();
+		
+		// Group everything with a known destination so each provider gets one bulk call
+		Map<@NonNull SecretProvider, Map<@NonNull String, @NonNull String>> batches=
+				new LinkedHashMap<>();
+		List<@NonNull String> unrouted= new ArrayList<>();
+		
+		for (@NonNull String name : names) {
+			Route route= routePrefixed(name);
+			SecretProvider provider= null;
+			String localName= name;
+			
+			if (route != null) {
+				provider= route.provider;
+				localName= route.name;
+			} else {
+				provider= routeCache.get(name);
+			}
+			
+			if (provider != null) {
+				Map<@NonNull String, @NonNull String> batch=
+						batches.computeIfAbsent(provider, p -> new HashMap<>());
+				
+				// The same local name can be asked for both with and without its prefix
+				if (batch.putIfAbsent(localName, name) != null) {
+					unrouted.add(name);
+				}
+			} else {
+				unrouted.add(name);
+			}
+		}
+		
+		for (Map.Entry<@NonNull SecretProvider, Map<@NonNull String, @NonNull String>> batch :
+				batches.entrySet())
+		{
+			Map<@NonNull String, @NonNull String> localToName= batch.getValue();
+			
+			@SuppressWarnings("null")
+			@NonNull Set<@NonNull String> localNames= localToName.keySet();
+			
+			Map<@NonNull String, @NonNull String> values;
+			try {
+				values= batch.getKey().getSecrets(localNames);
+			} catch (SecretNotFoundException e) {
+				// Something routed here has gone - sort it out one name at a time
+				for (@NonNull String name : localToName.values()) {
+					routeCache.remove(name, batch.getKey());
+					unrouted.add(name);
+				}
+				continue;
+			}
+			
+			for (Map.Entry<@NonNull String, @NonNull String> value : values.entrySet()) {
+				String name= localToName.get(value.getKey());
+				if (name != null) {
+					rval.put(name, value.getValue());
+				}
+			}
+		}
+		
+		for (@NonNull String name : unrouted) {
+			rval.put(name, getSecret(name));
+		}
+		
+		return rval;
+	}
+}
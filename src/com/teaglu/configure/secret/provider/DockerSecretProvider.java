@@ -20,14 +20,19 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
+
 import org.eclipse.jdt.annotation.NonNull;
 
 import com.teaglu.configure.exception.ConfigException;
+import com.teaglu.configure.exception.SecretNotFoundException;
 import com.teaglu.configure.secret.SecretProvider;
 
 public class DockerSecretProvider implements SecretProvider {
-	private final Properties secrets= new Properties();
+	// Immutable, so lookups from any number of threads never contend
+	private final @NonNull Map<@NonNull String, @NonNull String> secrets;
 	
 	private boolean isValidFilePart(@NonNull String file) {
 		if (file.equals(".")) {
@@ -66,12 +71,23 @@ public class DockerSecretProvider implements SecretProvider {
 					"Secret file " + secretFile.getAbsolutePath() + " does not exist");
 		}
 
+		Properties properties= new Properties();
 		try (InputStream file= new FileInputStream(secretFile)) {
-			secrets.load(file);
+			properties.load(file);
 		} catch (IOException e) {
 			throw new ConfigException(
 					"IO Error reading secrets file " + secretFile.getAbsolutePath(), e);
 		}
+		
+		Map<@NonNull String, @NonNull String> values= new HashMap<>();
+		for (String name : properties.stringPropertyNames()) {
+			values.put(name, properties.getProperty(name));
+		}
+		
+		@SuppressWarnings("null")
+		@NonNull Map<@NonNull String, @NonNull String> snapshot= Map.copyOf(values);
+		
+		secrets= snapshot;
 	}
 	
 	public static @NonNull SecretProvider Create(
@@ -84,9 +100,9 @@ public class DockerSecretProvider implements SecretProvider {
 	public @NonNull String getSecret(
 			@NonNull String name) throws ConfigException
 	{
-		String rval= secrets.getProperty(name);
+		String rval= secrets.get(name);
 		if (rval == null) {
-			throw new ConfigException("Secret " + name + " is not defined");
+			throw new SecretNotFoundException("Secret " + name + " is not defined");
 		}
 		
 		return rval;
@@ -0,0 +1,142 @@
+/****************************************************************************
+ * Copyright 2022 Teaglu, LLC                                               *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *   http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ ****************************************************************************/
+
+package com.teaglu.configure.secret.replacer;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.jdt.annotation.NonNull;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.teaglu.composite.Composite;
+import com.teaglu.composite.exception.SchemaException;
+import com.teaglu.configure.config.tree.CompositeTree;
+import com.teaglu.configure.exception.ConfigException;
+import com.teaglu.configure.secret.SecretProvider;
+import com.teaglu.configure.secret.SecretTreeResolver;
+
+/**
+ * AtIdTreeResolver
+ * 
+ * The tree-wide counterpart of AtIdSecretReplacer.  Any string value with an at-sign (@) as
+ * the first character is replaced entirely by the secret named after the at-sign.  All the
+ * names are collected first and fetched with a single bulk call to the provider.
+ *
+ */
+public class AtIdTreeResolver implements SecretTreeResolver {
+	private @NonNull SecretProvider secretProvider;
+	
+	private AtIdTreeResolver(@NonNull SecretProvider secretProvider) {
+		this.secretProvider= secretProvider;
+	}
+	
+	public static @NonNull SecretTreeResolver Create(
+			@NonNull SecretProvider secretProvider)
+	{
+		return new AtIdTreeResolver(secretProvider);
+	}
+	
+	@Override
+	public @NonNull Composite resolve(
+			@NonNull Composite config) throws ConfigException
+	{
+		JsonElement tree= CompositeTree.Convert(config);
+		if ((tree == null) || !tree.isJsonObject()) {
+			throw new ConfigException(
+					"Configuration can't be converted to a tree for secret resolution");
+		}
+		
+		Set<@NonNull String> names= new HashSet<>();
+		collect(tree, names);
+		
+		if (names.isEmpty()) {
+			return config;
+		}
+		
+		Map<@NonNull String, @NonNull String> values= secretProvider.getSecrets(names);
+		
+		JsonElement resolved= TreeRewriter.Rewrite(tree, value -> {
+			if (value.startsWith("@")) {
+				String secret= values.get(value.substring(1));
+				if (secret != null) {
+					return secret;
+				}
+			}
+			
+			return value;
+		});
+		
+		if (resolved == tree) {
+			return config;
+		}
+		
+		return rebuild(config, resolved);
+	}
+	
+	private static @NonNull Composite rebuild(
+			@NonNull Composite config,
+			@NonNull JsonElement resolved) throws ConfigException
+	{
+		try {
+			@SuppressWarnings("null") @NonNull JsonObject object= resolved.getAsJsonObject();
+			
+			// Hand back the same format that came in
+			return CompositeTree.Rebuild(config, object);
+		} catch (SchemaException e) {
+			throw new ConfigException(
+					"Unable to rebuild configuration after secret resolution", e);
+		}
+	}
+	
+	private static void collect(
+			@NonNull JsonElement element,
+			@NonNull Set<@NonNull String> names)
+	{
+		if (element.isJsonObject()) {
+			for (Map.Entry<String, JsonElement> entry : element.getAsJsonObject().entrySet()) {
+				@SuppressWarnings("null")
+				@NonNull JsonElement value= entry.getValue();
+				
+				collect(value, names);
+			}
+		} else if (element.isJsonArray()) {
+			for (JsonElement value : element.getAsJsonArray()) {
+				@SuppressWarnings("null")
+				@NonNull JsonElement nonNullValue= value;
+				
+				collect(nonNullValue, names);
+			}
+		} else if (isReference(element)) {
+			@SuppressWarnings("null")
+			@NonNull String name= element.getAsString().substring(1);
+			
+			names.add(name);
+		}
+	}
+	
+	private static boolean isReference(@NonNull JsonElement element) {
+		if (!element.isJsonPrimitive()) {
+			return false;
+		}
+		
+		JsonPrimitive primitive= element.getAsJsonPrimitive();
+		return primitive.isString() && primitive.getAsString().startsWith("@");
+	}
+}
@@ -0,0 +1,118 @@
+/****************************************************************************
+ * Copyright 2022 Teaglu, LLC                                               *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *   http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ ****************************************************************************/
+
+package com.teaglu.configure.secret.replacer;
+
+import org.eclipse.jdt.annotation.NonNull;
+
+import com.teaglu.configure.exception.ConfigException;
+import com.teaglu.configure.secret.SecretProvider;
+import com.teaglu.configure.secret.SecretReplacer;
+
+/**
+ * InterpolatingSecretReplacer
+ * 
+ * A secret replacer that replaces ${secret:name} placeholders anywhere in a value, so secrets
+ * can be embedded in things like connection strings.  Writing $${secret: gives a literal
+ * ${secret:, and anything else - including any other ${...} or $${...} - is left exactly as
+ * it is so it doesn't get in the way of other templating.
+ * 
+ * Most values don't contain placeholders at all, so the value is scanned once and handed back
+ * as the same instance unless something was actually replaced.
+ *
+ */
+public class InterpolatingSecretReplacer implements SecretReplacer {
+	private static final String PLACEHOLDER_START= "${secret:";
+	private static final String ESCAPE= "$" + PLACEHOLDER_START;
+	
+	private @NonNull SecretProvider secretProvider;
+	
+	private InterpolatingSecretReplacer(@NonNull SecretProvider secretProvider) {
+		this.secretProvider= secretProvider;
+	}
+	
+	public static @NonNull SecretReplacer Create(
+			@NonNull SecretProvider secretProvider)
+	{
+		return new InterpolatingSecretReplacer(secretProvider);
+	}
+	
+	@Override
+	public @NonNull String replace(
+			@NonNull String input) throws ConfigException
+	{
+		int dollarOffset= input.indexOf('$');
+		if (dollarOffset < 0) {
+			return input;
+		}
+		
+		// Only built once there is something to change
+		StringBuilder output= null;
+		
+		// Everything before this has been copied to the output
+		int copiedTo= 0;
+		
+		int position= dollarOffset;
+		while (position >= 0) {
+			if (input.startsWith(ESCAPE, position)) {
+				if (output == null) {
+					output= new StringBuilder(input.length());
+				}
+				
+				// Drop the first dollar sign, and skip the rest so it isn't seen as a start
+				output.append(input, copiedTo, position);
+				copiedTo= position + 1;
+				position+= ESCAPE.length();
+			} else if (input.startsWith(PLACEHOLDER_START, position)) {
+				int nameStart= position + PLACEHOLDER_START.length();
+				int nameEnd= input.indexOf('}', nameStart);
+				if (nameEnd < 0) {
+					throw new ConfigException("Secret placeholder is missing its closing brace");
+				}
+				if (nameEnd == nameStart) {
+					throw new ConfigException("Secret placeholder has no name");
+				}
+				
+				@SuppressWarnings("null")
+				@NonNull String name= input.substring(nameStart, nameEnd);
+				
+				if (output == null) {
+					output= new StringBuilder(input.length() + 32);
+				}
+				
+				output.append(input, copiedTo, position);
+				output.append(secretProvider.getSecret(name));
+				copiedTo= nameEnd + 1;
+				position= nameEnd + 1;
+			} else {
+				position++;
+			}
+			
+			position= input.indexOf('$', position);
+		}
+		
+		if (output == null) {
+			return input;
+		}
+		
+		output.append(input, copiedTo, input.length());
+		
+		@SuppressWarnings("null")
+		@NonNull String rval= output.toString();
+		
+		return rval;
+	}
+}
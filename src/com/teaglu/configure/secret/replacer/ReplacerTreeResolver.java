@@ -0,0 +1,98 @@
+/****************************************************************************
+ * Copyright 2022 Teaglu, LLC                                               *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *   http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ ****************************************************************************/
+
+package com.teaglu.configure.secret.replacer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.jdt.annotation.NonNull;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.teaglu.composite.Composite;
+import com.teaglu.composite.exception.SchemaException;
+import com.teaglu.configure.config.tree.CompositeTree;
+import com.teaglu.configure.exception.ConfigException;
+import com.teaglu.configure.secret.SecretReplacer;
+import com.teaglu.configure.secret.SecretTreeResolver;
+
+/**
+ * ReplacerTreeResolver
+ * 
+ * Resolves a whole configuration by running every string value through a SecretReplacer.
+ * This works with any replacer, including InterpolatingSecretReplacer.  A value that appears
+ * more than once is only run through the replacer the first time.
+ *
+ */
+public class ReplacerTreeResolver implements SecretTreeResolver {
+	private @NonNull SecretReplacer secretReplacer;
+	
+	private ReplacerTreeResolver(@NonNull SecretReplacer secretReplacer) {
+		this.secretReplacer= secretReplacer;
+	}
+	
+	public static @NonNull SecretTreeResolver Create(
+			@NonNull SecretReplacer secretReplacer)
+	{
+		return new ReplacerTreeResolver(secretReplacer);
+	}
+	
+	@Override
+	public @NonNull Composite resolve(
+			@NonNull Composite config) throws ConfigException
+	{
+		JsonElement tree= CompositeTree.Convert(config);
+		if ((tree == null) || !tree.isJsonObject()) {
+			throw new ConfigException(
+					"Configuration can't be converted to a tree for secret resolution");
+		}
+		
+		Map<@NonNull String, @NonNull String> resolvedValues= new HashMap<>();
+		
+		JsonElement resolved= TreeRewriter.Rewrite(tree, value -> {
+			String rval= resolvedValues.get(value);
+			if (rval == null) {
+				rval= secretReplacer.replace(value);
+				resolvedValues.put(value, rval);
+			}
+			
+			// Hand back this instance when nothing changed, so the branch isn't copied
+			return rval.equals(value) ? value : rval;
+		});
+		
+		if (resolved == tree) {
+			return config;
+		}
+		
+		return rebuild(config, resolved);
+	}
+	
+	private static @NonNull Composite rebuild(
+			@NonNull Composite config,
+			@NonNull JsonElement resolved) throws ConfigException
+	{
+		try {
+			@SuppressWarnings("null") @NonNull JsonObject object= resolved.getAsJsonObject();
+			
+			// Hand back the same format that came in
+			return CompositeTree.Rebuild(config, object);
+		} catch (SchemaException e) {
+			throw new ConfigException(
+					"Unable to rebuild configuration after secret resolution", e);
+		}
+	}
+}
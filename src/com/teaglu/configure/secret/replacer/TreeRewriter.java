@@ -0,0 +1,132 @@
+/****************************************************************************
+ * Copyright 2022 Teaglu, LLC                                               *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *   http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ ****************************************************************************/
+
+package com.teaglu.configure.secret.replacer;
+
+import java.util.Map;
+
+import org.eclipse.jdt.annotation.NonNull;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.teaglu.configure.exception.ConfigException;
+
+/**
+ * TreeRewriter
+ * 
+ * Rewrites the string values of a JSON tree.  Branches that don't change are shared with the
+ * original rather than copied, and the original is never modified - so neither tree may be
+ * modified afterwards either.
+ *
+ */
+class TreeRewriter {
+	private TreeRewriter() {}
+	
+	/**
+	 * Rewrite
+	 * 
+	 * Rewrite a single string value
+	 */
+	interface Rewrite {
+		/**
+		 * apply
+		 * 
+		 * @param value						Original value
+		 * 
+		 * @return							New value, or the same instance if unchanged
+		 * 
+		 * @throws ConfigException			Unable to rewrite the value
+		 */
+		@NonNull String apply(@NonNull String value) throws ConfigException;
+	}
+	
+	/**
+	 * Rewrite
+	 * 
+	 * Rewrite every string value in a tree
+	 * 
+	 * @param element					Tree
+	 * @param rewrite					Rewrite to apply
+	 * 
+	 * @return							Rewritten tree, or the same instance if nothing changed
+	 * 
+	 * @throws ConfigException			Rewrite failed
+	 */
+	static @NonNull JsonElement Rewrite(
+			@NonNull JsonElement element,
+			@NonNull Rewrite rewrite) throws ConfigException
+	{
+		if (element.isJsonObject()) {
+			JsonObject object= element.getAsJsonObject();
+			JsonObject copy= null;
+			
+			for (Map.Entry<String, JsonElement> entry : object.entrySet()) {
+				@SuppressWarnings("null")
+				@NonNull JsonElement value= entry.getValue();
+				
+				JsonElement rewritten= Rewrite(value, rewrite);
+				if ((rewritten != value) && (copy == null)) {
+					// First change - copy everything up to here
+					copy= new JsonObject();
+					for (Map.Entry<String, JsonElement> earlier : object.entrySet()) {
+						if (earlier.getKey().equals(entry.getKey())) {
+							break;
+						}
+						copy.add(earlier.getKey(), earlier.getValue());
+					}
+				}
+				if (copy != null) {
+					copy.add(entry.getKey(), rewritten);
+				}
+			}
+			
+			return (copy == null) ? element : copy;
+		} else if (element.isJsonArray()) {
+			JsonArray array= element.getAsJsonArray();
+			JsonArray copy= null;
+			
+			for (int i= 0; i < array.size(); i++) {
+				@SuppressWarnings("null")
+				@NonNull JsonElement value= array.get(i);
+				
+				JsonElement rewritten= Rewrite(value, rewrite);
+				if ((rewritten != value) && (copy == null)) {
+					copy= new JsonArray(array.size());
+					for (int j= 0; j < i; j++) {
+						copy.add(array.get(j));
+					}
+				}
+				if (copy != null) {
+					copy.add(rewritten);
+				}
+			}
+			
+			return (copy == null) ? element : copy;
+		} else if (element.isJsonPrimitive() && element.getAsJsonPrimitive().isString()) {
+			@SuppressWarnings("null")
+			@NonNull String value= element.getAsString();
+			
+			String rewritten= rewrite.apply(value);
+			if (rewritten != value) {
+				return new JsonPrimitive(rewritten);
+			}
+		}
+		
+		return element;
+	}
+}
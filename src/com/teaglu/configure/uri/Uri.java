@@ -74,6 +74,16 @@ public interface Uri {
 	 * @return							Local filename
 	 */
 	public @NonNull String getPathAsLocal();
+	
+	/**
+	 * getNonLocalPart
+	 * 
+	 * Return the URI without the local section, which identifies the resource regardless of
+	 * any local processing options.
+	 * 
+	 * @return							URI up to the last hash sign
+	 */
+	public @NonNull String getNonLocalPart();
 
 	/**
 	 * getLocalArgument
@@ -183,6 +183,14 @@ public class UriImpl implements Uri {
 		return new UriImpl(configString);
 	}
 	
+	@Override
+	public @NonNull String getNonLocalPart() {
+		@SuppressWarnings("null")
+		@NonNull String rval= nonLocalPart;
+		
+		return rval;
+	}
+	
 	public @NonNull String getPathAsLocal() {
 		StringBuilder pathBuild= new StringBuilder();
 
@@ -15,6 +15,7 @@
  ****************************************************************************/
 
 module com.teaglu.configure {
+	requires java.net.http;
 	requires org.eclipse.jdt.annotation;
 
 	requires software.amazon.awssdk.awscore;
@@ -28,16 +29,21 @@ module com.teaglu.configure {
 	requires software.amazon.awssdk.utils;
 	
 	requires org.slf4j;
+	requires org.yaml.snakeyaml;
 	
 	requires transitive com.teaglu.composite;
 	requires software.amazon.awssdk.services.cloudwatch;
 	
+	exports com.teaglu.configure.bootstrap;
 	exports com.teaglu.configure.exception;
 	
 	exports com.teaglu.configure.config;
+	exports com.teaglu.configure.config.delta;
+	exports com.teaglu.configure.config.hasher;
 	exports com.teaglu.configure.config.manager;
 	exports com.teaglu.configure.config.parser;
 	exports com.teaglu.configure.config.source;
+	exports com.teaglu.configure.config.tree;
 
 	exports com.teaglu.configure.secret;
 	exports com.teaglu.configure.secret.provider;
@@ -0,0 +1,172 @@
+/****************************************************************************
+ * Copyright 2022 Teaglu, LLC                                               *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *   http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ ****************************************************************************/
+
+package com.teaglu.configure.bootstrap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpServer;
+import com.teaglu.composite.Composite;
+import com.teaglu.composite.json.JsonCompositeImpl;
+import com.teaglu.configure.config.ConfigSource;
+import com.teaglu.configure.config.ConfigTarget;
+import com.teaglu.configure.config.manager.PollingConfigManager;
+import com.teaglu.configure.exception.ConfigException;
+import com.teaglu.configure.secret.SecretProvider;
+
+/**
+ * BootstrapTest
+ * 
+ * Startup has one deadline, and has to keep it even when the configuration server never
+ * answers.  Inside the deadline a rejected configuration is only a reason to try again.
+ *
+ */
+public class BootstrapTest {
+	private HttpServer server;
+	
+	// Holds every request to the silent server until the test is over
+	private final CountDownLatch released= new CountDownLatch(1);
+	
+	private final AtomicInteger applyCount= new AtomicInteger();
+	
+	@BeforeEach
+	public void setUp() throws Exception {
+		server= HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.createContext("/config", exchange -> {
+			try {
+				released.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			exchange.close();
+		});
+		server.start();
+	}
+	
+	@AfterEach
+	public void tearDown() {
+		released.countDown();
+		server.stop(0);
+	}
+	
+	private ConfigTarget countingTarget(int failures) {
+		return new ConfigTarget() {
+			@Override
+			public void apply(Composite config) throws Exception {
+				if (applyCount.incrementAndGet() <= failures) {
+					throw new IllegalStateException("Not ready for this configuration yet");
+				}
+			}
+			
+			@Override
+			public void shutdown() {
+			}
+		};
+	}
+	
+	@Test
+	public void deadlineHoldsAgainstSilentServer() throws Exception {
+		String configUri= "http://" + server.getAddress().getHostString() + ":" +
+				server.getAddress().getPort() + "/config";
+		
+		long startNanos= System.nanoTime();
+		assertThrows(ConfigException.class, () -> Bootstrap.StartFromStrings(
+				null, configUri, provider -> countingTarget(0), 500));
+		long elapsedMillis= TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+		
+		// The deadline, plus at most the moment the poll is given to notice the interrupt
+		assertTrue(elapsedMillis < 2500, "Startup took " + elapsedMillis + "ms");
+		assertEquals(0, applyCount.get());
+	}
+	
+	@Test
+	public void rejectedConfigurationIsRetried() throws Exception {
+		Composite config= new JsonCompositeImpl(new JsonObject());
+		
+		ConfigSource source= new ConfigSource() {
+			@Override
+			public boolean needsReload() {
+				return true;
+			}
+			
+			@Override
+			public Composite reload() {
+				return config;
+			}
+			
+			@Override
+			public void reportSuccess() {
+			}
+			
+			@Override
+			public void reportFailure(String code, String message, Throwable cause) {
+			}
+		};
+		
+		Bootstrap bootstrap= Bootstrap.Start(
+				() -> new SecretProvider() {
+					@Override
+					public String getSecret(String name) throws ConfigException {
+						throw new ConfigException("No secrets here");
+					}
+				},
+				(target, replacer) -> PollingConfigManager.Create(source, target, 1),
+				provider -> countingTarget(1),
+				10_000);
+		
+		bootstrap.getConfigManager().stop();
+		assertEquals(2, applyCount.get());
+	}
+	
+	@Test
+	public void providerClosedWhenManagerFails() throws Exception {
+		CountDownLatch closed= new CountDownLatch(1);
+		
+		assertThrows(ConfigException.class, () -> Bootstrap.Start(
+				() -> new SecretProvider() {
+					@Override
+					public String getSecret(String name) throws ConfigException {
+						throw new ConfigException("No secrets here");
+					}
+					
+					@Override
+					public void close() {
+						closed.countDown();
+					}
+				},
+				(target, replacer) -> {
+					throw new ConfigException("No such configuration");
+				},
+				provider -> countingTarget(0),
+				10_000));
+		
+		assertTrue(closed.await(5, TimeUnit.SECONDS));
+	}
+}
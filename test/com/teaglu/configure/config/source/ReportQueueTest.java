@@ -0,0 +1,108 @@
+/****************************************************************************
+ * Copyright 2022 Teaglu, LLC                                               *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *   http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ ****************************************************************************/
+
+package com.teaglu.configure.config.source;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * ReportQueueTest
+ * 
+ * A report to an endpoint that hangs must not hold up reports to other endpoints, and a
+ * queue has to drop a report it has already delivered.
+ *
+ */
+public class ReportQueueTest {
+	private final CountDownLatch release= new CountDownLatch(1);
+	
+	@AfterEach
+	public void tearDown() {
+		release.countDown();
+	}
+	
+	@Test
+	public void hungEndpointDoesNotBlockOthers() throws Exception {
+		ReportQueue hung= ReportQueue.Create("hung");
+		
+		CountDownLatch hungStarted= new CountDownLatch(1);
+		hung.submit("confirm:1", () -> {
+			hungStarted.countDown();
+			release.await();
+		});
+		assertTrue(hungStarted.await(10, TimeUnit.SECONDS));
+		
+		// Several other sources all get their reports out while the first one is stuck
+		CountDownLatch delivered= new CountDownLatch(3);
+		for (int i= 0; i < 3; i++) {
+			ReportQueue other= ReportQueue.Create("other" + i);
+			other.submit("confirm:1", delivered::countDown);
+		}
+		
+		assertTrue(delivered.await(10, TimeUnit.SECONDS));
+	}
+	
+	@Test
+	public void deliveredReportIsNotRepeated() throws Exception {
+		ReportQueue queue= ReportQueue.Create("test");
+		
+		List<String> sent= new CopyOnWriteArrayList<>();
+		CountDownLatch done= new CountDownLatch(2);
+		
+		queue.submit("confirm:1", () -> { sent.add("confirm:1"); done.countDown(); });
+		waitForIdle(sent, 1);
+		
+		queue.submit("confirm:1", () -> { sent.add("again"); done.countDown(); });
+		queue.submit("reject:2", () -> { sent.add("reject:2"); done.countDown(); });
+		
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		assertEquals(List.of("confirm:1", "reject:2"), sent);
+	}
+	
+	@Test
+	public void failedReportIsRetried() throws Exception {
+		ReportQueue queue= ReportQueue.Create("test");
+		
+		AtomicInteger attempts= new AtomicInteger();
+		CountDownLatch delivered= new CountDownLatch(1);
+		
+		queue.submit("confirm:1", () -> {
+			if (attempts.incrementAndGet() == 1) {
+				throw new Exception("Endpoint down");
+			}
+			delivered.countDown();
+		});
+		
+		assertTrue(delivered.await(10, TimeUnit.SECONDS));
+		assertEquals(2, attempts.get());
+	}
+	
+	private static void waitForIdle(List<String> sent, int count) throws InterruptedException {
+		long deadline= System.currentTimeMillis() + 10_000;
+		while ((sent.size() < count) && (System.currentTimeMillis() < deadline)) {
+			Thread.sleep(10);
+		}
+	}
+}
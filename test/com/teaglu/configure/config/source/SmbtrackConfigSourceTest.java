@@ -0,0 +1,148 @@
+/****************************************************************************
+ * Copyright 2022 Teaglu, LLC                                               *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *   http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ ****************************************************************************/
+
+package com.teaglu.configure.config.source;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.teaglu.configure.config.WatchableConfigSource;
+
+/**
+ * SmbtrackConfigSourceTest
+ * 
+ * Runs the long-poll chain against a stub server on the loopback interface, covering a change
+ * (200), a timeout with no change (304), and servers that don't support watching.
+ *
+ */
+public class SmbtrackConfigSourceTest {
+	private static final String TOKEN= "test-token";
+	private static final String ETAG= "\"v1\"";
+	private static final byte[] BODY= "{\"name\":\"value\"}".getBytes(StandardCharsets.UTF_8);
+	
+	private HttpServer server;
+	private WatchableConfigSource source;
+	
+	// Status the stub answers watch requests with
+	private volatile int watchStatus;
+	
+	// If-None-Match of every watch request, and a permit for each one
+	private final List<String> watchEtags= new CopyOnWriteArrayList<>();
+	private final Semaphore watchRequests= new Semaphore(0);
+	
+	private final CountDownLatch changed= new CountDownLatch(1);
+	
+	@BeforeEach
+	public void setUp() throws Exception {
+		server= HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.createContext("/api/v1/cfg/direct/" + TOKEN, this::serve);
+		server.start();
+		
+		String baseUrl= "http://" + server.getAddress().getHostString() + ":" +
+				server.getAddress().getPort();
+		
+		source= (WatchableConfigSource)SmbtrackConfigSource.CreateWithBaseUrl(
+				baseUrl, TOKEN, HttpSourceOptions.Default().withLongPollSeconds(5));
+		
+		// The chain needs an ETag from a regular poll before it can ask about changes
+		assertTrue(source.needsReload());
+		source.reload();
+	}
+	
+	@AfterEach
+	public void tearDown() {
+		source.stopWatching();
+		server.stop(0);
+	}
+	
+	private void serve(HttpExchange exchange) throws IOException {
+		try (exchange) {
+			String path= exchange.getRequestURI().getPath();
+			
+			if (path.endsWith("/watch")) {
+				watchEtags.add(exchange.getRequestHeaders().getFirst("If-None-Match"));
+				watchRequests.release();
+				
+				exchange.sendResponseHeaders(watchStatus, -1);
+			} else {
+				exchange.getResponseHeaders().set("Content-Type", "application/json");
+				exchange.getResponseHeaders().set("ETag", ETAG);
+				exchange.sendResponseHeaders(200, BODY.length);
+				
+				try (OutputStream output= exchange.getResponseBody()) {
+					output.write(BODY);
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void changeWakesListener() throws Exception {
+		watchStatus= 200;
+		source.startWatching(changed::countDown);
+		
+		assertTrue(changed.await(10, TimeUnit.SECONDS));
+		assertEquals(ETAG, watchEtags.get(0));
+	}
+	
+	@Test
+	public void timeoutWatchesAgain() throws Exception {
+		watchStatus= 304;
+		source.startWatching(changed::countDown);
+		
+		assertTrue(watchRequests.tryAcquire(3, 10, TimeUnit.SECONDS));
+		for (String etag : watchEtags) {
+			assertEquals(ETAG, etag);
+		}
+		assertEquals(1, changed.getCount());
+	}
+	
+	@ParameterizedTest
+	@ValueSource(ints= { 404, 405, 501 })
+	public void unsupportedFallsBackToPolling(int status) throws Exception {
+		watchStatus= status;
+		source.startWatching(changed::countDown);
+		
+		assertTrue(watchRequests.tryAcquire(1, 10, TimeUnit.SECONDS));
+		
+		// Give a mistaken retry plenty of time to show up
+		assertFalse(watchRequests.tryAcquire(1, 1, TimeUnit.SECONDS));
+		assertEquals(1, changed.getCount());
+		
+		// Regular polling carries on
+		assertFalse(source.needsReload());
+	}
+}
@@ -0,0 +1,145 @@
+/****************************************************************************
+ * Copyright 2022 Teaglu, LLC                                               *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *   http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ ****************************************************************************/
+
+package com.teaglu.configure.config.source;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.google.gson.JsonElement;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.teaglu.composite.Composite;
+import com.teaglu.configure.config.ConfigSource;
+import com.teaglu.configure.config.tree.CompositeTree;
+import com.teaglu.configure.config.tree.TreeFormat;
+
+/**
+ * UrlConfigSourceTest
+ * 
+ * Fetches from a stub server on the loopback interface.  Content types with parameters have
+ * to map to the same parser as the bare media type, and once a configuration is loaded the
+ * next poll has to be conditional on it.
+ *
+ */
+public class UrlConfigSourceTest {
+	private static final String ETAG= "\"v1\"";
+	
+	private HttpServer server;
+	private String url;
+	
+	private volatile String contentType;
+	private volatile byte[] body;
+	
+	// If-None-Match of every request
+	private final List<String> requestEtags= new CopyOnWriteArrayList<>();
+	
+	@BeforeEach
+	public void setUp() throws Exception {
+		server= HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.createContext("/config", this::serve);
+		server.start();
+		
+		url= "http://" + server.getAddress().getHostString() + ":" +
+				server.getAddress().getPort() + "/config";
+	}
+	
+	@AfterEach
+	public void tearDown() {
+		server.stop(0);
+	}
+	
+	private void serve(HttpExchange exchange) throws IOException {
+		try (exchange) {
+			String etag= exchange.getRequestHeaders().getFirst("If-None-Match");
+			requestEtags.add(String.valueOf(etag));
+			
+			exchange.getResponseHeaders().set("ETag", ETAG);
+			if (ETAG.equals(etag)) {
+				exchange.sendResponseHeaders(304, -1);
+				return;
+			}
+			
+			exchange.getResponseHeaders().set("Content-Type", contentType);
+			exchange.sendResponseHeaders(200, body.length);
+			
+			try (OutputStream output= exchange.getResponseBody()) {
+				output.write(body);
+			}
+		}
+	}
+	
+	private void check(String type, String text, TreeFormat format) throws Exception {
+		contentType= type;
+		body= text.getBytes(StandardCharsets.UTF_8);
+		
+		ConfigSource source= UrlConfigSource.Create(url);
+		
+		assertTrue(source.needsReload());
+		Composite config= source.reload();
+		
+		assertEquals(format, CompositeTree.GetFormat(config));
+		
+		JsonElement tree= CompositeTree.Convert(config);
+		assertEquals("value", tree.getAsJsonObject().get("name").getAsString());
+	}
+	
+	@Test
+	public void jsonWithCharsetIsParsed() throws Exception {
+		check("application/json; charset=utf-8", "{\"name\":\"value\"}", TreeFormat.JSON);
+	}
+	
+	@Test
+	public void yamlWithCharsetIsParsed() throws Exception {
+		check("Application/YAML;charset=UTF-8", "name: value\n", TreeFormat.YAML);
+	}
+	
+	@Test
+	public void unknownContentTypeIsNotMapped() {
+		assertNull(HttpConfigLoader.FormatFor("text/plain; charset=utf-8"));
+		assertEquals(TreeFormat.JSON, HttpConfigLoader.FormatFor(null));
+	}
+	
+	@Test
+	public void pollAfterLoadIsConditional() throws Exception {
+		contentType= "application/json";
+		body= "{\"name\":\"value\"}".getBytes(StandardCharsets.UTF_8);
+		
+		ConfigSource source= UrlConfigSource.Create(url);
+		
+		assertTrue(source.needsReload());
+		source.reload();
+		
+		assertFalse(source.needsReload());
+		assertFalse(source.isFetchFailing());
+		
+		assertEquals(List.of("null", ETAG), requestEtags);
+	}
+}
@@ -0,0 +1,108 @@
+/****************************************************************************
+ * Copyright 2022 Teaglu, LLC                                               *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *   http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ ****************************************************************************/
+
+package com.teaglu.configure.config.tree;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.teaglu.composite.Composite;
+import com.teaglu.configure.config.ConfigHasher;
+import com.teaglu.configure.config.hasher.Fnv64ConfigHasher;
+import com.teaglu.configure.config.hasher.Sha256ConfigHasher;
+
+/**
+ * CompositeTreeTest
+ * 
+ * Parses the same configuration as JSON and YAML.  Both have to expose the same tree and
+ * digest, and a rebuilt configuration has to come back in the format it started in.
+ *
+ */
+public class CompositeTreeTest {
+	private static final String JSON=
+			"{\"name\":\"app\",\"port\":8080,\"debug\":false,\"ratio\":0.5," +
+			"\"hosts\":[\"a\",\"b\"],\"db\":{\"user\":\"svc\",\"pool\":4}}";
+	
+	private static final String YAML=
+			"db:\n" +
+			"  pool: 4\n" +
+			"  user: svc\n" +
+			"hosts:\n" +
+			"  - a\n" +
+			"  - b\n" +
+			"debug: false\n" +
+			"ratio: 0.5\n" +
+			"port: 8080\n" +
+			"name: app\n";
+	
+	@Test
+	public void yamlAndJsonExposeTheSameTree() throws Exception {
+		JsonElement jsonTree= CompositeTree.Convert(CompositeTree.Parse(JSON, TreeFormat.JSON));
+		JsonElement yamlTree= CompositeTree.Convert(CompositeTree.Parse(YAML, TreeFormat.YAML));
+		
+		assertNotNull(yamlTree);
+		assertEquals(jsonTree, yamlTree);
+	}
+	
+	@Test
+	public void yamlAndJsonDigestTheSame() throws Exception {
+		Composite json= CompositeTree.Parse(JSON, TreeFormat.JSON);
+		Composite yaml= CompositeTree.Parse(YAML, TreeFormat.YAML);
+		
+		for (ConfigHasher hasher : new ConfigHasher[] {
+				Sha256ConfigHasher.Create(), Fnv64ConfigHasher.Create() })
+		{
+			String digest= hasher.hash(yaml);
+			
+			assertNotNull(digest);
+			assertEquals(hasher.hash(json), digest);
+		}
+	}
+	
+	@Test
+	public void jsonTreeIsNotCopied() throws Exception {
+		JsonObject tree= new JsonObject();
+		tree.addProperty("name", "app");
+		
+		Composite config= CompositeTree.FromJson(tree);
+		
+		assertSame(tree, CompositeTree.Convert(config));
+		assertSame(tree, CompositeTree.Convert(config));
+	}
+	
+	@Test
+	public void rebuildKeepsFormat() throws Exception {
+		Composite yaml= CompositeTree.Parse(YAML, TreeFormat.YAML);
+		
+		JsonObject changed= new JsonObject();
+		changed.addProperty("name", "other");
+		changed.addProperty("port", 9090);
+		
+		Composite rebuilt= CompositeTree.Rebuild(yaml, changed);
+		
+		assertEquals(TreeFormat.YAML, CompositeTree.GetFormat(rebuilt));
+		assertEquals(yaml.getClass(), rebuilt.getClass());
+		assertEquals(changed, CompositeTree.Convert(rebuilt));
+		
+		Composite json= CompositeTree.Rebuild(CompositeTree.Parse(JSON, TreeFormat.JSON), changed);
+		assertEquals(TreeFormat.JSON, CompositeTree.GetFormat(json));
+	}
+}
@@ -0,0 +1,210 @@
+/****************************************************************************
+ * Copyright 2022 Teaglu, LLC                                               *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *   http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ ****************************************************************************/
+
+package com.teaglu.configure.config.tree;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * SnapshotFileTest
+ * 
+ * Writes snapshots to a scratch directory and reads them back, then damages them in each of
+ * the ways the header is meant to catch.  Every kind of damage has to come back as an
+ * IOException rather than a payload.
+ *
+ */
+public class SnapshotFileTest {
+	private static final int MAGIC= 0x54545354;
+	
+	// Offsets into the header: magic, version, flags, CRC, payload length
+	private static final int VERSION_OFFSET= 4;
+	private static final int CRC_OFFSET= 8;
+	private static final int HEADER_SIZE= 16;
+	
+	private final SnapshotFile snapshotFile= SnapshotFile.Create(MAGIC, (short)1);
+	
+	private Path directory;
+	private Path file;
+	
+	@BeforeEach
+	public void setUp() throws Exception {
+		directory= Files.createTempDirectory("snapshot-test");
+		file= directory.resolve("test.snap");
+	}
+	
+	@AfterEach
+	public void tearDown() throws Exception {
+		try (Stream<Path> paths= Files.walk(directory)) {
+			for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+				Files.deleteIfExists(path);
+			}
+		}
+	}
+	
+	private static byte[] payloadOf(ByteBuffer buffer) {
+		byte[] rval= new byte[buffer.remaining()];
+		buffer.get(rval);
+		return rval;
+	}
+	
+	private byte[] writeSample() throws IOException {
+		byte[] payload= "some configuration payload".getBytes(StandardCharsets.UTF_8);
+		snapshotFile.write(file, (short)0x0005, payload);
+		
+		return payload;
+	}
+	
+	private void damage(int offset) throws IOException {
+		byte[] data= Files.readAllBytes(file);
+		data[offset]^= 0x01;
+		Files.write(file, data);
+	}
+	
+	@Test
+	public void payloadRoundTrips() throws Exception {
+		byte[] payload= writeSample();
+		
+		SnapshotFile.Contents contents= snapshotFile.read(file);
+		assertEquals((short)0x0005, contents.getFlags());
+		assertArrayEquals(payload, payloadOf(contents.getPayload()));
+		
+		// The temporary file is gone once the rename is done
+		try (Stream<Path> paths= Files.list(directory)) {
+			assertEquals(1, paths.count());
+		}
+	}
+	
+	@Test
+	public void rewriteReplacesSnapshot() throws Exception {
+		writeSample();
+		
+		byte[] replacement= new byte[] { 1, 2, 3 };
+		snapshotFile.write(file, (short)0, replacement);
+		
+		SnapshotFile.Contents contents= snapshotFile.read(file);
+		assertEquals((short)0, contents.getFlags());
+		assertArrayEquals(replacement, payloadOf(contents.getPayload()));
+	}
+	
+	@Test
+	public void emptyPayloadRoundTrips() throws Exception {
+		snapshotFile.write(file, (short)0, new byte[0]);
+		
+		assertEquals(0, snapshotFile.read(file).getPayload().remaining());
+	}
+	
+	@Test
+	public void missingFileIsReported() {
+		assertThrows(NoSuchFileException.class, () -> snapshotFile.read(file));
+	}
+	
+	@Test
+	public void damagedPayloadFailsChecksum() throws Exception {
+		writeSample();
+		damage(HEADER_SIZE + 3);
+		
+		assertThrows(IOException.class, () -> snapshotFile.read(file));
+	}
+	
+	@Test
+	public void damagedChecksumIsRejected() throws Exception {
+		writeSample();
+		damage(CRC_OFFSET);
+		
+		assertThrows(IOException.class, () -> snapshotFile.read(file));
+	}
+	
+	@Test
+	public void truncatedFileIsRejected() throws Exception {
+		writeSample();
+		byte[] data= Files.readAllBytes(file);
+		
+		for (int length : new int[] { 0, HEADER_SIZE - 1, HEADER_SIZE, data.length - 1 }) {
+			Files.write(file, Arrays.copyOf(data, length));
+			
+			assertThrows(IOException.class, () -> snapshotFile.read(file));
+		}
+	}
+	
+	@Test
+	public void trailingGarbageIsRejected() throws Exception {
+		writeSample();
+		byte[] data= Files.readAllBytes(file);
+		Files.write(file, Arrays.copyOf(data, data.length + 1));
+		
+		assertThrows(IOException.class, () -> snapshotFile.read(file));
+	}
+	
+	@Test
+	public void otherKindOfSnapshotIsRejected() throws Exception {
+		writeSample();
+		
+		assertThrows(IOException.class,
+				() -> SnapshotFile.Create(MAGIC + 1, (short)1).read(file));
+	}
+	
+	@Test
+	public void otherVersionIsRejected() throws Exception {
+		writeSample();
+		damage(VERSION_OFFSET + 1);
+		
+		assertThrows(IOException.class, () -> snapshotFile.read(file));
+	}
+	
+	@Test
+	public void stringsRoundTrip() throws Exception {
+		ByteArrayOutputStream buffer= new ByteArrayOutputStream();
+		DataOutputStream output= new DataOutputStream(buffer);
+		SnapshotFile.WriteString(output, "application/json");
+		SnapshotFile.WriteString(output, null);
+		SnapshotFile.WriteString(output, "");
+		output.flush();
+		
+		ByteBuffer input= ByteBuffer.wrap(buffer.toByteArray());
+		assertEquals("application/json", SnapshotFile.ReadString(input));
+		assertNull(SnapshotFile.ReadString(input));
+		assertEquals("", SnapshotFile.ReadString(input));
+		assertFalse(input.hasRemaining());
+	}
+	
+	@Test
+	public void stringPastEndIsRejected() {
+		ByteBuffer input= ByteBuffer.allocate(6);
+		input.putInt(100).put((byte)'a').put((byte)'b').flip();
+		
+		assertThrows(IOException.class, () -> SnapshotFile.ReadString(input));
+	}
+}
@@ -0,0 +1,170 @@
+/****************************************************************************
+ * Copyright 2022 Teaglu, LLC                                               *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *   http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ ****************************************************************************/
+
+package com.teaglu.configure.config.tree;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+
+/**
+ * TreeEncodingTest
+ * 
+ * Round-trips trees through the binary encoding, with integers on either side of every varint
+ * and zigzag boundary, and checks that damaged data only ever fails with an IOException.
+ *
+ */
+public class TreeEncodingTest {
+	private static final long[] INTEGERS= {
+			0, 1, -1, 63, -64, 64, -65, 127, 128, 8191, -8192, 8192,
+			Integer.MAX_VALUE, Integer.MIN_VALUE, (long)Integer.MAX_VALUE + 1,
+			Long.MAX_VALUE, Long.MIN_VALUE, Long.MAX_VALUE - 1, Long.MIN_VALUE + 1
+	};
+	
+	private static JsonElement decode(byte[] data) throws IOException {
+		return TreeEncoding.Decode(ByteBuffer.wrap(data));
+	}
+	
+	@Test
+	public void integersRoundTrip() throws Exception {
+		for (long value : INTEGERS) {
+			JsonElement decoded= decode(TreeEncoding.Encode(new JsonPrimitive(value)));
+			
+			assertEquals(value, decoded.getAsLong());
+		}
+	}
+	
+	@Test
+	public void treeRoundTrips() throws Exception {
+		JsonObject tree= JsonParser.parseString(
+				"{\"name\":\"app\",\"empty\":\"\",\"unicode\":\"h\u00e9llo \u2603 \ud83d\ude00\"," +
+				"\"enabled\":true,\"disabled\":false,\"missing\":null,\"ratio\":0.25," +
+				"\"big\":123456789012345678901234567890,\"exp\":1e-7," +
+				"\"servers\":[{\"host\":\"a\",\"port\":80},{\"host\":\"b\",\"port\":443}]," +
+				"\"nested\":{\"list\":[[],[1,[2,[3]]],{}]}}").getAsJsonObject();
+		
+		JsonArray integers= new JsonArray();
+		for (long value : INTEGERS) {
+			integers.add(value);
+		}
+		tree.add("integers", integers);
+		
+		assertEquals(tree, decode(TreeEncoding.Encode(tree)));
+	}
+	
+	@Test
+	public void numberTextIsKept() throws Exception {
+		JsonObject tree= new JsonObject();
+		tree.add("price", new JsonPrimitive(new BigDecimal("1.50")));
+		tree.add("exp", JsonParser.parseString("2E+3"));
+		
+		JsonObject decoded= decode(TreeEncoding.Encode(tree)).getAsJsonObject();
+		
+		assertEquals("1.50", decoded.get("price").getAsString());
+		assertEquals("2E+3", decoded.get("exp").getAsString());
+	}
+	
+	@Test
+	public void repeatedKeysAreSharedAndDecoded() throws Exception {
+		JsonArray servers= new JsonArray();
+		for (int i= 0; i < 50; i++) {
+			JsonObject server= new JsonObject();
+			server.addProperty("host", "host" + i);
+			server.addProperty("port", 8000 + i);
+			servers.add(server);
+		}
+		JsonObject tree= new JsonObject();
+		tree.add("servers", servers);
+		
+		byte[] encoded= TreeEncoding.Encode(tree);
+		
+		assertEquals(tree, decode(encoded));
+		
+		// Each key is written out once, however many objects use it
+		String text= new String(encoded, StandardCharsets.ISO_8859_1);
+		assertEquals(text.indexOf("port"), text.lastIndexOf("port"));
+	}
+	
+	@Test
+	public void truncatedDataIsRejected() throws Exception {
+		JsonObject tree= JsonParser.parseString(
+				"{\"a\":\"text\",\"b\":[1,-300,2.5,null],\"c\":{\"a\":true}}").getAsJsonObject();
+		
+		byte[] encoded= TreeEncoding.Encode(tree);
+		for (int length= 0; length < encoded.length; length++) {
+			byte[] truncated= Arrays.copyOf(encoded, length);
+			
+			assertThrows(IOException.class, () -> decode(truncated));
+		}
+	}
+	
+	@Test
+	public void malformedDataIsRejected() throws Exception {
+		// Unknown tag
+		assertThrows(IOException.class, () -> decode(new byte[] { 42 }));
+		
+		// Integer varint that never ends
+		byte[] varint= new byte[12];
+		Arrays.fill(varint, (byte)0xFF);
+		varint[0]= 3;
+		assertThrows(IOException.class, () -> decode(varint));
+		
+		// Object whose key refers to a key that was never defined
+		assertThrows(IOException.class, () -> decode(new byte[] { 7, 1, 5, 0 }));
+		
+		// Count larger than the data that follows
+		assertThrows(IOException.class, () -> decode(new byte[] { 6, 100, 0 }));
+		
+		// Number whose text isn't a number
+		assertThrows(IOException.class, () -> decode(new byte[] { 4, 3, 'a', 'b', 'c' }));
+		assertThrows(IOException.class, () -> decode(new byte[] { 4, 1, '[' }));
+	}
+	
+	@Test
+	public void corruptDataOnlyFailsWithIOException() throws Exception {
+		JsonObject tree= JsonParser.parseString(
+				"{\"name\":\"app\",\"port\":8080,\"ratio\":0.5,\"hosts\":[\"a\",\"b\"]," +
+				"\"db\":{\"name\":\"x\",\"pool\":-4,\"on\":true,\"off\":null}}").getAsJsonObject();
+		
+		byte[] encoded= TreeEncoding.Encode(tree);
+		Random random= new Random(1234);
+		
+		for (int i= 0; i < 5000; i++) {
+			byte[] damaged= encoded.clone();
+			damaged[random.nextInt(damaged.length)]^= (byte)(1 << random.nextInt(8));
+			
+			try {
+				decode(damaged);
+			} catch (IOException e) {
+				// Expected for most damage
+			}
+		}
+	}
+}
@@ -0,0 +1,257 @@
+/****************************************************************************
+ * Copyright 2022 Teaglu, LLC                                               *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *   http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ ****************************************************************************/
+
+package com.teaglu.configure.secret.provider;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.google.gson.JsonObject;
+import com.teaglu.composite.Composite;
+import com.teaglu.composite.json.JsonCompositeImpl;
+import com.teaglu.configure.secret.ResolvedConfigView;
+import com.teaglu.configure.secret.replacer.AtIdTreeResolver;
+
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.services.secretsmanager.SecretsManagerClient;
+import software.amazon.awssdk.services.secretsmanager.model.BatchGetSecretValueRequest;
+import software.amazon.awssdk.services.secretsmanager.model.BatchGetSecretValueResponse;
+import software.amazon.awssdk.services.secretsmanager.model.DescribeSecretResponse;
+import software.amazon.awssdk.services.secretsmanager.model.GetSecretValueResponse;
+import software.amazon.awssdk.services.secretsmanager.model.SecretValueEntry;
+import software.amazon.awssdk.services.secretsmanager.model.SecretsManagerException;
+
+/**
+ * AwsSecretProviderTest
+ * 
+ * Refreshes against a stand-in client whose policy doesn't allow DescribeSecret unless a test
+ * says otherwise, so every refresh downloads the secret again.  A refresh that finds the same
+ * values mustn't look like a rotation to anything caching resolved configurations.
+ *
+ */
+public class AwsSecretProviderTest {
+	private static final String SECRET_ID= "app-secrets";
+	
+	private volatile String secretString= "{\"db\":\"hunter2\"}";
+	private volatile String versionId= "v1";
+	private final AtomicInteger fetchCount= new AtomicInteger();
+	private final AtomicInteger describeCount= new AtomicInteger();
+	
+	// What DescribeSecret throws, or null to answer with the current version
+	private volatile SecretsManagerException describeFailure= failure(403, "AccessDeniedException");
+	
+	// What BatchGetSecretValue throws, or null to answer with every secret asked for
+	private volatile SecretsManagerException batchFailure;
+	private final AtomicInteger batchCount= new AtomicInteger();
+	
+	private SecretsManagerClient client;
+	
+	private AwsSecretProvider provider;
+	private ResolvedConfigView view;
+	private Composite config;
+	
+	@BeforeEach
+	public void setUp() throws Exception {
+		client= (SecretsManagerClient)Proxy.newProxyInstance(
+				SecretsManagerClient.class.getClassLoader(),
+				new Class<?>[] { SecretsManagerClient.class },
+				(proxy, method, args) -> {
+					switch (method.getName()) {
+					case "getSecretValue":
+						fetchCount.incrementAndGet();
+						return GetSecretValueResponse.builder()
+								.secretString(secretString)
+								.versionId(versionId)
+								.build();
+						
+					case "describeSecret":
+						describeCount.incrementAndGet();
+						if (describeFailure != null) {
+							throw describeFailure;
+						}
+						return DescribeSecretResponse.builder()
+								.versionIdsToStages(Map.of(versionId, List.of("AWSCURRENT")))
+								.build();
+						
+					case "batchGetSecretValue":
+						batchCount.incrementAndGet();
+						if (batchFailure != null) {
+							throw batchFailure;
+						}
+						
+						List<SecretValueEntry> entries= new ArrayList<>();
+						for (String id : ((BatchGetSecretValueRequest)args[0]).secretIdList()) {
+							entries.add(SecretValueEntry.builder()
+									.name(id)
+									.secretString(secretString)
+									.versionId(versionId)
+									.build());
+						}
+						return BatchGetSecretValueResponse.builder()
+								.secretValues(entries)
+								.build();
+						
+					default:
+						throw new UnsupportedOperationException(method.getName());
+					}
+				});
+		
+		// No refresh schedule - the tests call refresh() themselves
+		provider= new AwsSecretProvider(List.of(SECRET_ID), Duration.ZERO, client);
+		view= ResolvedConfigView.Create(AtIdTreeResolver.Create(provider), provider);
+		
+		JsonObject tree= new JsonObject();
+		tree.addProperty("password", "@db");
+		config= new JsonCompositeImpl(tree);
+	}
+	
+	private static SecretsManagerException failure(int statusCode, String errorCode) {
+		return SecretsManagerException.builder()
+				.statusCode(statusCode)
+				.awsErrorDetails(AwsErrorDetails.builder().errorCode(errorCode).build())
+				.message(errorCode)
+				.build();
+	}
+	
+	private static String password(Composite resolved) {
+		return resolved.serialize(JsonObject.class).get("password").getAsString();
+	}
+	
+	@Test
+	public void firstResolveLoadsAndStaysCached() throws Exception {
+		assertEquals(0, fetchCount.get());
+		
+		Composite resolved= view.resolve(config);
+		
+		assertEquals(1, fetchCount.get());
+		assertEquals("hunter2", password(resolved));
+		assertSame(resolved, view.resolve(config));
+	}
+	
+	@Test
+	public void unchangedRefreshKeepsGeneration() throws Exception {
+		Composite resolved= view.resolve(config);
+		long generation= provider.getGeneration();
+		
+		provider.refresh();
+		
+		assertEquals(2, fetchCount.get());
+		assertEquals(generation, provider.getGeneration());
+		assertSame(resolved, view.resolve(config));
+		assertEquals("hunter2", password(resolved));
+	}
+	
+	@Test
+	public void rotatedRefreshBumpsGeneration() throws Exception {
+		Composite resolved= view.resolve(config);
+		long generation= provider.getGeneration();
+		
+		secretString= "{\"db\":\"correct-horse\"}";
+		versionId= "v2";
+		provider.refresh();
+		
+		assertNotEquals(generation, provider.getGeneration());
+		
+		Composite rotated= view.resolve(config);
+		assertNotSame(resolved, rotated);
+		assertEquals("correct-horse", password(rotated));
+	}
+	
+	@Test
+	public void accessDeniedStopsVersionCheck() throws Exception {
+		provider.getSecret("db");
+		provider.refresh();
+		provider.refresh();
+		
+		assertEquals(1, describeCount.get());
+		assertEquals(3, fetchCount.get());
+	}
+	
+	@Test
+	public void transientDescribeFailureKeepsVersionCheck() throws Exception {
+		provider.getSecret("db");
+		
+		describeFailure= failure(500, "InternalServiceError");
+		provider.refresh();
+		
+		assertEquals(1, describeCount.get());
+		assertEquals(2, fetchCount.get());
+		
+		// Once DescribeSecret works again an unchanged version means no download
+		describeFailure= null;
+		provider.refresh();
+		
+		assertEquals(2, describeCount.get());
+		assertEquals(2, fetchCount.get());
+	}
+	
+	@Test
+	public void transientBatchFailureKeepsBatching() throws Exception {
+		AwsSecretProvider merged= new AwsSecretProvider(
+				List.of("one", "two"), Duration.ZERO, client);
+		
+		batchFailure= failure(500, "InternalServiceError");
+		int fetches= fetchCount.get();
+		assertEquals("hunter2", merged.getSecret("db"));
+		
+		assertEquals(1, batchCount.get());
+		assertEquals(fetches + 2, fetchCount.get());
+		
+		batchFailure= null;
+		merged.refresh();
+		
+		assertEquals(2, batchCount.get());
+		assertEquals(fetches + 2, fetchCount.get());
+	}
+	
+	@Test
+	public void accessDeniedStopsBatching() throws Exception {
+		AwsSecretProvider merged= new AwsSecretProvider(
+				List.of("one", "two"), Duration.ZERO, client);
+		
+		batchFailure= failure(403, "AccessDeniedException");
+		merged.getSecret("db");
+		merged.refresh();
+		
+		assertEquals(1, batchCount.get());
+	}
+	
+	@Test
+	public void closeStopsRefresh() throws Exception {
+		AwsSecretProvider refreshing= new AwsSecretProvider(
+				List.of(SECRET_ID), Duration.ofMillis(20), client);
+		
+		refreshing.getSecret("db");
+		refreshing.close();
+		
+		int fetches= fetchCount.get();
+		Thread.sleep(150);
+		
+		assertEquals(fetches, fetchCount.get());
+	}
+}
@@ -0,0 +1,157 @@
+/****************************************************************************
+ * Copyright 2022 Teaglu, LLC                                               *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *   http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ ****************************************************************************/
+
+package com.teaglu.configure.secret.provider;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.teaglu.configure.exception.ConfigException;
+import com.teaglu.configure.exception.SecretNotFoundException;
+import com.teaglu.configure.secret.SecretProvider;
+
+/**
+ * ChainedSecretProviderTest
+ * 
+ * Chains an override provider in front of a base provider.  Only a secret the override
+ * doesn't define may fall through to the base - a failure to fetch has to surface rather
+ * than quietly serving the base value.
+ *
+ */
+public class ChainedSecretProviderTest {
+	/**
+	 * StubProvider
+	 * 
+	 * Serves values from a map, optionally failing every lookup as a fetch error would
+	 */
+	private static class StubProvider implements SecretProvider {
+		private final Map<String, String> values= new ConcurrentHashMap<>();
+		private final AtomicInteger lookups= new AtomicInteger();
+		private volatile boolean failing;
+		private volatile long generation;
+		
+		@Override
+		public String getSecret(String name) throws ConfigException {
+			lookups.incrementAndGet();
+			if (failing) {
+				throw new ConfigException("Error loading secret key");
+			}
+			
+			String rval= values.get(name);
+			if (rval == null) {
+				throw new SecretNotFoundException("Secret " + name + " is not defined");
+			}
+			
+			return rval;
+		}
+		
+		@Override
+		public long getGeneration() {
+			return generation;
+		}
+	}
+	
+	private StubProvider override;
+	private StubProvider base;
+	private SecretProvider chain;
+	
+	@BeforeEach
+	public void setUp() throws Exception {
+		override= new StubProvider();
+		base= new StubProvider();
+		base.values.put("db", "from-base");
+		
+		LinkedHashMap<String, SecretProvider> providers= new LinkedHashMap<>();
+		providers.put("file", override);
+		providers.put("aws", base);
+		chain= ChainedSecretProvider.Create(providers);
+	}
+	
+	@Test
+	public void missFallsThrough() throws Exception {
+		assertEquals("from-base", chain.getSecret("db"));
+	}
+	
+	@Test
+	public void fetchErrorPropagates() throws Exception {
+		override.failing= true;
+		
+		ConfigException e= assertThrows(ConfigException.class, () -> chain.getSecret("db"));
+		assertEquals(ConfigException.class, e.getClass());
+		assertEquals(0, base.lookups.get());
+		
+		// Nothing was cached for the failure, so the next lookup tries the override again
+		override.failing= false;
+		override.values.put("db", "from-override");
+		assertEquals("from-override", chain.getSecret("db"));
+	}
+	
+	@Test
+	public void fetchErrorOnCachedRoutePropagates() throws Exception {
+		override.values.put("db", "from-override");
+		assertEquals("from-override", chain.getSecret("db"));
+		
+		override.failing= true;
+		assertThrows(ConfigException.class, () -> chain.getSecret("db"));
+		assertEquals(0, base.lookups.get());
+	}
+	
+	@Test
+	public void generationChangeClearsMiss() throws Exception {
+		assertThrows(SecretNotFoundException.class, () -> chain.getSecret("api"));
+		
+		// Still remembered as missing, so neither provider is asked again
+		base.values.put("api", "key");
+		int lookups= base.lookups.get();
+		assertThrows(SecretNotFoundException.class, () -> chain.getSecret("api"));
+		assertEquals(lookups, base.lookups.get());
+		
+		base.generation++;
+		assertEquals("key", chain.getSecret("api"));
+	}
+	
+	@Test
+	public void generationChangeClearsRoute() throws Exception {
+		assertEquals("from-base", chain.getSecret("db"));
+		
+		// An override added on reload wins once the chain sees the new generation
+		override.values.put("db", "from-override");
+		assertEquals("from-base", chain.getSecret("db"));
+		
+		override.generation++;
+		assertEquals("from-override", chain.getSecret("db"));
+	}
+	
+	@Test
+	public void batchFallsBackWhenRouteGoesMissing() throws Exception {
+		assertEquals("from-base", chain.getSecret("db"));
+		
+		base.values.remove("db");
+		override.values.put("db", "from-override");
+		
+		Map<String, String> values= chain.getSecrets(Set.of("db"));
+		assertEquals("from-override", values.get("db"));
+	}
+}
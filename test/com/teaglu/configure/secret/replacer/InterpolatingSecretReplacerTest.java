@@ -0,0 +1,123 @@
+/****************************************************************************
+ * Copyright 2022 Teaglu, LLC                                               *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *   http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ ****************************************************************************/
+
+package com.teaglu.configure.secret.replacer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.teaglu.configure.exception.ConfigException;
+import com.teaglu.configure.exception.SecretNotFoundException;
+import com.teaglu.configure.secret.SecretProvider;
+import com.teaglu.configure.secret.SecretReplacer;
+
+/**
+ * InterpolatingSecretReplacerTest
+ * 
+ * Feeds the placeholder scanner well-formed and malformed values.  Only ${secret:...} is
+ * replaced and only $${secret: is unescaped - every other dollar sequence has to come out
+ * exactly as it went in.
+ *
+ */
+public class InterpolatingSecretReplacerTest {
+	private static final Map<String, String> SECRETS= Map.of(
+			"user", "svc",
+			"password", "p$ss}word",
+			"host", "db.example.com");
+	
+	private final List<String> lookups= new ArrayList<>();
+	
+	private final SecretReplacer replacer= InterpolatingSecretReplacer.Create(
+			new SecretProvider() {
+				@Override
+				public String getSecret(String name) throws ConfigException {
+					lookups.add(name);
+					
+					String value= SECRETS.get(name);
+					if (value == null) {
+						throw new SecretNotFoundException("Secret " + name + " is not defined");
+					}
+					return value;
+				}
+			});
+	
+	@Test
+	public void valueWithoutPlaceholdersIsSameInstance() throws Exception {
+		for (String value : new String[] {
+				"", "plain", "costs $5", "${HOME}", "$${HOME}", "trailing $", "$secret:x" })
+		{
+			assertSame(value, replacer.replace(value));
+		}
+		assertEquals(0, lookups.size());
+	}
+	
+	@Test
+	public void singlePlaceholderIsReplaced() throws Exception {
+		assertEquals("db.example.com", replacer.replace("${secret:host}"));
+	}
+	
+	@Test
+	public void severalPlaceholdersAreReplaced() throws Exception {
+		assertEquals("jdbc:pg://svc:p$ss}word@db.example.com/app?u=svc",
+				replacer.replace("jdbc:pg://${secret:user}:${secret:password}@" +
+						"${secret:host}/app?u=${secret:user}"));
+		
+		// Replaced values aren't scanned again
+		assertEquals(List.of("user", "password", "host", "user"), lookups);
+	}
+	
+	@Test
+	public void adjacentPlaceholdersAreReplaced() throws Exception {
+		assertEquals("svcdb.example.com", replacer.replace("${secret:user}${secret:host}"));
+	}
+	
+	@Test
+	public void escapeGivesLiteralPlaceholder() throws Exception {
+		assertEquals("${secret:user}", replacer.replace("$${secret:user}"));
+		assertEquals("${secret:user}=svc",
+				replacer.replace("$${secret:user}=${secret:user}"));
+		assertEquals(List.of("user"), lookups);
+	}
+	
+	@Test
+	public void otherTemplatingIsLeftAlone() throws Exception {
+		assertEquals("${HOME}/$${HOME}/svc/${env:X}",
+				replacer.replace("${HOME}/$${HOME}/${secret:user}/${env:X}"));
+	}
+	
+	@Test
+	public void unclosedBraceIsRejected() {
+		assertThrows(ConfigException.class, () -> replacer.replace("x=${secret:user"));
+	}
+	
+	@Test
+	public void emptyNameIsRejected() {
+		assertThrows(ConfigException.class, () -> replacer.replace("x=${secret:}"));
+	}
+	
+	@Test
+	public void undefinedSecretIsReported() {
+		assertThrows(SecretNotFoundException.class,
+				() -> replacer.replace("${secret:missing}"));
+	}
+}
@@ -0,0 +1,139 @@
+/****************************************************************************
+ * Copyright 2022 Teaglu, LLC                                               *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *   http://www.apache.org/licenses/LICENSE-2.0                             *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ ****************************************************************************/
+
+package com.teaglu.configure.secret.replacer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.teaglu.composite.Composite;
+import com.teaglu.configure.config.tree.CompositeTree;
+import com.teaglu.configure.config.tree.TreeFormat;
+import com.teaglu.configure.exception.ConfigException;
+import com.teaglu.configure.exception.SecretNotFoundException;
+import com.teaglu.configure.secret.SecretProvider;
+import com.teaglu.configure.secret.SecretTreeResolver;
+
+/**
+ * TreeResolverTest
+ * 
+ * Runs both tree resolvers over the same configuration parsed as JSON and as YAML.  Secrets
+ * have to be resolved in either format, and the result has to come back in the format that
+ * went in.
+ *
+ */
+public class TreeResolverTest {
+	private static final Map<String, String> SECRETS= Map.of(
+			"dbpass", "hunter2",
+			"apikey", "k-123");
+	
+	private static final SecretProvider PROVIDER= new SecretProvider() {
+		@Override
+		public String getSecret(String name) throws ConfigException {
+			String value= SECRETS.get(name);
+			if (value == null) {
+				throw new SecretNotFoundException("Secret " + name + " is not defined");
+			}
+			return value;
+		}
+	};
+	
+	private static final String AT_ID_JSON=
+			"{\"db\":{\"user\":\"svc\",\"password\":\"@dbpass\"}," +
+			"\"keys\":[\"@apikey\",\"plain\"]}";
+	
+	private static final String AT_ID_YAML=
+			"db:\n" +
+			"  user: svc\n" +
+			"  password: \"@dbpass\"\n" +
+			"keys:\n" +
+			"  - \"@apikey\"\n" +
+			"  - plain\n";
+	
+	private static final String INTERPOLATED_JSON=
+			"{\"db\":{\"url\":\"jdbc:pg://svc:${secret:dbpass}@db/app\"},\"port\":5432}";
+	
+	private static final String INTERPOLATED_YAML=
+			"db:\n" +
+			"  url: \"jdbc:pg://svc:${secret:dbpass}@db/app\"\n" +
+			"port: 5432\n";
+	
+	@Test
+	public void atIdResolvesJson() throws Exception {
+		checkAtId(AT_ID_JSON, TreeFormat.JSON);
+	}
+	
+	@Test
+	public void atIdResolvesYaml() throws Exception {
+		checkAtId(AT_ID_YAML, TreeFormat.YAML);
+	}
+	
+	@Test
+	public void replacerResolvesJson() throws Exception {
+		checkReplacer(INTERPOLATED_JSON, TreeFormat.JSON);
+	}
+	
+	@Test
+	public void replacerResolvesYaml() throws Exception {
+		checkReplacer(INTERPOLATED_YAML, TreeFormat.YAML);
+	}
+	
+	@Test
+	public void unchangedConfigurationIsReturnedAsIs() throws Exception {
+		for (TreeFormat format : TreeFormat.values()) {
+			Composite config= CompositeTree.Parse(
+					(format == TreeFormat.JSON) ? "{\"name\":\"app\"}" : "name: app\n", format);
+			
+			assertSame(config, AtIdTreeResolver.Create(PROVIDER).resolve(config));
+			assertSame(config, ReplacerTreeResolver.Create(
+					InterpolatingSecretReplacer.Create(PROVIDER)).resolve(config));
+		}
+	}
+	
+	private static void checkAtId(String text, TreeFormat format) throws Exception {
+		check(AtIdTreeResolver.Create(PROVIDER), text, format,
+				"{\"db\":{\"user\":\"svc\",\"password\":\"hunter2\"}," +
+				"\"keys\":[\"k-123\",\"plain\"]}");
+	}
+	
+	private static void checkReplacer(String text, TreeFormat format) throws Exception {
+		check(ReplacerTreeResolver.Create(InterpolatingSecretReplacer.Create(PROVIDER)),
+				text, format,
+				"{\"db\":{\"url\":\"jdbc:pg://svc:hunter2@db/app\"},\"port\":5432}");
+	}
+	
+	private static void check(
+			SecretTreeResolver resolver,
+			String text,
+			TreeFormat format,
+			String expected) throws Exception
+	{
+		Composite config= CompositeTree.Parse(text, format);
+		Composite resolved= resolver.resolve(config);
+		
+		assertEquals(format, CompositeTree.GetFormat(resolved));
+		assertEquals(config.getClass(), resolved.getClass());
+		
+		JsonObject expectedTree= JsonParser.parseString(expected).getAsJsonObject();
+		assertEquals(expectedTree, CompositeTree.Convert(resolved));
+	}
+}